@@ -45,7 +45,7 @@ subprojects {
                 listOf(
                     "--enable-preview",
                     "--add-modules",
-                    "jdk.incubator.concurrent"
+                    "jdk.incubator.concurrent,jdk.incubator.vector"
                 )
             )
             targetCompatibility = "19"
@@ -58,7 +58,7 @@ subprojects {
                 listOf(
                     "--enable-preview",
                     "--add-modules",
-                    "jdk.incubator.concurrent",
+                    "jdk.incubator.concurrent,jdk.incubator.vector",
                     // For mockk workaround for JDK 17+ static mocks issues.
                     "--add-opens",
                     "java.base/java.util.concurrent=ALL-UNNAMED",
@@ -32,6 +32,8 @@ public class Constants {
         public static final String GET_SEARCHES = "searches";
         public static final String POST_SEARCHES_EX = "searchesEx";
         public static final String SEARCH_QUERY = "{query}";
+        public static final String GET_AUTOCOMPLETE = "autocomplete";
+        public static final String AUTOCOMPLETE_PREFIX = "{prefix}";
         public static final String PATH_QUERY = "query";
 
         /*
@@ -39,6 +41,9 @@ public class Constants {
          */
         public static final String GET_RECOMMENDATIONS = "getRecommendations";
         public static final String POST_RECOMMENDATIONS = "postRecommendations";
+        public static final String GET_RECALL = "getRecall";
+        public static final String POST_BATCH_RECOMMENDATIONS = "postBatchRecommendations";
+        public static final String GET_SCHEDULING = "getScheduling";
 
         /*
         * Timer microservice endpoints.
@@ -58,6 +63,15 @@ public class Constants {
         public static final String MOVIES = "movies";
         public static final String DATABASE_EX = "databaseex";
         public static final String PARALLEL_FLUX = "parallelflux";
+        public static final String PARALLEL_STREAMS = "parallelstreams";
+        public static final String STRUCTURED_CONCURRENCY = "structuredconcurrency";
+    }
+
+    /**
+     * Headers that are sent in responses for debugging.
+     */
+    public static class Headers {
+        public static final String STRATEGY = "X-Recommendation-Strategy";
     }
 
     /**
@@ -67,6 +81,7 @@ public class Constants {
         public static final String QUERIES_PARAM = "queries";
         public static final String WATCHED_MOVIE_PARAM = "watchedMovie";
         public static final String MAX_COUNT_PARAM = "maxCount";
+        public static final String ENGINE_PARAM = "engine";
         public static final String MOVIES_CACHE = "moviesCache";
         public static final String ROUTE_NAME = "{routename}";
     }
@@ -0,0 +1,86 @@
+package edu.vandy.recommender.common.model;
+
+import java.util.List;
+
+/**
+ * The movies one user has watched or blocked and the number of
+ * recommendations requested for them, which is sent to the batch recommendation end
+ * point along with the requests of many other users.
+ */
+public class RecommendationRequest {
+    /**
+     * The titles of the movies the user has watched.
+     */
+    public List<String> watchedMovies;
+
+    /**
+     * The titles of the movies the user never wants recommended,
+     * which may be null.
+     */
+    public List<String> blockedMovies;
+
+    /**
+     * The upper limit for the number of recommendations returned.
+     */
+    public int maxCount;
+
+    /**
+     * A default constructor is needed.
+     */
+    public RecommendationRequest() {
+    }
+
+    /**
+     * Initialize the fields of a {@link RecommendationRequest}.
+     *
+     * @param watchedMovies The titles of the movies the user has
+     *                      watched
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     */
+    public RecommendationRequest(List<String> watchedMovies,
+                                 int maxCount) {
+        this(watchedMovies, null, maxCount);
+    }
+
+    /**
+     * Initialize the fields of a {@link RecommendationRequest}.
+     *
+     * @param watchedMovies The titles of the movies the user has
+     *                      watched
+     * @param blockedMovies The titles of the movies the user never
+     *                      wants recommended
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     */
+    public RecommendationRequest(List<String> watchedMovies,
+                                 List<String> blockedMovies,
+                                 int maxCount) {
+        this.watchedMovies = watchedMovies;
+        this.blockedMovies = blockedMovies;
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * @return The titles of the movies the user has watched
+     */
+    public List<String> getWatchedMovies() {
+        return watchedMovies;
+    }
+
+    /**
+     * @return The titles of the movies the user never wants
+     *         recommended
+     */
+    public List<String> getBlockedMovies() {
+        return blockedMovies;
+    }
+
+    /**
+     * @return The upper limit for the number of recommendations
+     *         returned
+     */
+    public int getMaxCount() {
+        return maxCount;
+    }
+}
@@ -1,12 +1,21 @@
 package edu.vandy.recommender.common;
 
+import edu.vandy.recommender.common.index.RecallReport;
+import edu.vandy.recommender.common.index.RecommendationEngine;
+import edu.vandy.recommender.common.model.Ranking;
+import edu.vandy.recommender.common.model.RecommendationRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import static edu.vandy.recommender.common.Constants.EndPoint.*;
 
@@ -17,6 +26,24 @@ import static edu.vandy.recommender.common.Constants.EndPoint.*;
  */
 @RestController
 public abstract class BaseController<T> {
+    /**
+     * The largest number of recommendations per sampled movie a
+     * benchmark report may request.
+     */
+    public static final int MAX_REPORT_K = 100;
+
+    /**
+     * The largest number of movies a benchmark report may sample.
+     */
+    public static final int MAX_REPORT_SAMPLES = 500;
+
+    /**
+     * The largest number of users a batch recommendation request may
+     * contain, since every user holds a filter of the whole catalog
+     * while the batch is scored.
+     */
+    public static final int MAX_BATCH_USERS = 1000;
+
     /**
      * The central interface to provide configuration for the
      * application.  This field is read-only while the application is
@@ -32,6 +59,13 @@ public abstract class BaseController<T> {
     @Autowired
     BaseService<T> service;
 
+    /**
+     * True if the recall and scheduling benchmark endpoints are
+     * served, else false so they can't tie up a production instance.
+     */
+    @Value("${app.benchmarks.enabled:false}")
+    boolean mBenchmarks;
+
     /**
      * @return The {@link BaseService} encapsulated by the controller
      */
@@ -63,32 +97,68 @@ public abstract class BaseController<T> {
     }
 
     /**
-     * Returns all movie titles in the database.
+     * Returns all movie titles in the database, or a page of them in
+     * ascending order if either pagination parameter is given.
      *
-     * @return A {@link T} of all movie titles in the database
+     * @param after The optional title the page follows
+     * @param limit The optional maximum number of titles returned
+     * @return A {@link T} of the movie titles in the database
      */
     @GetMapping(GET_ALL_MOVIES)
-    public T allMovies() {
+    public T allMovies(@RequestParam(required = false) String after,
+                       @RequestParam(required = false) Integer limit) {
         System.out.println("allMovies()");
+
+        if (after == null && limit == null)
+            return getService()
+                // Delegate request to the service.
+                .getAllMovies();
+
         return getService()
-            // Delegate request to the service.
-            .getAllMovies();
+            // Delegate request to the service with the page bounds.
+            .getAllMovies(after,
+                          limit == null ? Integer.MAX_VALUE : limit);
     }
 
     /**
      * Search for the movie titles in the database containing the given query
      * {@link String}.
      *
-     * @param query The search query
+     * @param query The search query, which ignores case
+     * @param limit The optional maximum number of titles returned
      * @return A list of movie titles containing the query represented as
-     * {@link String} objects in ascending sorted order (ignoring case).
+     * {@link String} objects in ascending sorted order.
      */
     @GetMapping(GET_SEARCH + "/" + SEARCH_QUERY)
-    public T search(@PathVariable String query) {
+    public T search(@PathVariable String query,
+                    @RequestParam(required = false) Integer limit) {
         System.out.println("search()");
+
+        if (limit == null)
+            return getService()
+                // Delegate request to getService().
+                .search(query);
+
         return getService()
-            // Delegate request to getService().
-            .search(query);
+            // Delegate request to getService() with the limit.
+            .search(query, limit);
+    }
+
+    /**
+     * Complete a prefix of a movie title as the user types it.
+     *
+     * @param prefix The start of a movie title, which ignores case
+     * @param limit  The maximum number of titles returned
+     * @return A {@link T} of movie titles starting with the {@code prefix}
+     * in ascending order (ignoring case).
+     */
+    @GetMapping(GET_AUTOCOMPLETE + "/" + AUTOCOMPLETE_PREFIX)
+    public T autocomplete(@PathVariable String prefix,
+                          @RequestParam(defaultValue = "10") int limit) {
+        System.out.println("autocomplete()");
+        return getService()
+            // Delegate request to service.
+            .autocomplete(prefix, limit);
     }
 
     /**
@@ -100,16 +170,79 @@ public abstract class BaseController<T> {
      *                     that has been watched
      * @param maxCount     The upper limit for the number of
      *                     recommendations returned
+     * @param engine       The optional name of the {@link
+     *                     RecommendationEngine} to use instead of the
+     *                     configured one
+     * @param response     The {@link HttpServletResponse} that reports
+     *                     how the recommendations were computed
      * @return A {@link T} of movie titles most similar to the
      * {@code watchedMovie}
+     * @throws ResponseStatusException If there's no such {@code engine}
      */
     @GetMapping(GET_RECOMMENDATIONS)
     public T recommendations(@RequestParam String watchedMovie,
-                             @RequestParam int maxCount) {
+                             @RequestParam int maxCount,
+                             @RequestParam(required = false) String engine,
+                             HttpServletResponse response) {
         System.out.println("recommendations()");
+
+        return getService()
+            // Delegate request to service using the requested engine
+            // or else the configured one.
+            .getRecommendations(watchedMovie,
+                                maxCount,
+                                engine == null
+                                ? getService().defaultEngine()
+                                : engine(engine),
+                                strategyHeader(response));
+    }
+
+    /**
+     * Report how many of the exact top {@code k} recommendations an
+     * approximate {@link RecommendationEngine} finds for randomly
+     * sampled movies, along with the average time each takes.
+     *
+     * @param engine  The name of an approximate {@link
+     *                RecommendationEngine}
+     * @param k       The number of recommendations per sampled movie
+     * @param samples The number of movies to sample
+     * @return A {@link RecallReport} comparing the engine with an
+     *         exact scan of the catalog
+     * @throws ResponseStatusException If the benchmarks are disabled,
+     *         {@code k} or {@code samples} is out of range, or there's
+     *         no such {@code engine}
+     */
+    @GetMapping(GET_RECALL)
+    public RecallReport recall(@RequestParam String engine,
+                               @RequestParam(defaultValue = "10") int k,
+                               @RequestParam(defaultValue = "100") int samples) {
+        System.out.println("recall()");
+        checkReport(k, samples);
+        return getService()
+            // Delegate request to service.
+            .getRecallReport(engine(engine), k, samples);
+    }
+
+    /**
+     * Report how long scoring the catalog takes when every movie is
+     * handed off to a parallel rail individually compared with
+     * scoring contiguous chunks of movies of increasing size per rail,
+     * showing the chunk size at which chunking starts to pay off.
+     *
+     * @param k       The number of recommendations per sampled movie
+     * @param samples The number of movies to sample
+     * @return A {@link SchedulingReport} comparing both schedules
+     * @throws ResponseStatusException If the benchmarks are disabled
+     *         or {@code k} or {@code samples} is out of range
+     */
+    @GetMapping(GET_SCHEDULING)
+    public SchedulingReport scheduling(@RequestParam(defaultValue = "10") int k,
+                                       @RequestParam(defaultValue = "20") int samples) {
+        System.out.println("scheduling()");
+        checkReport(k, samples);
         return getService()
             // Delegate request to service.
-            .getRecommendations(watchedMovie, maxCount);
+            .getSchedulingReport(k, samples);
     }
 
     /**
@@ -121,15 +254,113 @@ public abstract class BaseController<T> {
      *                      has watched.
      * @param maxCount      The upper limit for the number of recommendations
      *                      returned
+     * @param blocked       Optional titles of movies that must never be
+     *                      recommended
+     * @param response      The {@link HttpServletResponse} that reports
+     *                      how the recommendations were computed
      * @return A {@link T} of movie titles most similar to
      * those in {@code watchedMovies}
      */
     @PostMapping(POST_RECOMMENDATIONS)
     public T recommendations(@RequestBody List<String> watchedMovies,
-                             @RequestParam int maxCount) {
+                             @RequestParam int maxCount,
+                             @RequestParam(required = false) List<String> blocked,
+                             HttpServletResponse response) {
         System.out.println("recommendationsMany()");
         return getService()
             // Delegate request to service.
-            .getRecommendations(watchedMovies, maxCount);
+            .getRecommendations(watchedMovies,
+                                blocked == null ? List.of() : blocked,
+                                maxCount,
+                                strategyHeader(response));
+    }
+
+    /**
+     * Recommend movies to many users at once, each indicated by a
+     * {@link RecommendationRequest} in the request body containing
+     * the titles of the movies the user has watched and the upper
+     * limit for the number of recommendations returned.
+     *
+     * @param requests The {@link List} of {@link RecommendationRequest}
+     *                 objects of all users
+     * @return A {@link List} of the {@link Ranking} objects recommended
+     * to each user, in the order of the {@code requests}
+     * @throws ResponseStatusException If there are more than {@link
+     *         #MAX_BATCH_USERS} {@code requests}
+     */
+    @PostMapping(POST_BATCH_RECOMMENDATIONS)
+    public List<List<Ranking>> batchRecommendations
+        (@RequestBody List<RecommendationRequest> requests) {
+        System.out.println("batchRecommendations()");
+
+        // Reject batches that would monopolize the service.
+        if (requests.size() > MAX_BATCH_USERS)
+            throw new ResponseStatusException
+                (HttpStatus.BAD_REQUEST,
+                 "a batch may contain at most "
+                 + MAX_BATCH_USERS
+                 + " requests");
+
+        return getService()
+            // Delegate request to service.
+            .getBatchRecommendations(requests);
+    }
+
+    /**
+     * Convert the engine name of a request to a {@link
+     * RecommendationEngine}.
+     *
+     * @param name The engine name (ignoring case)
+     * @return The matching {@link RecommendationEngine}
+     * @throws ResponseStatusException If there's no such engine
+     */
+    private static RecommendationEngine engine(String name) {
+        try {
+            return RecommendationEngine.from(name);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException
+                (HttpStatus.BAD_REQUEST,
+                 "unknown engine " + name,
+                 e);
+        }
+    }
+
+    /**
+     * Report how the service computed the recommendations of a
+     * request in its {@link Constants.Headers#STRATEGY} debug header.
+     * The service reports it before the recommendations are complete,
+     * i.e., before the response is written, even when a reactive
+     * service computes them on another thread.
+     *
+     * @param response The {@link HttpServletResponse} of the request
+     * @return Sets the debug header of the {@code response}
+     */
+    private static Consumer<String> strategyHeader(HttpServletResponse response) {
+        return header -> response.setHeader(Constants.Headers.STRATEGY, header);
+    }
+
+    /**
+     * Reject a benchmark report request unless the benchmarks are
+     * enabled and the request stays within the bounds that keep one
+     * request from monopolizing the service.
+     *
+     * @param k The number of recommendations per sampled movie
+     * @param samples The number of movies to sample
+     * @throws ResponseStatusException If the benchmarks are disabled
+     *         or {@code k} or {@code samples} is out of range
+     */
+    private void checkReport(int k, int samples) {
+        if (!mBenchmarks)
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+
+        if (k < 1 || k > MAX_REPORT_K
+            || samples < 1 || samples > MAX_REPORT_SAMPLES)
+            throw new ResponseStatusException
+                (HttpStatus.BAD_REQUEST,
+                 "k must be in [1, "
+                 + MAX_REPORT_K
+                 + "] and samples in [1, "
+                 + MAX_REPORT_SAMPLES
+                 + "]");
     }
 }
@@ -1,5 +1,8 @@
 package edu.vandy.recommender.common;
 
+import edu.vandy.recommender.common.model.Ranking;
+import edu.vandy.recommender.common.model.RecommendationRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.web.bind.annotation.*;
@@ -33,17 +36,20 @@ public abstract class BaseControllerTimed<T> {
      * <p>
      * This endpoint also records the execution run time of this call.
      *
+     * @param after The optional title a page of titles follows
+     * @param limit The optional maximum number of titles returned
      * @return A list of all movie titles in the database
      */
     @GetMapping(GET_ALL_MOVIES)
-    public T allMoviesTimed() {
+    public T allMoviesTimed(@RequestParam(required = false) String after,
+                            @RequestParam(required = false) Integer limit) {
         System.out.println("allMoviesTimed()");
         return mRunTimer
             // Delegate request to the service.
             .runAndRecordTime(mController.getId()
                               + ":"
                               + GET_ALL_MOVIES,
-                () -> mController.allMovies());
+                () -> mController.allMovies(after, limit));
     }
 
     /**
@@ -53,20 +59,45 @@ public abstract class BaseControllerTimed<T> {
      * This endpoint also records the execution run time of this call
      * in the {@code Timer} microservice.
      *
-     * @param query The search query
+     * @param query The search query, which ignores case
+     * @param limit The optional maximum number of titles returned
      * @return A {@link List} of movie titles containing the query represented as
      * {@link String} objects in ascending
-     * sorted order (ignoring case).
+     * sorted order.
      */
     @GetMapping(GET_SEARCH + "/" + SEARCH_QUERY)
-    public T searchTimed(@PathVariable String query) {
+    public T searchTimed(@PathVariable String query,
+                         @RequestParam(required = false) Integer limit) {
         System.out.println("searchTimed()");
         return mRunTimer
             // Forward request.
             .runAndRecordTime(mController.getId()
                               + ":"
                               + GET_SEARCH,
-                () -> mController.search(query));
+                () -> mController.search(query, limit));
+    }
+
+    /**
+     * Complete a prefix of a movie title as the user types it.
+     * <p>
+     * This endpoint also records the execution run time of this call
+     * in the {@code Timer} microservice.
+     *
+     * @param prefix The start of a movie title, which ignores case
+     * @param limit  The maximum number of titles returned
+     * @return A {@link T} of movie titles starting with the {@code prefix}
+     * in ascending order (ignoring case).
+     */
+    @GetMapping(GET_AUTOCOMPLETE + "/" + AUTOCOMPLETE_PREFIX)
+    public T autocompleteTimed(@PathVariable String prefix,
+                               @RequestParam(defaultValue = "10") int limit) {
+        System.out.println("autocompleteTimed()");
+        return mRunTimer
+            // Forward request.
+            .runAndRecordTime(mController.getId()
+                              + ":"
+                              + GET_AUTOCOMPLETE,
+                () -> mController.autocomplete(prefix, limit));
     }
 
     /**
@@ -81,12 +112,18 @@ public abstract class BaseControllerTimed<T> {
      *                     that has been watched
      * @param maxCount     The upper limit for the number of
      *                     recommendations returned
+     * @param engine       The optional name of the recommendation
+     *                     engine to use instead of the configured one
+     * @param response     The {@link HttpServletResponse} that reports
+     *                     how the recommendations were computed
      * @return A {@link T} of movie titles most similar to the
      * {@code watchedMovie}
      */
     @GetMapping(GET_RECOMMENDATIONS)
     public T recommendationsTimed(@RequestParam String watchedMovie,
-                                  @RequestParam int maxCount) {
+                                  @RequestParam int maxCount,
+                                  @RequestParam(required = false) String engine,
+                                  HttpServletResponse response) {
         System.out.println("recommendationsTimed()");
         return mRunTimer
             // Delegate request to service.
@@ -94,7 +131,9 @@ public abstract class BaseControllerTimed<T> {
                               + ":"
                               + GET_RECOMMENDATIONS,
                 () -> mController.recommendations(watchedMovie,
-                    maxCount));
+                    maxCount,
+                    engine,
+                    response));
     }
 
     /**
@@ -109,12 +148,18 @@ public abstract class BaseControllerTimed<T> {
      *                      has watched.
      * @param maxCount      The upper limit for the number of recommendations
      *                      returned
+     * @param blocked       Optional titles of movies that must never be
+     *                      recommended
+     * @param response      The {@link HttpServletResponse} that reports
+     *                      how the recommendations were computed
      * @return A {@link T} of movie titles most similar to
      * those in {@code watchedMovies}
      */
     @PostMapping(POST_RECOMMENDATIONS)
     public T recommendationsTimed(@RequestBody List<String> watchedMovies,
-                                  @RequestParam int maxCount) {
+                                  @RequestParam int maxCount,
+                                  @RequestParam(required = false) List<String> blocked,
+                                  HttpServletResponse response) {
         System.out.println("recommendationsTimedMany()");
         return mRunTimer
             // Delegate request to service.
@@ -122,6 +167,32 @@ public abstract class BaseControllerTimed<T> {
                               + ":"
                               + POST_RECOMMENDATIONS,
                 () -> mController.recommendations(watchedMovies,
-                    maxCount));
+                    maxCount,
+                    blocked,
+                    response));
+    }
+
+    /**
+     * Recommend movies to many users at once, each indicated by a
+     * {@link RecommendationRequest} in the request body.
+     * <p>
+     * This endpoint also records the execution run time of this call
+     * via the {@code Timer} microservice.
+     *
+     * @param requests The {@link List} of {@link RecommendationRequest}
+     *                 objects of all users
+     * @return A {@link List} of the {@link Ranking} objects recommended
+     * to each user, in the order of the {@code requests}
+     */
+    @PostMapping(POST_BATCH_RECOMMENDATIONS)
+    public List<List<Ranking>> batchRecommendationsTimed
+        (@RequestBody List<RecommendationRequest> requests) {
+        System.out.println("batchRecommendationsTimed()");
+        return mRunTimer
+            // Delegate request to service.
+            .runAndRecordTime(mController.getId()
+                              + ":"
+                              + POST_BATCH_RECOMMENDATIONS,
+                () -> mController.batchRecommendations(requests));
     }
 }
@@ -1,11 +1,26 @@
 package edu.vandy.recommender.common;
 
+import edu.vandy.recommender.common.index.MovieIndexes;
+import edu.vandy.recommender.common.index.Neighbors;
+import edu.vandy.recommender.common.index.RecallReport;
+import edu.vandy.recommender.common.index.RecommendationEngine;
+import edu.vandy.recommender.common.index.VectorIndex;
+import edu.vandy.recommender.common.model.Ranking;
+import edu.vandy.recommender.common.model.RecommendationRequest;
+import edu.vandy.recommender.utils.TopKSelector;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Supplier;
+
+import static edu.vandy.recommender.common.GetTopRecommendationsStream.rescore;
 
 /**
  * This abstract class defines the methods that are called by the
@@ -22,9 +37,9 @@ import java.util.Map;
  */
 public abstract class BaseService<T> {
     /**
-     * This auto-wired {@link Map} field contains all movie cosine
-     * vectors that are configured automatically by Spring sorted in
-     * ascending order (ignoring case).
+     * This auto-wired {@link MovieCatalog} field contains all movie
+     * titles and cosine vectors that are configured automatically by
+     * Spring, with movie ids assigned in ascending title order.
      */
     @Autowired
     /*
@@ -32,8 +47,535 @@ public abstract class BaseService<T> {
      * for candidate beans when autowiring. It may also be used to annotate
      * other custom annotations that can then in turn be used as qualifiers.
      */
-    @Qualifier("movieMap")
-    protected Map<String, List<Double>> mMovieMap;
+    @Qualifier("movieCatalog")
+    protected MovieCatalog mCatalog;
+
+    /**
+     * The number of candidates per requested recommendation that are
+     * rescored in full precision when {@link #mRescore} is enabled.
+     */
+    protected static final int RESCORE_CANDIDATES_FACTOR = 2;
+
+    /**
+     * True if recommendations scored with a reduced {@link
+     * VectorPrecision} should be rescored in full precision before
+     * they are returned, else false.
+     */
+    @Value("${app.vectors.rescore:false}")
+    protected boolean mRescore;
+
+    /**
+     * The largest edit distance, ignoring case, of a catalog title
+     * that a watched movie title is resolved to when it doesn't match
+     * any title exactly, or 0 to only accept exact matches.
+     */
+    @Value("${app.fuzzy.max-distance:0}")
+    protected int mFuzzyDistance;
+
+    /**
+     * The name of the {@link RecommendationEngine} used when a request
+     * doesn't select one.
+     */
+    @Value("${app.index.engine:exact}")
+    protected String mEngine;
+
+    /**
+     * The number of rails that score contiguous chunks of the catalog
+     * in parallel, or 0 to use one rail per core.
+     */
+    @Value("${app.parallel.rails:0}")
+    protected int mRails;
+
+    /**
+     * The number of movies scored per chunk, or 0 to split the
+     * catalog into one chunk per rail.
+     */
+    @Value("${app.parallel.chunk-size:0}")
+    protected int mChunkSize;
+
+    /**
+     * The indexes used by the approximate {@link RecommendationEngine}s,
+     * which are built in the background once the catalog is loaded.
+     */
+    @Lazy
+    @Autowired
+    protected MovieIndexes mIndexes;
+
+    /**
+     * The precomputed neighbors of every movie, which answer
+     * single-movie recommendations once they are ready.
+     */
+    @Lazy
+    @Autowired
+    protected MovieNeighbors mNeighbors;
+
+    /**
+     * The cache of recently computed recommendations.
+     */
+    @Lazy
+    @Autowired
+    protected RecommendationCache mCache;
+
+    /**
+     * Decides how many rails score the catalog for each request, so
+     * requests share the cores rather than oversubscribing them.
+     */
+    @Lazy
+    @Autowired
+    protected ParallelismPolicy mPolicy;
+
+    /**
+     * Chooses between sequential and chunked parallel scoring per
+     * request from the observed latency of each.
+     */
+    @Lazy
+    @Autowired
+    protected StrategyDispatcher mDispatcher;
+
+    /**
+     * The {@link CatalogView} of the current catalog.
+     */
+    private volatile CatalogView mView;
+
+    /**
+     * @return The {@link RecommendationEngine} used when a request
+     *         doesn't select one
+     */
+    protected RecommendationEngine defaultEngine() {
+        return mEngine == null
+            ? RecommendationEngine.EXACT
+            : RecommendationEngine.from(mEngine);
+    }
+
+    /**
+     * @return The number of rails that score chunks of the catalog in
+     *         parallel
+     */
+    protected int rails() {
+        return mRails > 0
+            ? mRails
+            : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return The number of rails that score chunks of the catalog in
+     *         parallel for a new request, which the {@link
+     *         ParallelismPolicy} reduces when other requests are in
+     *         flight or the catalog is too small to be worth it
+     */
+    protected int railsPerRequest() {
+        return mPolicy == null
+            ? rails()
+            : mPolicy.rails(mCatalog.size(), mCatalog.dimension(), rails());
+    }
+
+    /**
+     * @param rails The number of rails scoring the catalog
+     * @return The number of movies scored per chunk, which splits the
+     *         catalog evenly across the {@code rails} unless a chunk
+     *         size is configured
+     */
+    protected int chunkSize(int rails) {
+        return mChunkSize > 0
+            ? mChunkSize
+            : Math.max((mCatalog.size() + rails - 1) / rails, 1);
+    }
+
+    /**
+     * Choose whether the {@code engine} of a request runs
+     * sequentially or on parallel rails.
+     *
+     * @param watched The number of watched movies
+     * @param engine The {@link RecommendationEngine} of the request,
+     *               which is never changed
+     * @param chunked True if the {@code engine} can run on parallel
+     *                rails in this service, else false
+     * @return The {@link StrategyDispatcher.Decision} of the request,
+     *         or null if there is no {@link StrategyDispatcher}
+     */
+    protected StrategyDispatcher.Decision dispatch(int watched,
+                                                   RecommendationEngine engine,
+                                                   boolean chunked) {
+        return mDispatcher == null
+            ? null
+            : mDispatcher.choose(engine, mCatalog.size(), watched, chunked);
+    }
+
+    /**
+     * Run a computation and record its latency for the {@link
+     * StrategyDispatcher}.
+     *
+     * @param decision The {@link StrategyDispatcher.Decision} of the
+     *                 request, or null if it wasn't dispatched
+     * @param computation The computation to run
+     * @return The result of the {@code computation}
+     */
+    protected <R> R timed(StrategyDispatcher.Decision decision,
+                          Supplier<R> computation) {
+        if (decision == null || mDispatcher == null)
+            return computation.get();
+
+        long start = System.nanoTime();
+        R result = computation.get();
+        mDispatcher.record(decision, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Resolve the title of a watched movie to its id in the catalog,
+     * accepting the closest title within {@link #mFuzzyDistance}
+     * edits if it doesn't match any title exactly.
+     *
+     * @param title The title of a watched movie
+     * @return The id of the resolved movie, or -1 if there is none
+     */
+    protected int resolve(String title) {
+        return mCatalog.resolve(title, mFuzzyDistance);
+    }
+
+    /**
+     * Create a {@link BatchRecommender} that resolves watched titles
+     * and rescores recommendations like a single-user request.
+     *
+     * @param requests The {@link RecommendationRequest} of each user
+     * @return A {@link BatchRecommender} of the {@code requests}
+     */
+    protected BatchRecommender batchRecommender
+        (List<RecommendationRequest> requests) {
+        return new BatchRecommender(mCatalog,
+                                    requests,
+                                    this::resolve,
+                                    mRescore);
+    }
+
+    /**
+     * @return The {@link CatalogView} of the current catalog, which
+     *         is only created again when the catalog changes
+     */
+    protected CatalogView view() {
+        CatalogView view = mView;
+        if (view == null || !view.isViewOf(mCatalog))
+            mView = view = new CatalogView(mCatalog);
+        return view;
+    }
+
+    /**
+     * @return A {@link Ranking} for each of the {@code ids}
+     */
+    protected List<Ranking> rankings(int[] ids) {
+        return Arrays
+            .stream(ids)
+            .mapToObj(id -> new Ranking(mCatalog.title(id), 0.0))
+            .toList();
+    }
+
+    /**
+     * Resolve the titles of the watched movies to the distinct ids of
+     * the movies that are in the catalog.
+     *
+     * @param watchedMovies A {@link List} of titles of movies the
+     *                      user has watched
+     * @return The distinct ids of the resolved movies
+     */
+    protected int[] watchedIds(List<String> watchedMovies) {
+        return watchedMovies
+            // Convert the List to a stream
+            .stream()
+            // Look up the id of each title
+            .mapToInt(this::resolve)
+            // Filter out titles that are not in the catalog
+            .filter(id -> id >= 0)
+            // Eliminate duplicates
+            .distinct()
+            // Convert stream to an array
+            .toArray();
+    }
+
+    /**
+     * Exclude the watched and blocked movies from the recommendations
+     * via a bitset indexed by movie id.  Blocked titles must match a
+     * catalog title exactly.
+     *
+     * @param watchedIds The ids of the watched movies
+     * @param blockedMovies A {@link List} of titles of movies that
+     *                      must not be recommended
+     * @return The {@link MovieFilter} of the movies to skip
+     */
+    protected MovieFilter filter(int[] watchedIds,
+                                 List<String> blockedMovies) {
+        return new MovieFilter(mCatalog.size())
+            .exclude(watchedIds)
+            .exclude(blockedMovies
+                     .stream()
+                     .mapToInt(mCatalog::indexOf)
+                     .toArray());
+    }
+
+    /**
+     * @param maxCount The number of recommendations requested
+     * @return The number of candidates to select, which includes
+     *         extra candidates when they are rescored in full
+     *         precision, but never exceeds the size of the catalog
+     *         however large the {@code maxCount} of a client is
+     */
+    protected int candidates(int maxCount) {
+        long candidates = mRescore
+            ? (long) maxCount * RESCORE_CANDIDATES_FACTOR
+            : maxCount;
+        return (int) Math.max(Math.min(candidates, mCatalog.size()), 0);
+    }
+
+    /**
+     * @return Computes the similarity of a movie id with the {@code
+     *         query}
+     */
+    protected IntToDoubleFunction scorer(MovieCatalog.Query query) {
+        return id -> mCatalog.score(query, id);
+    }
+
+    /**
+     * Select the {@code maxCount} movies most similar to the watched
+     * movie found by a {@link VectorIndex} of the catalog.
+     *
+     * @param index The {@link VectorIndex} to search
+     * @param watchedId The id of the watched movie in the catalog
+     * @param maxCount The upper limit for the number of ids selected
+     * @return The {@link TopKSelector} of the neighbors other than the
+     *         watched movie
+     */
+    protected TopKSelector searchIndex(VectorIndex index,
+                                       int watchedId,
+                                       int maxCount) {
+        // Find one extra movie since the watched movie is usually
+        // found as well, but no more than there are movies.
+        Neighbors neighbors = index
+            .search(mCatalog.query(watchedId),
+                    (int) Math.min(maxCount + 1L, mCatalog.size()));
+
+        TopKSelector selector = new TopKSelector(maxCount);
+        for (int i = 0; i < neighbors.size(); i++)
+            if (neighbors.ids()[i] != watchedId)
+                selector.offer(neighbors.ids()[i], neighbors.scores()[i]);
+        return selector;
+    }
+
+    /**
+     * Select the {@code maxCount} best movies that aren't excluded by
+     * the {@code filter} in the calling thread.
+     *
+     * @param filter The {@link MovieFilter} of the movies to skip
+     * @param scorer Computes the similarity of a movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return The {@link TopKSelector} of the best ids
+     */
+    protected TopKSelector selectTop(MovieFilter filter,
+                                     IntToDoubleFunction scorer,
+                                     int maxCount) {
+        return GetTopRecommendationsStream
+            .selectTop(new MovieSpliterator(filter, filter.size()),
+                       false,
+                       scorer,
+                       maxCount);
+    }
+
+    /**
+     * Select the {@code maxCount} best movies that aren't excluded by
+     * the {@code filter} for the {@link
+     * StrategyDispatcher.Strategy#CHUNKED} strategy.  This default
+     * implementation scores the catalog in the calling thread,
+     * whereas services override it to score the catalog concurrently.
+     *
+     * @param filter The {@link MovieFilter} of the movies to skip
+     * @param scorer Computes the similarity of a movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return The {@link TopKSelector} of the best ids
+     */
+    protected TopKSelector selectTopConcurrently(MovieFilter filter,
+                                                 IntToDoubleFunction scorer,
+                                                 int maxCount) {
+        return selectTop(filter, scorer, maxCount);
+    }
+
+    /**
+     * Select the {@code maxCount} best movies that aren't excluded by
+     * the {@code filter} with the strategy of the {@code decision}.
+     *
+     * @param decision The {@link StrategyDispatcher.Decision} of the
+     *                 request, or null to score the catalog
+     *                 concurrently
+     * @param filter The {@link MovieFilter} of the movies to skip
+     * @param scorer Computes the similarity of a movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return The {@link TopKSelector} of the best ids
+     */
+    private TopKSelector selectTop(StrategyDispatcher.Decision decision,
+                                   MovieFilter filter,
+                                   IntToDoubleFunction scorer,
+                                   int maxCount) {
+        return decision != null
+            && decision.strategy() == StrategyDispatcher.Strategy.SEQUENTIAL
+            ? selectTop(filter, scorer, maxCount)
+            : selectTopConcurrently(filter, scorer, maxCount);
+    }
+
+    /**
+     * Report the {@code decision} of a request in the {@link
+     * Constants.Headers#STRATEGY} debug header, if it was dispatched.
+     *
+     * @param strategy Receives the value of the debug header
+     * @param decision The {@link StrategyDispatcher.Decision} of the
+     *                 request, or null if it wasn't dispatched
+     */
+    protected static void report(Consumer<String> strategy,
+                                 StrategyDispatcher.Decision decision) {
+        if (decision != null)
+            strategy.accept(decision.header());
+    }
+
+    /**
+     * Recommend {@code maxCount} movies as a function of a single
+     * {@code watchedMovie}, answering from the precomputed neighbors
+     * or searching the index of an approximate engine when possible
+     * and otherwise scoring every other movie with the strategy
+     * chosen by the {@link StrategyDispatcher}.
+     *
+     * @param watchedMovie A {@link String} indicating the title of
+     *                     the movie that has been watched
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @param engine The {@link RecommendationEngine} to use
+     * @param strategy Receives the value of the {@link
+     *                 Constants.Headers#STRATEGY} debug header
+     * @return A {@link List} of movie titles most similar to the
+     *         {@code watchedMovie}
+     */
+    protected List<Ranking> recommend(String watchedMovie,
+                                      int maxCount,
+                                      RecommendationEngine engine,
+                                      Consumer<String> strategy) {
+        // Look up the id of the 'watchedMovie' in mCatalog, or of
+        // the closest title if fuzzy matching is enabled.
+        int watchedId = resolve(watchedMovie);
+
+        // If watchedMovie does not exist in mCatalog, return an empty
+        // List.
+        if (watchedId < 0 || maxCount < 1)
+            return List.of();
+
+        // Answer from the precomputed neighbors of the watched movie
+        // if they are ready and there are enough of them.
+        NeighborTable table = engine == RecommendationEngine.EXACT
+            ? neighborTable(maxCount)
+            : null;
+        if (table != null) {
+            strategy.accept(StrategyDispatcher.NEIGHBORS);
+            return table.rankings(watchedId, maxCount, mCatalog::title);
+        }
+
+        // Only an exact scan is split into chunks, whereas the index
+        // of an approximate engine is searched in the calling thread.
+        StrategyDispatcher.Decision decision =
+            dispatch(1, engine, engine == RecommendationEngine.EXACT);
+        report(strategy, decision);
+
+        return timed(decision, () -> {
+                // Search the index of an approximate engine, or else
+                // score every other movie in the catalog.
+                TopKSelector selection = engine == RecommendationEngine.EXACT
+                    ? selectTop(decision,
+                                new MovieFilter(mCatalog.size())
+                                .exclude(watchedId),
+                                // Dot product of the normalized query and movie vectors
+                                scorer(mCatalog.query(watchedId)),
+                                candidates(maxCount))
+                    : searchIndex(mIndexes.index(engine, mCatalog),
+                                  watchedId,
+                                  candidates(maxCount));
+
+                if (mRescore)
+                    // Rescore the best candidates in full precision by id.
+                    selection = rescore(selection,
+                                        id -> mCatalog.cosineSimilarity(watchedId, id),
+                                        maxCount);
+
+                // Only look up the titles of the final recommendations.
+                return selection.toRankings(mCatalog::title);
+            });
+    }
+
+    /**
+     * Recommend {@code maxCount} movies as a function of films the
+     * user has watched previously, never recommending any of the
+     * {@code blockedMovies}, by scoring the movies that aren't
+     * excluded with the strategy chosen by the {@link
+     * StrategyDispatcher}.
+     *
+     * @param watchedMovies A {@link List} of titles of movies the
+     *                      user has watched
+     * @param blockedMovies A {@link List} of titles of movies that
+     *                      must not be recommended
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @param strategy Receives the value of the {@link
+     *                 Constants.Headers#STRATEGY} debug header
+     * @return A {@link List} of movie titles most similar to those in
+     *         {@code watchedMovies}
+     */
+    protected List<Ranking> recommend(List<String> watchedMovies,
+                                      List<String> blockedMovies,
+                                      int maxCount,
+                                      Consumer<String> strategy) {
+        int[] watchedIds = watchedIds(watchedMovies);
+
+        // If the resulting array is empty, return an empty List.
+        if (watchedIds.length == 0 || maxCount < 1)
+            return List.of();
+
+        StrategyDispatcher.Decision decision =
+            dispatch(watchedIds.length, RecommendationEngine.EXACT, true);
+        report(strategy, decision);
+
+        return timed(decision, () -> {
+                // Rank the movies that aren't excluded by the sum of
+                // their cosine similarities to the watched movies,
+                // i.e., by the dot product of the profile and movie
+                // vectors.
+                TopKSelector selection =
+                    selectTop(decision,
+                              filter(watchedIds, blockedMovies),
+                              scorer(mCatalog.profile(watchedIds)),
+                              candidates(maxCount));
+
+                if (mRescore)
+                    // Rescore the best candidates in full precision by id.
+                    selection = rescore(selection,
+                                        id -> CosineSimilarityUtils
+                                            .sumOfCosines(id, watchedIds, mCatalog),
+                                        maxCount);
+
+                // Only look up the titles of the final recommendations.
+                return selection.toRankings(mCatalog::title);
+            });
+    }
+
+    /**
+     * Get the {@link NeighborTable} of the catalog if it can answer a
+     * single-movie request for {@code maxCount} recommendations.
+     *
+     * @param maxCount The number of recommendations requested
+     * @return The {@link NeighborTable} of the catalog, or null if
+     *         it's not ready yet or stores fewer than {@code maxCount}
+     *         neighbors per movie
+     */
+    protected NeighborTable neighborTable(int maxCount) {
+        if (mNeighbors == null)
+            return null;
+
+        NeighborTable table = mNeighbors.table(mCatalog);
+        return table != null && table.covers(maxCount)
+            ? table
+            : null;
+    }
 
     /**
      * Get a {@link Collection} of all movies represented as {@link
@@ -44,6 +586,21 @@ public abstract class BaseService<T> {
      */
     public abstract T getAllMovies();
 
+    /**
+     * Get a page of at most {@code limit} movies in ascending title
+     * order.  Services that don't support pagination return all
+     * movies.
+     *
+     * @param after The title the page follows, or null to start at
+     *              the first movie
+     * @param limit The maximum number of movies in the page
+     * @return A {@link Collection} of movie titles represented as
+     *         {@link String} objects
+     */
+    public T getAllMovies(String after, int limit) {
+        return getAllMovies();
+    }
+
     /**
      * Search for the movie titles in the database containing the
      * given query {@link String}.
@@ -54,6 +611,30 @@ public abstract class BaseService<T> {
      */
     public abstract T search(String query);
 
+    /**
+     * Search for at most {@code limit} movie titles in the database
+     * containing the given query {@link String}.  Services that don't
+     * support a limit return all matching titles.
+     *
+     * @param query The search query
+     * @param limit The maximum number of titles returned
+     * @return A {@link List} of movie titles containing the query
+     *         represented as {@link String} objects
+     */
+    public T search(String query, int limit) {
+        return search(query);
+    }
+
+    /**
+     * Complete a prefix of a movie title, ignoring case.
+     *
+     * @param prefix The start of a movie title
+     * @param limit The maximum number of titles returned
+     * @return A {@link List} of at most {@code limit} movie titles
+     *         starting with the {@code prefix}
+     */
+    public abstract T autocomplete(String prefix, int limit);
+
     /**
      * Recommend maxCount movies from our movie database as a function
      * of a single watched movie, indicated by a request parameter
@@ -66,8 +647,88 @@ public abstract class BaseService<T> {
      * @return A {@link List} of movie titles most similar to the
      *         {@code watchedMovie}
      */
+    public T getRecommendations(String watchedMovie,
+                                int maxCount) {
+        // Use the configured recommendation engine.
+        return getRecommendations(watchedMovie,
+                                  maxCount,
+                                  defaultEngine());
+    }
+
+    /**
+     * Recommend maxCount movies from our movie database as a function
+     * of a single watched movie using the given {@link
+     * RecommendationEngine}.
+     *
+     * @param watchedMovie A {@link String} indicating the title of the movie
+     *                     that has been watched
+     * @param maxCount     The upper limit for the number of recommendations
+     *                     returned
+     * @param engine       The {@link RecommendationEngine} to use
+     * @return A {@link List} of movie titles most similar to the
+     *         {@code watchedMovie}
+     */
+    public T getRecommendations(String watchedMovie,
+                                int maxCount,
+                                RecommendationEngine engine) {
+        // Don't report how the recommendations are computed.
+        return getRecommendations(watchedMovie,
+                                  maxCount,
+                                  engine,
+                                  header -> {});
+    }
+
+    /**
+     * Recommend maxCount movies from our movie database as a function
+     * of a single watched movie using the given {@link
+     * RecommendationEngine}, reporting how they are computed.
+     *
+     * @param watchedMovie A {@link String} indicating the title of the movie
+     *                     that has been watched
+     * @param maxCount     The upper limit for the number of recommendations
+     *                     returned
+     * @param engine       The {@link RecommendationEngine} to use
+     * @param strategy     Receives the value of the {@link
+     *                     Constants.Headers#STRATEGY} debug header of
+     *                     the request by the time the recommendations
+     *                     are complete
+     * @return A {@link List} of movie titles most similar to the
+     *         {@code watchedMovie}
+     */
     public abstract T getRecommendations(String watchedMovie,
-                                         int maxCount);
+                                         int maxCount,
+                                         RecommendationEngine engine,
+                                         Consumer<String> strategy);
+
+    /**
+     * Measure how many of the exact top {@code k} recommendations an
+     * approximate {@link RecommendationEngine} finds.
+     *
+     * @param engine  An approximate {@link RecommendationEngine}
+     * @param k       The number of recommendations per sampled movie
+     * @param samples The number of movies to sample
+     * @return A {@link RecallReport} comparing the engine with an
+     *         exact scan of the catalog
+     */
+    public RecallReport getRecallReport(RecommendationEngine engine,
+                                        int k,
+                                        int samples) {
+        return RecallReport
+            .measure(engine, mIndexes.index(engine, mCatalog), k, samples);
+    }
+
+    /**
+     * Measure how long it takes to score the catalog when every movie
+     * is handed off to a rail individually compared with scoring
+     * contiguous chunks of movies of increasing size per rail.
+     *
+     * @param k       The number of recommendations per sampled movie
+     * @param samples The number of movies to sample
+     * @return A {@link SchedulingReport} comparing both schedules
+     */
+    public SchedulingReport getSchedulingReport(int k, int samples) {
+        return SchedulingReport.measure(mCatalog, rails(), k, samples);
+    }
 
     /**
      * Recommend the given number of movies from our database as a
@@ -81,6 +742,78 @@ public abstract class BaseService<T> {
      * @return A {@link List} of movie titles most similar to those in
      *         {@code watchedMovies}
      */
+    public T getRecommendations(List<String> watchedMovies,
+                                int maxCount) {
+        return getRecommendations(watchedMovies, List.of(), maxCount);
+    }
+
+    /**
+     * Recommend the given number of movies from our database as a
+     * function of films the user has watched previously, never
+     * recommending any of the {@code blockedMovies}.
+     *
+     * @param watchedMovies A {@link List} of titles of movies the
+     *                      user has watched
+     * @param blockedMovies A {@link List} of titles of movies that
+     *                      must not be recommended
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @return A {@link List} of movie titles most similar to those in
+     *         {@code watchedMovies}
+     */
+    public T getRecommendations(List<String> watchedMovies,
+                                List<String> blockedMovies,
+                                int maxCount) {
+        // Don't report how the recommendations are computed.
+        return getRecommendations(watchedMovies,
+                                  blockedMovies,
+                                  maxCount,
+                                  header -> {});
+    }
+
+    /**
+     * Recommend the given number of movies from our database as a
+     * function of films the user has watched previously, never
+     * recommending any of the {@code blockedMovies}, reporting how
+     * they are computed.
+     *
+     * @param watchedMovies A {@link List} of titles of movies the
+     *                      user has watched
+     * @param blockedMovies A {@link List} of titles of movies that
+     *                      must not be recommended
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @param strategy Receives the value of the {@link
+     *                 Constants.Headers#STRATEGY} debug header of the
+     *                 request by the time the recommendations are
+     *                 complete
+     * @return A {@link List} of movie titles most similar to those in
+     *         {@code watchedMovies}
+     */
     public abstract T getRecommendations(List<String> watchedMovies,
-                                         int maxCount);
+                                         List<String> blockedMovies,
+                                         int maxCount,
+                                         Consumer<String> strategy);
+
+    /**
+     * Recommend movies to many users at once, scoring the catalog a
+     * single time against the profiles of all users via a {@link
+     * BatchRecommender}.  This default implementation scores the
+     * blocks of movies in the calling thread, whereas services can
+     * override it to score the blocks concurrently.
+     *
+     * @param requests The {@link RecommendationRequest} of each user
+     * @return A {@link List} of the {@link Ranking} objects recommended
+     *         to each user, in the order of the {@code requests}
+     */
+    public List<List<Ranking>> getBatchRecommendations
+        (List<RecommendationRequest> requests) {
+        BatchRecommender recommender = batchRecommender(requests);
+
+        TopKSelector[] selectors = recommender.newSelectors();
+        for (int block = 0; block < recommender.blocks(); block++)
+            recommender.scoreBlock(block, selectors);
+
+        return recommender.toRankings(selectors);
+    }
 }
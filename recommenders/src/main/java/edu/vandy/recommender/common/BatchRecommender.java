@@ -0,0 +1,231 @@
+package edu.vandy.recommender.common;
+
+import edu.vandy.recommender.common.model.Ranking;
+import edu.vandy.recommender.common.model.RecommendationRequest;
+import edu.vandy.recommender.utils.TopKSelector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * This class recommends movies to many users at once by scoring the
+ * catalog in a single pass against the profile vectors of all users,
+ * i.e., as the matrix-matrix product of the catalog vectors and the
+ * user profiles.
+ *
+ * The product is computed in blocks of {@link #MOVIE_BLOCK} movies by
+ * {@link #USER_BLOCK} users, so the vectors of a block of movies stay
+ * in cache while they are scored against a block of users, rather
+ * than streaming the whole catalog through the cache once per user.
+ * Each block of movies can be scored by a different thread into its
+ * own {@link TopKSelector}s, which are then merged.
+ *
+ * Watched titles are resolved and the final recommendations rescored
+ * the same way as for a single user, so a batch recommends the same
+ * movies as the equivalent individual requests.
+ */
+public final class BatchRecommender {
+    /**
+     * The number of movies scored per block.
+     */
+    public static final int MOVIE_BLOCK = 256;
+
+    /**
+     * The number of users scored per block.
+     */
+    public static final int USER_BLOCK = 32;
+
+    /**
+     * The catalog containing all movie vectors.
+     */
+    private final MovieCatalog mCatalog;
+
+    /**
+     * The profile {@link MovieCatalog.Query} of each user, which is
+     * null if none of the user's watched movies are in the catalog.
+     */
+    private final MovieCatalog.Query[] mProfiles;
+
+    /**
+     * The {@link MovieFilter} of each user, which excludes the
+     * watched and blocked movies from the user's recommendations.
+     */
+    private final MovieFilter[] mFilters;
+
+    /**
+     * The number of recommendations requested by each user, which
+     * never exceeds the size of the catalog.
+     */
+    private final int[] mMaxCounts;
+
+    /**
+     * The distinct ids of the watched movies of each user.
+     */
+    private final int[][] mWatchedIds;
+
+    /**
+     * True if each user's best candidates are rescored in full
+     * precision before they are returned, else false.
+     */
+    private final boolean mRescore;
+
+    /**
+     * Constructor prepares the profile of each user.
+     *
+     * @param catalog The {@link MovieCatalog} containing all vectors
+     * @param requests The {@link RecommendationRequest} of each user
+     * @param resolver Resolves a watched movie title to its movie id,
+     *                 or to -1 if it isn't in the {@code catalog}
+     * @param rescore True if {@link BaseService#RESCORE_CANDIDATES_FACTOR}
+     *                candidates per recommendation are selected and
+     *                rescored in full precision, else false
+     */
+    public BatchRecommender(MovieCatalog catalog,
+                            List<RecommendationRequest> requests,
+                            ToIntFunction<String> resolver,
+                            boolean rescore) {
+        mCatalog = catalog;
+        mRescore = rescore;
+        mProfiles = new MovieCatalog.Query[requests.size()];
+        mFilters = new MovieFilter[requests.size()];
+        mMaxCounts = new int[requests.size()];
+        mWatchedIds = new int[requests.size()][];
+
+        for (int user = 0; user < requests.size(); user++) {
+            RecommendationRequest request = requests.get(user);
+
+            // Resolve the ids of the watched movies in the catalog.
+            int[] watchedIds = ids(request.watchedMovies, resolver);
+            mWatchedIds[user] = watchedIds;
+            mMaxCounts[user] =
+                Math.min(Math.max(request.maxCount, 0), catalog.size());
+
+            // Exclude the watched and blocked movies.
+            mFilters[user] = new MovieFilter(catalog.size())
+                .exclude(watchedIds)
+                .exclude(ids(request.blockedMovies, catalog::indexOf));
+
+            // Users without any known watched movies get no
+            // recommendations.
+            if (watchedIds.length > 0 && mMaxCounts[user] > 0)
+                mProfiles[user] = catalog.profile(watchedIds);
+        }
+    }
+
+    /**
+     * @return The distinct ids the {@code titles} are resolved to,
+     *         which is empty if {@code titles} is null
+     */
+    private static int[] ids(List<String> titles,
+                             ToIntFunction<String> resolver) {
+        return titles == null
+            ? new int[0]
+            : titles
+                .stream()
+                .mapToInt(resolver)
+                .filter(id -> id >= 0)
+                .distinct()
+                .toArray();
+    }
+
+    /**
+     * @return The number of blocks of movies in the catalog
+     */
+    public int blocks() {
+        return (mCatalog.size() + MOVIE_BLOCK - 1) / MOVIE_BLOCK;
+    }
+
+    /**
+     * @return A new empty {@link TopKSelector} for each user, which
+     *         selects no more candidates than there are movies
+     */
+    public TopKSelector[] newSelectors() {
+        TopKSelector[] selectors = new TopKSelector[mProfiles.length];
+        for (int user = 0; user < selectors.length; user++) {
+            // Compute the number of candidates in long arithmetic so
+            // the rescore factor can't overflow.
+            long candidates = mRescore
+                ? (long) mMaxCounts[user] * BaseService.RESCORE_CANDIDATES_FACTOR
+                : mMaxCounts[user];
+            selectors[user] = new TopKSelector
+                ((int) Math.min(candidates, mCatalog.size()));
+        }
+        return selectors;
+    }
+
+    /**
+     * Score one block of movies against all users and offer each
+     * movie to the {@link TopKSelector} of each user who hasn't
+     * watched or blocked it.
+     *
+     * @param block The number of the block of movies
+     * @param selectors The {@link TopKSelector} of each user
+     * @return The {@code selectors}
+     */
+    public TopKSelector[] scoreBlock(int block, TopKSelector[] selectors) {
+        int fromId = block * MOVIE_BLOCK;
+        int toId = Math.min(fromId + MOVIE_BLOCK, mCatalog.size());
+
+        for (int fromUser = 0;
+             fromUser < mProfiles.length;
+             fromUser += USER_BLOCK) {
+            int toUser = Math.min(fromUser + USER_BLOCK, mProfiles.length);
+
+            for (int id = fromId; id < toId; id++)
+                for (int user = fromUser; user < toUser; user++) {
+                    MovieCatalog.Query profile = mProfiles[user];
+                    if (profile != null
+                        && !mFilters[user].excludes(id))
+                        selectors[user]
+                            .offer(id, mCatalog.score(profile, id));
+                }
+        }
+
+        return selectors;
+    }
+
+    /**
+     * Merge the {@link TopKSelector}s of two sets of blocks.
+     *
+     * @param selectors The {@link TopKSelector} of each user
+     * @param other Another {@link TopKSelector} of each user
+     * @return The merged {@code selectors}
+     */
+    public static TopKSelector[] merge(TopKSelector[] selectors,
+                                       TopKSelector[] other) {
+        for (int user = 0; user < selectors.length; user++)
+            selectors[user].merge(other[user]);
+        return selectors;
+    }
+
+    /**
+     * Create the recommendations of each user, first rescoring the
+     * best candidates of each user in full precision if enabled.
+     *
+     * @param selectors The {@link TopKSelector} of each user after
+     *                  all blocks were scored
+     * @return The {@link Ranking} objects recommended to each user in
+     *         descending similarity order, in the order of the
+     *         requests
+     */
+    public List<List<Ranking>> toRankings(TopKSelector[] selectors) {
+        List<List<Ranking>> rankings = new ArrayList<>(selectors.length);
+        for (int user = 0; user < selectors.length; user++) {
+            TopKSelector selector = selectors[user];
+
+            if (mRescore) {
+                // Rescore the best candidates in full precision by id.
+                int[] watchedIds = mWatchedIds[user];
+                selector = GetTopRecommendationsStream
+                    .rescore(selector,
+                             id -> CosineSimilarityUtils
+                                 .sumOfCosines(id, watchedIds, mCatalog),
+                             mMaxCounts[user]);
+            }
+
+            rankings.add(selector.toRankings(mCatalog::title));
+        }
+        return rankings;
+    }
+}
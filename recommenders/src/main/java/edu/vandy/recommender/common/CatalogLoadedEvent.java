@@ -0,0 +1,11 @@
+package edu.vandy.recommender.common;
+
+/**
+ * This event is published once the {@link MovieCatalog} bean has been
+ * loaded, so the structures derived from the catalog can be built in
+ * the background before the first request that needs them.
+ *
+ * @param catalog The {@link MovieCatalog} that was loaded
+ */
+public record CatalogLoadedEvent(MovieCatalog catalog) {
+}
@@ -0,0 +1,83 @@
+package edu.vandy.recommender.common;
+
+import edu.vandy.recommender.common.model.Ranking;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds the titles of a {@link MovieCatalog} and their
+ * {@link Ranking} objects, which are created once per catalog rather
+ * than once per request for all movies.
+ *
+ * Both lists are unmodifiable and in ascending title order, i.e., in
+ * movie id order, so a page of movies following a given title is a
+ * {@link List#subList(int, int)} view found by binary search.  The
+ * {@link Ranking} objects are shared by all requests and must not be
+ * modified.
+ */
+public final class CatalogView {
+    /**
+     * The catalog the view was created from.
+     */
+    private final MovieCatalog mCatalog;
+
+    /**
+     * The titles of all movies in ascending order.
+     */
+    private final List<String> mTitles;
+
+    /**
+     * A {@link Ranking} for each title in the same order.
+     */
+    private final List<Ranking> mRankings;
+
+    /**
+     * Constructor creates the {@link Ranking} objects.
+     *
+     * @param catalog The {@link MovieCatalog} to view
+     */
+    public CatalogView(MovieCatalog catalog) {
+        mCatalog = catalog;
+        mTitles = catalog.titles();
+        mRankings = Collections
+            .unmodifiableList(Converters.titles2Rankings(mTitles));
+    }
+
+    /**
+     * @param catalog A {@link MovieCatalog}
+     * @return True if this view was created from the {@code catalog},
+     *         else false
+     */
+    public boolean isViewOf(MovieCatalog catalog) {
+        return mCatalog == catalog;
+    }
+
+    /**
+     * @return A {@link Ranking} for every movie in ascending title
+     *         order
+     */
+    public List<Ranking> rankings() {
+        return mRankings;
+    }
+
+    /**
+     * Get a page of movies in ascending title order.
+     *
+     * @param after The title the page follows, which need not be in
+     *              the catalog, or null to start at the first movie
+     * @param limit The maximum number of movies in the page
+     * @return A {@link Ranking} for each movie in the page
+     */
+    public List<Ranking> page(String after, int limit) {
+        int from = 0;
+        if (after != null) {
+            // Skip the 'after' title if it's in the catalog.
+            int index = Collections.binarySearch(mTitles, after);
+            from = index >= 0 ? index + 1 : -index - 1;
+        }
+
+        int to = from + Math.min(Math.max(limit, 0), mTitles.size() - from);
+        return mRankings.subList(from, to);
+    }
+}
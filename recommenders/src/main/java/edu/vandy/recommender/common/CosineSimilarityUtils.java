@@ -1,5 +1,7 @@
 package edu.vandy.recommender.common;
 
+import edu.vandy.recommender.common.ParallelismPolicy.Mode;
+
 import java.util.List;
 import java.util.Map;
 import java.util.stream.IntStream;
@@ -8,7 +10,8 @@ import java.util.stream.StreamSupport;
 /**
  * This class computes the cosine similarity value for two {@link
  * List}s of {@link Double} objects using Java sequential or parallel
- * streams.
+ * streams.  It also provides primitive loops that operate directly on
+ * the row-major vectors stored in a {@link MovieCatalog}.
  */
 public class CosineSimilarityUtils {
     /**
@@ -18,13 +21,20 @@ public class CosineSimilarityUtils {
      *
      * @param a The first {@link List} of {@link Double} objects
      * @param b The second {@link List} of {@link Double} objects
-     * @param parallel True if parallel streams should be used, else false if
-     *                 sequential streams should be used
+     * @param parallel True if parallel streams may be used, else false if
+     *                 sequential streams should be used.  Parallel streams
+     *                 are only used if the {@link ParallelismPolicy} runs
+     *                 the elements of the vectors in parallel, so they
+     *                 are never started by a thread running parallel work
      * @return The computed cosine similarity index
      */
     public static double cosineSimilarity(List<Double> a,
                                           List<Double> b,
                                           boolean parallel) {
+        // Only run the elements in parallel if the policy allows it.
+        parallel = parallel
+            && ParallelismPolicy.choose(1, a.size()) == Mode.INNER;
+
         // The implementation below is based on suggestions at
         // https://stackoverflow.com/a/52702353 and makes sense if the
         // size of the lists is quite large! This program might be
@@ -69,6 +79,11 @@ public class CosineSimilarityUtils {
      * @param watchedMovies {@link List} of watched movies to compare
      *                      with the vector
      * @param vectorMap {@link Map} from movie to its vector
+     * @param parallel True if parallel streams may be used, else false
+     *                 if sequential streams should be used.  The
+     *                 {@link ParallelismPolicy} decides whether the
+     *                 watched movies or the elements of each vector
+     *                 run in parallel, but never both
      * @return A {@link double} containing the sum of cosine
      *         similarities
      */
@@ -76,18 +91,150 @@ public class CosineSimilarityUtils {
                                       List<String> watchedMovies,
                                       Map<String, List<Double>> vectorMap,
                                       boolean parallel) {
+        Mode mode = parallel
+            ? ParallelismPolicy.choose(watchedMovies.size(), vector.size())
+            : Mode.SEQUENTIAL;
+
         return StreamSupport
-            // Create either a parallel or sequential Stream.
-            .stream(watchedMovies.spliterator(), parallel)
+            // Create a parallel Stream if the watched movies run in
+            // parallel, else a sequential Stream.
+            .stream(watchedMovies.spliterator(), mode == Mode.OUTER)
 
             // Compute the cosine similarity of each watched movie
-            // with the vector.
+            // with the vector, running its elements in parallel only
+            // if the watched movies don't.
             .map(watchedMovie -> CosineSimilarityUtils
                  .cosineSimilarity(vector,
                                    vectorMap.get(watchedMovie),
-                                   parallel))
+                                   mode == Mode.INNER))
 
             // Sum all the cosine similarities together.
             .reduce(0.0, Double::sum);
     }
+
+    /**
+     * Compute the dot product of two vectors stored in primitive
+     * arrays.
+     *
+     * @param a The array containing the first vector
+     * @param aOffset The index in {@code a} where the first vector
+     *                starts
+     * @param b The array containing the second vector
+     * @param bOffset The index in {@code b} where the second vector
+     *                starts
+     * @param length The number of elements in each vector
+     * @return The dot product of the two vectors
+     */
+    public static double dotProduct(double[] a,
+                                    int aOffset,
+                                    double[] b,
+                                    int bOffset,
+                                    int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++)
+            sum += a[aOffset + i] * b[bOffset + i];
+        return sum;
+    }
+
+    /**
+     * Compute the L2 norm of a vector stored in a primitive array.
+     *
+     * @param a The array containing the vector
+     * @param offset The index in {@code a} where the vector starts
+     * @param length The number of elements in the vector
+     * @return The L2 norm of the vector
+     */
+    public static double norm(double[] a,
+                              int offset,
+                              int length) {
+        return Math.sqrt(dotProduct(a, offset, a, offset, length));
+    }
+
+    /**
+     * Scale a vector to unit length.  A vector whose norm is zero is
+     * copied as all zeros, so its dot product with any other vector
+     * is zero.
+     *
+     * @param a The array containing the vector
+     * @param offset The index in {@code a} where the vector starts
+     * @param out The array that receives the normalized vector
+     * @param outOffset The index in {@code out} where the normalized
+     *                  vector starts
+     * @param length The number of elements in the vector
+     * @return The L2 norm of the original vector
+     */
+    public static double normalize(double[] a,
+                                   int offset,
+                                   double[] out,
+                                   int outOffset,
+                                   int length) {
+        double norm = norm(a, offset, length);
+        double scale = norm == 0.0 ? 0.0 : 1.0 / norm;
+
+        for (int i = 0; i < length; i++)
+            out[outOffset + i] = a[offset + i] * scale;
+
+        return norm;
+    }
+
+    /**
+     * Calculates the sum of cosine similarities of the movie with the
+     * given {@code id} with each of the {@code watchedIds} movies
+     * in full precision.
+     *
+     * @param id The id of the movie we want to calculate similarity
+     * @param watchedIds The ids of the watched movies to compare with
+     * @param catalog The {@link MovieCatalog} containing all vectors
+     * @return The sum of cosine similarities
+     */
+    public static double sumOfCosines(int id,
+                                      int[] watchedIds,
+                                      MovieCatalog catalog) {
+        double sum = 0.0;
+        for (int watchedId : watchedIds)
+            sum += catalog.cosineSimilarity(id, watchedId);
+        return sum;
+    }
+
+    /**
+     * Calculates the sum of cosine similarities of the movie with the
+     * given {@code id} with each of the {@code watched} queries using
+     * the {@link VectorPrecision} of the {@link MovieCatalog}.
+     *
+     * @param id The id of the movie we want to calculate similarity
+     * @param watched The prepared queries of the watched movies
+     * @param catalog The {@link MovieCatalog} containing all vectors
+     * @return The sum of cosine similarities
+     */
+    public static double sumOfCosines(int id,
+                                      MovieCatalog.Query[] watched,
+                                      MovieCatalog catalog) {
+        double sum = 0.0;
+        for (MovieCatalog.Query query : watched)
+            sum += catalog.score(query, id);
+        return sum;
+    }
+
+    /**
+     * Compute the full precision cosine similarity of a normalized
+     * query vector with each of the first {@code count} {@code
+     * candidates}, which is used to rescore the candidates found by
+     * an approximate index.
+     *
+     * @param unitQuery A query vector of unit length
+     * @param candidates The ids of the candidate movies
+     * @param count The number of candidates to score
+     * @param catalog The {@link MovieCatalog} containing all vectors
+     * @return The cosine similarity of each candidate
+     */
+    public static double[] cosineSimilarities(double[] unitQuery,
+                                              int[] candidates,
+                                              int count,
+                                              MovieCatalog catalog) {
+        double[] similarities = new double[count];
+        for (int i = 0; i < count; i++)
+            similarities[i] = catalog
+                .cosineSimilarity(unitQuery, candidates[i]);
+        return similarities;
+    }
 }
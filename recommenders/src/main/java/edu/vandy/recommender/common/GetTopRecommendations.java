@@ -36,7 +36,9 @@ public class GetTopRecommendations {
         var results = new ArrayList<Ranking>();
 
         // Iterate through the top maxCount entries.
-        for (var entry : GetTopK.getTopK(similarityCollection, maxCount))
+        for (var entry : GetTopK.getTopK(similarityCollection,
+                                         maxCount,
+                                         Ranking::getCosineSimilarity))
             // Add just the movie titles.
             results.add(new Ranking(entry.getTitle(),
                        0.0));
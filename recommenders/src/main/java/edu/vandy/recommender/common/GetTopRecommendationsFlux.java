@@ -2,10 +2,15 @@ package edu.vandy.recommender.common;
 
 import edu.vandy.recommender.common.model.Ranking;
 import edu.vandy.recommender.utils.GetTopK;
+import edu.vandy.recommender.utils.TopKSelector;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.core.publisher.ParallelFlux;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.Comparator;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
 
 /**
  * This Java utility class provides static methods that use the
@@ -35,7 +40,144 @@ public class GetTopRecommendationsFlux {
          int maxCount) {
         return rankingFlux
             // Collect the top maxCount entries into a Flux.
-            .transform(GetTopK.getTopK(maxCount));
+            .transform(GetTopK.getTopK(maxCount,
+                                        Ranking::getCosineSimilarity));
+    }
+
+    /**
+     * Select the {@code maxCount} best movie ids from a {@link
+     * ParallelFlux} of distinct movie ids without creating any
+     * {@link Ranking} objects, keeping a {@link TopKSelector} per rail
+     * and merging them.
+     *
+     * @param ids A {@link ParallelFlux} of distinct movie ids
+     * @param scorer Computes the similarity of a movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return A {@link Mono} that emits the {@link TopKSelector} of
+     *         the best ids, or an empty {@link Mono} if {@code
+     *         maxCount} is less than 1
+     */
+    public static Mono<TopKSelector> selectTopParallel
+        (ParallelFlux<Integer> ids,
+         IntToDoubleFunction scorer,
+         int maxCount) {
+        if (maxCount < 1)
+            // Return an empty Mono if maxCount < 1.
+            return Mono.empty();
+
+        return ids
+            // Keep the top maxCount movies of each rail.
+            .reduce(() -> new TopKSelector(maxCount),
+                    (selector, id) -> {
+                        selector.offer(id, scorer.applyAsDouble(id));
+                        return selector;
+                    })
+
+            // Merge the selections of all the rails.
+            .reduce(TopKSelector::merge);
+    }
+
+    /**
+     * Select the {@code maxCount} best movies that aren't excluded by
+     * the {@code filter} by splitting the catalog into contiguous
+     * chunks of ids and scoring each chunk in a tight loop on one rail
+     * of a {@link ParallelFlux}.  Only the chunk numbers are handed
+     * off between threads, rather than every movie id, so the cost of
+     * scheduling is paid once per chunk instead of once per movie.
+     *
+     * @param filter The {@link MovieFilter} of the movies to skip,
+     *               whose size is the number of movies in the catalog
+     * @param rails The number of rails scoring chunks in parallel
+     * @param chunkSize The number of movie ids in each chunk
+     * @param scorer Computes the similarity of a movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return A {@link Mono} that emits the {@link TopKSelector} of
+     *         the best ids, or an empty {@link Mono} if {@code
+     *         maxCount} is less than 1
+     */
+    public static Mono<TopKSelector> selectTopChunked
+        (MovieFilter filter,
+         int rails,
+         int chunkSize,
+         IntToDoubleFunction scorer,
+         int maxCount) {
+        if (maxCount < 1)
+            // Return an empty Mono if maxCount < 1.
+            return Mono.empty();
+
+        int size = filter.size();
+        int chunks = (size + chunkSize - 1) / chunkSize;
+
+        return Flux
+            // Convert the chunk numbers to a Flux.
+            .range(0, chunks)
+
+            // Convert the Flux to a ParallelFlux.
+            .parallel(rails)
+
+            // Run the ParallelFlux on the parallel() Scheduler.
+            .runOn(Schedulers.parallel())
+
+            // Score every movie of each chunk that isn't excluded and
+            // keep the top maxCount movies of each rail.
+            .reduce(() -> new TopKSelector(maxCount),
+                    (selector, chunk) -> {
+                        int to = Math.min(chunk * chunkSize + chunkSize, size);
+                        for (int id = filter.nextIncluded(chunk * chunkSize);
+                             id < to;
+                             id = filter.nextIncluded(id + 1))
+                            selector.offer(id, scorer.applyAsDouble(id));
+                        return selector;
+                    })
+
+            // Merge the selections of all the rails.
+            .reduce(TopKSelector::merge);
+    }
+
+    /**
+     * Recompute the similarity of each selected movie id with the
+     * given {@code exactScorer} and keep the {@code maxCount} best.
+     * This is used to rescore candidates that were selected with
+     * reduced precision vectors.
+     *
+     * @param candidates A {@link Mono} that emits a {@link
+     *                   TopKSelector} of candidate movie ids
+     * @param exactScorer Computes the full precision similarity of a
+     *                    movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return A {@link Mono} that emits a {@link TopKSelector} of the
+     *         best rescored ids
+     */
+    public static Mono<TopKSelector> rescore
+        (Mono<TopKSelector> candidates,
+         IntToDoubleFunction exactScorer,
+         int maxCount) {
+        return candidates
+            // Offer every candidate with its full precision score.
+            .map(selector -> {
+                TopKSelector rescored =
+                    new TopKSelector(Math.max(maxCount, 0));
+                for (int id : selector.ids())
+                    rescored.offer(id, exactScorer.applyAsDouble(id));
+                return rescored;
+            });
+    }
+
+    /**
+     * Create the {@link Ranking} objects of the selected movie ids,
+     * which is the only place titles are looked up.
+     *
+     * @param selection A {@link Mono} that emits a {@link
+     *                  TopKSelector} of movie ids
+     * @param titles Maps a movie id to its title
+     * @return A {@link Flux} of movie titles ranked in descending
+     *         similarity order
+     */
+    public static Flux<Ranking> toRankings(Mono<TopKSelector> selection,
+                                           IntFunction<String> titles) {
+        return selection
+            // Create Ranking objects for the winners only.
+            .flatMapIterable(selector -> selector.toRankings(titles));
     }
 
     /**
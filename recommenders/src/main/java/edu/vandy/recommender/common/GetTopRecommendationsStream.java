@@ -2,10 +2,14 @@ package edu.vandy.recommender.common;
 
 import edu.vandy.recommender.common.model.Ranking;
 import edu.vandy.recommender.utils.GetTopK;
+import edu.vandy.recommender.utils.TopKSelector;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.function.IntToDoubleFunction;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This utility class provides static methods that use the Java Stream
@@ -36,7 +40,9 @@ public class GetTopRecommendationsStream {
          int maxCount) {
         return GetTopK
             // Get the top maxCount entries.
-            .getTopK(similarityStream, maxCount)
+            .getTopK(similarityStream,
+                     maxCount,
+                     Ranking::getCosineSimilarity)
 
             // Collect and return ordered movie title list.
             .toList();
@@ -72,4 +78,55 @@ public class GetTopRecommendationsStream {
             // Collect and return ordered movie title list.
             .toList();
     }
+
+    /**
+     * Select the {@code maxCount} best movie ids traversed by a
+     * {@link Spliterator} without creating any {@link Ranking}
+     * objects.  A parallel stream keeps a {@link TopKSelector} per
+     * fork-join task and merges them, and it runs in the {@link
+     * java.util.concurrent.ForkJoinPool} of the calling task.
+     *
+     * @param ids A {@link Spliterator.OfInt} of distinct movie ids
+     * @param parallel True if the ids should be scored by a parallel
+     *                 stream, else false
+     * @param scorer Computes the similarity of a movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return The {@link TopKSelector} of the best ids
+     */
+    public static TopKSelector selectTop(Spliterator.OfInt ids,
+                                         boolean parallel,
+                                         IntToDoubleFunction scorer,
+                                         int maxCount) {
+        return StreamSupport
+            // Create a parallel or sequential IntStream of the ids.
+            .intStream(ids, parallel)
+
+            // Keep the top maxCount movies of each task and merge
+            // the selections of all the tasks.
+            .collect(() -> new TopKSelector(Math.max(maxCount, 0)),
+                     (selector, id) -> selector
+                         .offer(id, scorer.applyAsDouble(id)),
+                     TopKSelector::merge);
+    }
+
+    /**
+     * Recompute the similarity of each selected movie id with the
+     * given {@code exactScorer} and keep the {@code maxCount} best.
+     * This is used to rescore candidates that were selected with
+     * reduced precision vectors.
+     *
+     * @param candidates The {@link TopKSelector} of candidate ids
+     * @param exactScorer Computes the full precision similarity of a
+     *                    movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return The {@link TopKSelector} of the best candidates
+     */
+    public static TopKSelector rescore(TopKSelector candidates,
+                                       IntToDoubleFunction exactScorer,
+                                       int maxCount) {
+        TopKSelector selector = new TopKSelector(Math.max(maxCount, 0));
+        for (int id : candidates.ids())
+            selector.offer(id, exactScorer.applyAsDouble(id));
+        return selector;
+    }
 }
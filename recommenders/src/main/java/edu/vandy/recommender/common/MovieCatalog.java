@@ -0,0 +1,837 @@
+package edu.vandy.recommender.common;
+
+import edu.vandy.recommender.common.search.TitleBkTree;
+import edu.vandy.recommender.common.search.TitleIndex;
+import edu.vandy.recommender.common.search.TitleTrie;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * This class stores the movie titles and cosine vectors in a packed,
+ * primitive form that the {@link BaseService} implementations scan
+ * directly.
+ *
+ * Each movie is assigned a dense {@code int} id that matches its
+ * position in ascending title order.  All cosine vectors are stored
+ * row-major in one contiguous {@code double[]} and the L2 norm of
+ * each vector is computed once when the catalog is built, so a
+ * similarity scan walks a single array instead of chasing a boxed
+ * {@link Double} reference for every vector element.
+ *
+ * Since the catalog vectors never change, an L2-normalized copy of
+ * every vector is also stored alongside the raw vectors.  The cosine
+ * similarity of two movies is then just the dot product of their
+ * normalized vectors, which is computed by the {@link SimilarityKernel}
+ * the catalog was built with.
+ *
+ * The normalized vectors that recommendations are scored against can
+ * be stored in a reduced {@link VectorPrecision}, i.e., as {@code
+ * float}s or as scalar quantized {@code byte}s with one scale per
+ * vector.  Scans then touch a half or an eighth of the memory.  The
+ * raw {@code double} vectors are only kept alongside a reduced
+ * precision copy when callers rescore their final results, in which
+ * case the {@code cosineSimilarity()} methods compute the similarity
+ * in full precision.  Otherwise they're dropped once the catalog is
+ * built, so the reduced precision actually shrinks the heap, and the
+ * {@code cosineSimilarity()} methods use the reduced precision copy.
+ *
+ * The {@link #asMap()} method provides a read-only {@link Map} view
+ * of the catalog for legacy code that still expects the original
+ * {@code Map<String, List<Double>>} representation.
+ */
+public final class MovieCatalog {
+    /**
+     * The movie titles indexed by movie id in ascending order.
+     */
+    private final String[] mTitles;
+
+    /**
+     * Maps each movie title to its movie id.
+     */
+    private final Map<String, Integer> mIds;
+
+    /**
+     * The number of elements in each cosine vector.
+     */
+    private final int mDimension;
+
+    /**
+     * All cosine vectors stored row-major, i.e., the vector for
+     * movie {@code id} starts at {@code id * mDimension}, or null if
+     * only the reduced precision copy is kept.
+     */
+    private final double[] mVectors;
+
+    /**
+     * The precomputed L2 norm of each cosine vector, or null if only
+     * the reduced precision copy is kept.
+     */
+    private final double[] mNorms;
+
+    /**
+     * The representation used for the scoring vectors.
+     */
+    private final VectorPrecision mPrecision;
+
+    /**
+     * All cosine vectors scaled to unit length, stored row-major in
+     * the same layout as {@link #mVectors}, or null unless the
+     * precision is {@link VectorPrecision#FLOAT64}.
+     */
+    private final double[] mUnitVectors;
+
+    /**
+     * The unit vectors stored as {@code float}s, or null unless the
+     * precision is {@link VectorPrecision#FLOAT32}.
+     */
+    private final float[] mFloatVectors;
+
+    /**
+     * The unit vectors quantized to {@code byte}s, or null unless the
+     * precision is {@link VectorPrecision#INT8}.
+     */
+    private final byte[] mByteVectors;
+
+    /**
+     * The per-vector scale of each quantized vector, or null unless
+     * the precision is {@link VectorPrecision#INT8}.
+     */
+    private final float[] mScales;
+
+    /**
+     * The kernel used to compute dot products of unit vectors.
+     */
+    private final SimilarityKernel mKernel;
+
+    /**
+     * The trigram index of the titles used to search them.
+     */
+    private final TitleIndex mTitleIndex;
+
+    /**
+     * The trie of the titles used to complete title prefixes.
+     */
+    private final TitleTrie mTitleTrie;
+
+    /**
+     * The BK-tree of the titles used to resolve mistyped titles, or
+     * null until it's first needed.
+     */
+    private volatile TitleBkTree mTitleBkTree;
+
+    /**
+     * A hash of the titles and cosine vectors that identifies this
+     * version of the catalog.
+     */
+    private final long mVersion;
+
+    /**
+     * Constructor initializes the fields.
+     *
+     * @param titles The movie titles in ascending order
+     * @param dimension The number of elements in each cosine vector
+     * @param vectors The row-major cosine vectors
+     * @param kernel The kernel used to compute dot products
+     * @param precision The representation of the scoring vectors
+     * @param fullPrecision True if the raw vectors are kept alongside
+     *                      a reduced precision copy, else false
+     */
+    private MovieCatalog(String[] titles,
+                         int dimension,
+                         double[] vectors,
+                         SimilarityKernel kernel,
+                         VectorPrecision precision,
+                         boolean fullPrecision) {
+        // FLOAT64 catalogs always keep the raw vectors, which the
+        // asMap() view exposes to legacy clients.
+        boolean keep = fullPrecision || precision == VectorPrecision.FLOAT64;
+
+        mTitles = titles;
+        mKernel = kernel;
+        mPrecision = precision;
+        mDimension = dimension;
+        mVectors = keep ? vectors : null;
+        mVersion = version(titles, dimension, vectors);
+        mIds = new HashMap<>(titles.length * 2);
+        mTitleIndex = new TitleIndex(Arrays.asList(titles));
+        mTitleTrie = new TitleTrie(Arrays.asList(titles));
+        mNorms = keep ? new double[titles.length] : null;
+        mUnitVectors = precision == VectorPrecision.FLOAT64
+            ? new double[vectors.length]
+            : null;
+        mFloatVectors = precision == VectorPrecision.FLOAT32
+            ? new float[vectors.length]
+            : null;
+        mByteVectors = precision == VectorPrecision.INT8
+            ? new byte[vectors.length]
+            : null;
+        mScales = precision == VectorPrecision.INT8
+            ? new float[titles.length]
+            : null;
+
+        // Holds one normalized row before it is narrowed.
+        double[] row = new double[dimension];
+
+        for (int id = 0; id < titles.length; id++) {
+            mIds.put(titles[id], id);
+            double norm = CosineSimilarityUtils
+                .normalize(vectors, offset(id), row, 0, dimension);
+            if (mNorms != null)
+                mNorms[id] = norm;
+
+            switch (precision) {
+                case FLOAT64 -> System
+                    .arraycopy(row, 0, mUnitVectors, offset(id), dimension);
+                case FLOAT32 -> {
+                    for (int i = 0; i < dimension; i++)
+                        mFloatVectors[offset(id) + i] = (float) row[i];
+                }
+                case INT8 -> mScales[id] =
+                    quantize(row, mByteVectors, offset(id));
+            }
+        }
+    }
+
+    /**
+     * Hash the titles and the bits of every vector element into a
+     * non-zero version.
+     *
+     * @param titles The movie titles in ascending order
+     * @param dimension The number of elements in each cosine vector
+     * @param vectors The row-major cosine vectors
+     * @return The version of a catalog with these contents
+     */
+    private static long version(String[] titles,
+                                int dimension,
+                                double[] vectors) {
+        long version = 31L * titles.length + dimension;
+        for (String title : titles)
+            version = 31L * version + title.hashCode();
+        for (double element : vectors)
+            version = 31L * version + Double.doubleToLongBits(element);
+
+        // Keep 0 free so a version is never mistaken for none.
+        return version == 0 ? 1 : version;
+    }
+
+    /**
+     * Quantize a normalized vector to signed bytes using a symmetric
+     * scale so the largest element maps to 127.
+     *
+     * @param row The normalized vector
+     * @param out The array that receives the quantized vector
+     * @param offset The index in {@code out} where the quantized
+     *               vector starts
+     * @return The scale that converts the quantized elements back to
+     *         their original magnitude
+     */
+    private static float quantize(double[] row,
+                                  byte[] out,
+                                  int offset) {
+        double max = 0.0;
+        for (double value : row)
+            max = Math.max(max, Math.abs(value));
+
+        if (max == 0.0)
+            return 0.0f;
+
+        double scale = max / Byte.MAX_VALUE;
+        for (int i = 0; i < row.length; i++)
+            out[offset + i] = (byte) Math.round(row[i] / scale);
+
+        return (float) scale;
+    }
+
+    /**
+     * Factory method that builds a {@link MovieCatalog} from a
+     * {@link Map} that associates each movie title with its cosine
+     * vector using the {@link SimilarityKernels#defaultKernel()}.
+     *
+     * @param movieMap A {@link Map} of movie titles to cosine vectors
+     * @return A new {@link MovieCatalog}
+     * @throws IllegalArgumentException If the vectors do not all have
+     *         the same number of elements
+     */
+    public static MovieCatalog of(Map<String, List<Double>> movieMap) {
+        return of(movieMap, SimilarityKernels.defaultKernel());
+    }
+
+    /**
+     * Factory method that builds a {@link MovieCatalog} from a
+     * {@link Map} that associates each movie title with its cosine
+     * vector.
+     *
+     * @param movieMap A {@link Map} of movie titles to cosine vectors
+     * @param kernel The {@link SimilarityKernel} used for scoring
+     * @return A new {@link MovieCatalog}
+     * @throws IllegalArgumentException If the vectors do not all have
+     *         the same number of elements
+     */
+    public static MovieCatalog of(Map<String, List<Double>> movieMap,
+                                  SimilarityKernel kernel) {
+        return of(movieMap, kernel, VectorPrecision.FLOAT64);
+    }
+
+    /**
+     * Factory method that builds a {@link MovieCatalog} from a
+     * {@link Map} that associates each movie title with its cosine
+     * vector.
+     *
+     * @param movieMap A {@link Map} of movie titles to cosine vectors
+     * @param kernel The {@link SimilarityKernel} used for scoring
+     * @param precision The {@link VectorPrecision} of the vectors that
+     *                  recommendations are scored against
+     * @return A new {@link MovieCatalog}
+     * @throws IllegalArgumentException If the vectors do not all have
+     *         the same number of elements
+     */
+    public static MovieCatalog of(Map<String, List<Double>> movieMap,
+                                  SimilarityKernel kernel,
+                                  VectorPrecision precision) {
+        return of(movieMap, kernel, precision, true);
+    }
+
+    /**
+     * Factory method that builds a {@link MovieCatalog} from a
+     * {@link Map} that associates each movie title with its cosine
+     * vector.
+     *
+     * @param movieMap A {@link Map} of movie titles to cosine vectors
+     * @param kernel The {@link SimilarityKernel} used for scoring
+     * @param precision The {@link VectorPrecision} of the vectors that
+     *                  recommendations are scored against
+     * @param fullPrecision True if the raw vectors are kept alongside
+     *                      a reduced {@code precision} copy so results
+     *                      can be rescored in full precision, else
+     *                      false to drop them once the catalog is built
+     * @return A new {@link MovieCatalog}
+     * @throws IllegalArgumentException If the vectors do not all have
+     *         the same number of elements
+     */
+    public static MovieCatalog of(Map<String, List<Double>> movieMap,
+                                  SimilarityKernel kernel,
+                                  VectorPrecision precision,
+                                  boolean fullPrecision) {
+        // Assign ids in ascending title order.
+        String[] titles = movieMap
+            .keySet()
+            .toArray(String[]::new);
+        Arrays.sort(titles);
+
+        int dimension = titles.length == 0
+            ? 0
+            : movieMap.get(titles[0]).size();
+        double[] vectors = new double[titles.length * dimension];
+
+        for (int id = 0; id < titles.length; id++) {
+            List<Double> vector = movieMap.get(titles[id]);
+
+            if (vector.size() != dimension)
+                throw new IllegalArgumentException
+                    ("Vector for \""
+                     + titles[id]
+                     + "\" has "
+                     + vector.size()
+                     + " elements, expected "
+                     + dimension);
+
+            // Unbox the vector into its row.
+            int offset = id * dimension;
+            for (int i = 0; i < dimension; i++)
+                vectors[offset + i] = vector.get(i);
+        }
+
+        return new MovieCatalog(titles,
+                                dimension,
+                                vectors,
+                                kernel,
+                                precision,
+                                fullPrecision);
+    }
+
+    /**
+     * @return An empty {@link MovieCatalog}
+     */
+    public static MovieCatalog empty() {
+        return new MovieCatalog(new String[0],
+                                0,
+                                new double[0],
+                                new ScalarSimilarityKernel(),
+                                VectorPrecision.FLOAT64,
+                                true);
+    }
+
+    /**
+     * @return The number of movies in the catalog
+     */
+    public int size() {
+        return mTitles.length;
+    }
+
+    /**
+     * @return True if the catalog contains no movies, else false
+     */
+    public boolean isEmpty() {
+        return mTitles.length == 0;
+    }
+
+    /**
+     * @return The number of elements in each cosine vector
+     */
+    public int dimension() {
+        return mDimension;
+    }
+
+    /**
+     * Identify the contents of the catalog, e.g., to key data derived
+     * from the catalog that is persisted across restarts.  Catalogs
+     * with the same titles and cosine vectors have the same version.
+     *
+     * @return A non-zero hash of the titles and cosine vectors
+     */
+    public long version() {
+        return mVersion;
+    }
+
+    /**
+     * @return The {@link VectorPrecision} of the scoring vectors
+     */
+    public VectorPrecision precision() {
+        return mPrecision;
+    }
+
+    /**
+     * @return True if similarities are computed from the raw vectors
+     *         in full precision, else false if only the reduced
+     *         precision copy is kept
+     */
+    public boolean fullPrecision() {
+        return mVectors != null;
+    }
+
+    /**
+     * @return The {@link SimilarityKernel} used for scoring
+     */
+    public SimilarityKernel kernel() {
+        return mKernel;
+    }
+
+    /**
+     * @param id A movie id
+     * @return The title of the movie with the given {@code id}
+     */
+    public String title(int id) {
+        return mTitles[id];
+    }
+
+    /**
+     * @param title A movie title
+     * @return The id of the movie with the given {@code title} or
+     *         -1 if the title is not in the catalog
+     */
+    public int indexOf(String title) {
+        Integer id = mIds.get(title);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Resolve a movie title that may be mistyped or differently cased
+     * to the id of the closest title in the catalog.  The {@link
+     * TitleBkTree} used to find the closest title is built the first
+     * time a title doesn't match exactly.
+     *
+     * @param title A movie title
+     * @param maxDistance The largest edit distance, ignoring case, of
+     *                    a title that isn't an exact match, or 0 to
+     *                    only resolve exact matches
+     * @return The id of the movie with the given {@code title} or of
+     *         the closest title within {@code maxDistance} edits, or
+     *         -1 if there is none
+     */
+    public int resolve(String title, int maxDistance) {
+        int id = indexOf(title);
+        if (id >= 0 || maxDistance <= 0)
+            return id;
+
+        TitleBkTree tree = mTitleBkTree;
+        if (tree == null)
+            synchronized (this) {
+                tree = mTitleBkTree;
+                if (tree == null)
+                    mTitleBkTree = tree = new TitleBkTree(titles());
+            }
+
+        return tree.closest(title, maxDistance);
+    }
+
+    /**
+     * @param title A movie title
+     * @return True if the catalog contains the given {@code title},
+     *         else false
+     */
+    public boolean contains(String title) {
+        return mIds.containsKey(title);
+    }
+
+    /**
+     * @return An unmodifiable {@link List} of all movie titles in
+     *         ascending order, indexed by movie id
+     */
+    public List<String> titles() {
+        return Collections.unmodifiableList(Arrays.asList(mTitles));
+    }
+
+    /**
+     * @return The {@link TitleIndex} that searches the titles, which
+     *         identifies titles by their movie id
+     */
+    public TitleIndex titleIndex() {
+        return mTitleIndex;
+    }
+
+    /**
+     * @return The {@link TitleTrie} that completes title prefixes,
+     *         which identifies titles by their movie id
+     */
+    public TitleTrie titleTrie() {
+        return mTitleTrie;
+    }
+
+    /**
+     * @param id A movie id
+     * @return The index in the row-major vector arrays where the
+     *         vector of the movie with the given {@code id} starts
+     */
+    public int offset(int id) {
+        return id * mDimension;
+    }
+
+    /**
+     * Compute the cosine similarity between two movies in the catalog
+     * in full precision, unless only the reduced precision copy is
+     * kept.  With {@link VectorPrecision#FLOAT64} this is the dot
+     * product of their normalized vectors.
+     *
+     * @param a The id of the first movie
+     * @param b The id of the second movie
+     * @return The cosine similarity of the two movies
+     */
+    public double cosineSimilarity(int a, int b) {
+        if (mUnitVectors != null)
+            return mKernel
+                .dotProduct(mUnitVectors, offset(a),
+                            mUnitVectors, offset(b),
+                            mDimension);
+
+        if (mVectors == null)
+            return switch (mPrecision) {
+                case FLOAT32 -> mKernel
+                    .dotProduct(mFloatVectors, offset(a),
+                                mFloatVectors, offset(b),
+                                mDimension);
+                default -> {
+                    // Multiply the quantized elements and scale once.
+                    int aOffset = offset(a), bOffset = offset(b);
+                    long sum = 0;
+                    for (int i = 0; i < mDimension; i++)
+                        sum += mByteVectors[aOffset + i] * mByteVectors[bOffset + i];
+                    yield (double) mScales[a] * mScales[b] * sum;
+                }
+            };
+
+        double norms = mNorms[a] * mNorms[b];
+        return norms == 0.0
+            ? 0.0
+            : mKernel.dotProduct(mVectors, offset(a),
+                                 mVectors, offset(b),
+                                 mDimension) / norms;
+    }
+
+    /**
+     * Compute the cosine similarity between a normalized query vector
+     * and a movie in the catalog in full precision, unless only the
+     * reduced precision copy is kept.  With {@link
+     * VectorPrecision#FLOAT64} this is a single dot product.
+     *
+     * @param unitQuery A query vector of unit length
+     * @param id The id of the movie
+     * @return The cosine similarity of the query and the movie
+     */
+    public double cosineSimilarity(double[] unitQuery, int id) {
+        if (mUnitVectors != null)
+            return mKernel
+                .dotProduct(unitQuery, 0,
+                            mUnitVectors, offset(id),
+                            mDimension);
+
+        if (mVectors == null) {
+            // Multiply by the reduced precision unit vector without
+            // narrowing the query.
+            int offset = offset(id);
+            double sum = 0.0;
+            for (int i = 0; i < mDimension; i++)
+                sum += unitQuery[i] * unitElement(offset + i);
+            return mPrecision == VectorPrecision.INT8
+                ? mScales[id] * sum
+                : sum;
+        }
+
+        return mNorms[id] == 0.0
+            ? 0.0
+            : mKernel.dotProduct(unitQuery, 0,
+                                 mVectors, offset(id),
+                                 mDimension) / mNorms[id];
+    }
+
+    /**
+     * Compute the cosine similarity between a prepared {@link Query}
+     * and a movie using the catalog's {@link VectorPrecision}.  This is
+     * the method used in scoring loops.
+     *
+     * @param query A {@link Query} prepared by this catalog
+     * @param id The id of the movie
+     * @return The (possibly reduced precision) cosine similarity
+     */
+    public double score(Query query, int id) {
+        return switch (mPrecision) {
+            case FLOAT64 -> mKernel
+                .dotProduct(query.mUnit, 0,
+                            mUnitVectors, offset(id),
+                            mDimension);
+            case FLOAT32 -> mKernel
+                .dotProduct(query.mFloats, 0,
+                            mFloatVectors, offset(id),
+                            mDimension);
+            case INT8 -> mScales[id] * mKernel
+                .dotProduct(query.mFloats, 0,
+                            mByteVectors, offset(id),
+                            mDimension);
+        };
+    }
+
+    /**
+     * Prepare a {@link Query} for the movie with the given {@code id}.
+     *
+     * @param id A movie id
+     * @return A {@link Query} for the movie's normalized vector
+     */
+    public Query query(int id) {
+        return new Query(unitVector(id));
+    }
+
+    /**
+     * Prepare a {@link Query} for a normalized query vector.
+     *
+     * @param unitQuery A query vector of unit length
+     * @return A {@link Query} for the vector
+     */
+    public Query query(double[] unitQuery) {
+        return new Query(unitQuery);
+    }
+
+    /**
+     * Prepare a {@link Query} for the profile of several movies, which
+     * is the sum of their normalized vectors.  Since a dot product
+     * distributes over a sum, the score of a movie against the profile
+     * is the sum of its cosine similarities with each of the movies,
+     * which is then computed with a single dot product.
+     *
+     * @param ids The ids of the movies in the profile
+     * @return A {@link Query} for the (unnormalized) profile vector
+     */
+    public Query profile(int[] ids) {
+        double[] profile = new double[mDimension];
+
+        for (int id : ids)
+            addUnitVector(id, profile);
+
+        return new Query(profile);
+    }
+
+    /**
+     * Add a movie's normalized vector to a sum of vectors, e.g., to
+     * compute the centroid of several movies.  A zero vector adds
+     * nothing.
+     *
+     * @param id A movie id
+     * @param sum The vector the movie's unit vector is added to
+     */
+    public void addUnitVector(int id, double[] sum) {
+        int offset = offset(id);
+
+        if (mVectors != null) {
+            double norm = mNorms[id];
+            if (norm != 0.0)
+                for (int i = 0; i < mDimension; i++)
+                    sum[i] += mVectors[offset + i] / norm;
+        } else {
+            double scale = mPrecision == VectorPrecision.INT8
+                ? mScales[id]
+                : 1.0;
+            for (int i = 0; i < mDimension; i++)
+                sum[i] += scale * unitElement(offset + i);
+        }
+    }
+
+    /**
+     * @param index An index in the row-major vector arrays
+     * @return The element of the reduced precision unit vectors at
+     *         the {@code index}, which for {@link VectorPrecision#INT8}
+     *         still has to be multiplied by the vector's scale
+     */
+    private double unitElement(int index) {
+        return mPrecision == VectorPrecision.INT8
+            ? mByteVectors[index]
+            : mFloatVectors[index];
+    }
+
+    /**
+     * Returns a movie's normalized vector that can be used as a
+     * query vector.
+     *
+     * @param id A movie id
+     * @return A new array containing the movie's unit vector
+     */
+    public double[] unitVector(int id) {
+        double[] unitVector = new double[mDimension];
+        addUnitVector(id, unitVector);
+        return unitVector;
+    }
+
+    /**
+     * Returns a read-only boxed view of a movie's cosine vector, which
+     * is its reduced precision unit vector if the raw vectors aren't
+     * kept.
+     *
+     * @param id A movie id
+     * @return A {@link List} view of the movie's cosine vector
+     */
+    public List<Double> vector(int id) {
+        if (mVectors == null)
+            return Arrays
+                .stream(unitVector(id))
+                .boxed()
+                .toList();
+
+        int offset = offset(id);
+
+        return new AbstractList<>() {
+            @Override
+            public Double get(int index) {
+                if (index < 0 || index >= mDimension)
+                    throw new IndexOutOfBoundsException(index);
+                return mVectors[offset + index];
+            }
+
+            @Override
+            public int size() {
+                return mDimension;
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only {@link Map} view of this catalog that
+     * associates each movie title with its (boxed) cosine vector.
+     * The view iterates in ascending title order.
+     *
+     * @return A {@link Map} adapter over this catalog
+     */
+    public Map<String, List<Double>> asMap() {
+        return new AbstractMap<>() {
+            @Override
+            public int size() {
+                return MovieCatalog.this.size();
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return mIds.containsKey(key);
+            }
+
+            @Override
+            public List<Double> get(Object key) {
+                Integer id = mIds.get(key);
+                return id == null ? null : vector(id);
+            }
+
+            @Override
+            public Set<Entry<String, List<Double>>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public int size() {
+                        return MovieCatalog.this.size();
+                    }
+
+                    @Override
+                    public Iterator<Entry<String, List<Double>>> iterator() {
+                        return new Iterator<>() {
+                            private int mNext = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return mNext < mTitles.length;
+                            }
+
+                            @Override
+                            public Entry<String, List<Double>> next() {
+                                if (!hasNext())
+                                    throw new NoSuchElementException();
+                                int id = mNext++;
+                                return new SimpleImmutableEntry<>
+                                    (mTitles[id], vector(id));
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * A normalized query vector in the representations needed to
+     * score it against the catalog, which is prepared once per query
+     * rather than once per scored movie.
+     */
+    public static final class Query {
+        /**
+         * The normalized query vector.
+         */
+        private final double[] mUnit;
+
+        /**
+         * The normalized query vector as {@code float}s.
+         */
+        private final float[] mFloats;
+
+        /**
+         * Constructor initializes the fields.
+         *
+         * @param unit The normalized query vector
+         */
+        private Query(double[] unit) {
+            mUnit = unit;
+            mFloats = new float[unit.length];
+            for (int i = 0; i < unit.length; i++)
+                mFloats[i] = (float) unit[i];
+        }
+
+        /**
+         * @return The normalized query vector, which must not be
+         *         modified by the caller
+         */
+        public double[] vector() {
+            return mUnit;
+        }
+    }
+}
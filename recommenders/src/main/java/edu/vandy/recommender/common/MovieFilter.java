@@ -0,0 +1,91 @@
+package edu.vandy.recommender.common;
+
+/**
+ * This class records which movies of a {@link MovieCatalog} are
+ * excluded from the recommendations of one request, e.g., because
+ * the user has already watched or has blocked them.
+ *
+ * The excluded movies are stored as a bitset of {@code long} words
+ * indexed by movie id, so checking a movie costs a single word load
+ * regardless of how many movies are excluded, and a scoring loop can
+ * skip a whole word of 64 excluded movies at once via {@link
+ * #nextIncluded(int)}.  A bitset of the entire catalog only takes one
+ * bit per movie, so it's cheaper than a compressed bitmap for catalogs
+ * of this size.
+ */
+public final class MovieFilter {
+    /**
+     * The number of movies in the catalog.
+     */
+    private final int mSize;
+
+    /**
+     * Bit {@code id % 64} of word {@code id / 64} is set if the movie
+     * with that id is excluded.
+     */
+    private final long[] mWords;
+
+    /**
+     * Constructor creates a filter that excludes no movies.
+     *
+     * @param size The number of movies in the catalog
+     */
+    public MovieFilter(int size) {
+        mSize = size;
+        mWords = new long[(size + Long.SIZE - 1) / Long.SIZE];
+    }
+
+    /**
+     * @return The number of movies in the catalog
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Exclude the movies with the given ids, ignoring ids that are
+     * not in the catalog.
+     *
+     * @param ids The ids of the movies to exclude
+     * @return This {@link MovieFilter}
+     */
+    public MovieFilter exclude(int... ids) {
+        for (int id : ids)
+            if (id >= 0 && id < mSize)
+                mWords[id >>> 6] |= 1L << id;
+        return this;
+    }
+
+    /**
+     * @param id The id of a movie in the catalog
+     * @return True if the movie is excluded, else false
+     */
+    public boolean excludes(int id) {
+        return (mWords[id >>> 6] & 1L << id) != 0;
+    }
+
+    /**
+     * Find the first movie that isn't excluded, skipping a word of
+     * excluded movies at a time.
+     *
+     * @param from The id to start from
+     * @return The id of the first movie at or after {@code from} that
+     *         isn't excluded, or {@link #size()} if there is none
+     */
+    public int nextIncluded(int from) {
+        if (from >= mSize)
+            return mSize;
+
+        int word = from >>> 6;
+        // The included movies of the first word at or after 'from'.
+        long included = ~mWords[word] & -1L << from;
+        while (included == 0) {
+            if (++word == mWords.length)
+                return mSize;
+            included = ~mWords[word];
+        }
+
+        return Math.min(word * Long.SIZE + Long.numberOfTrailingZeros(included),
+                        mSize);
+    }
+}
@@ -0,0 +1,207 @@
+package edu.vandy.recommender.common;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class provides the {@link NeighborTable} of the {@link
+ * MovieCatalog}, which answers single-movie recommendations without
+ * scanning the catalog.
+ *
+ * The table is built in the background as soon as the catalog is
+ * loaded (the catalog itself is loaded lazily), so requests are
+ * answered by scanning the catalog until the table is ready.  The
+ * build runs in a dedicated {@link ForkJoinPool}, which also runs the
+ * parallel stream that computes the rows, so it never competes with
+ * requests for the common pool.  The table is also saved in the
+ * {@code app.neighbors.directory} under a name containing the {@link
+ * MovieCatalog#version()}, so restarts of a microservice with the same
+ * catalog memory-map the saved table instead of rebuilding it.
+ */
+@Component
+public class MovieNeighbors {
+    /**
+     * The number of neighbors stored per movie, or 0 to disable the
+     * table.
+     */
+    @Value("${app.neighbors.count:50}")
+    int mCount = 50;
+
+    /**
+     * The directory the tables are saved in, or empty to use the
+     * temporary directory.
+     */
+    @Value("${app.neighbors.directory:}")
+    String mDirectory = "";
+
+    /**
+     * The table being built or loaded, or null if no table has been
+     * requested yet, which is read without locking by every request.
+     */
+    private volatile Build mBuild;
+
+    /**
+     * The {@link ForkJoinPool} that builds the tables, or null until
+     * the first build starts.
+     */
+    private ForkJoinPool mPool;
+
+    /**
+     * The build or load of the table of a catalog.
+     *
+     * @param catalog The {@link MovieCatalog} the table is built from
+     * @param version The {@link MovieCatalog#version()} of the {@code
+     *                catalog}
+     * @param table Completes with the {@link NeighborTable} of the
+     *              {@code catalog}
+     */
+    private record Build(MovieCatalog catalog,
+                         long version,
+                         CompletableFuture<NeighborTable> table) {
+    }
+
+    /**
+     * Start building or loading the {@link NeighborTable} once a
+     * catalog is loaded.
+     *
+     * @param event The {@link CatalogLoadedEvent} of the catalog
+     */
+    @EventListener
+    public void onCatalogLoaded(CatalogLoadedEvent event) {
+        if (mCount > 0 && !event.catalog().isEmpty())
+            prepare(event.catalog());
+    }
+
+    /**
+     * Get the {@link NeighborTable} of the {@code catalog} if it's
+     * ready, starting to build or load it in the background if it
+     * hasn't been started yet.
+     *
+     * @param catalog The {@link MovieCatalog} the table is built from
+     * @return The {@link NeighborTable} of the {@code catalog}, or
+     *         null if it's disabled, not ready yet, or failed
+     */
+    public NeighborTable table(MovieCatalog catalog) {
+        if (mCount <= 0 || catalog.isEmpty())
+            return null;
+
+        CompletableFuture<NeighborTable> table = prepare(catalog);
+        return table.isDone() && !table.isCompletedExceptionally()
+            ? table.join()
+            : null;
+    }
+
+    /**
+     * Start building or loading the {@link NeighborTable} of the
+     * {@code catalog} unless it was already started.
+     *
+     * @param catalog The {@link MovieCatalog} the table is built from
+     * @return A {@link CompletableFuture} that completes with the
+     *         {@link NeighborTable} of the {@code catalog}
+     */
+    public CompletableFuture<NeighborTable> prepare(MovieCatalog catalog) {
+        Build build = mBuild;
+        if (build != null && build.catalog() == catalog)
+            return build.table();
+
+        // Only lock when the catalog changed.
+        synchronized (this) {
+            build = mBuild;
+            long version = catalog.version();
+            if (build == null || build.version() != version) {
+                if (mPool == null)
+                    mPool = new ForkJoinPool(Runtime
+                                             .getRuntime()
+                                             .availableProcessors());
+                build = new Build(catalog,
+                                  version,
+                                  CompletableFuture
+                                  // Build the table in the dedicated pool.
+                                  .supplyAsync(() -> loadOrBuild(catalog),
+                                               mPool));
+            } else
+                // Reuse the table of an equal catalog.
+                build = new Build(catalog, version, build.table());
+            mBuild = build;
+            return build.table();
+        }
+    }
+
+    /**
+     * Shut down the {@link ForkJoinPool} that builds the tables, if
+     * any, when the application stops.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (mPool != null)
+            mPool.shutdown();
+    }
+
+    /**
+     * Memory-map the saved {@link NeighborTable} of the {@code
+     * catalog}, or build and save it if there isn't one.
+     */
+    private NeighborTable loadOrBuild(MovieCatalog catalog) {
+        Path path = path(catalog);
+        long start = System.nanoTime();
+
+        try {
+            if (Files.exists(path)) {
+                NeighborTable table = NeighborTable.load(path, catalog, mCount);
+                if (table != null) {
+                    System.out.println("Loaded the neighbor table of "
+                                       + table.size()
+                                       + " movies from "
+                                       + path);
+                    return table;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to load the neighbor table from "
+                               + path
+                               + ": "
+                               + e);
+        }
+
+        NeighborTable table = NeighborTable.build(catalog, mCount);
+        System.out.println("Built the neighbor table of "
+                           + table.size()
+                           + " movies in "
+                           + (System.nanoTime() - start) / 1_000_000
+                           + " msecs");
+
+        try {
+            table.save(path);
+        } catch (IOException e) {
+            // The table still answers requests until a restart.
+            System.out.println("Unable to save the neighbor table to "
+                               + path
+                               + ": "
+                               + e);
+        }
+        return table;
+    }
+
+    /**
+     * @return The file the {@link NeighborTable} of the {@code
+     *         catalog} is saved in
+     */
+    private Path path(MovieCatalog catalog) {
+        Path directory = mDirectory == null || mDirectory.isBlank()
+            ? Path.of(System.getProperty("java.io.tmpdir"))
+            : Path.of(mDirectory);
+        return directory.resolve("neighbors-"
+                                 + Long.toHexString(catalog.version())
+                                 + "-"
+                                 + mCount
+                                 + ".bin");
+    }
+}
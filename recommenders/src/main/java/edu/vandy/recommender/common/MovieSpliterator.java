@@ -0,0 +1,121 @@
+package edu.vandy.recommender.common;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+/**
+ * This {@link Spliterator} traverses the ids of the movies in a
+ * contiguous range of a {@link MovieCatalog} that aren't excluded by
+ * a {@link MovieFilter}, so a parallel {@link java.util.stream.IntStream}
+ * scores the packed vectors of the catalog in contiguous chunks.
+ *
+ * The range is split in halves until it holds at most {@code
+ * chunkSize} ids, so each fork-join task scores a chunk of adjacent
+ * vectors in a tight loop that skips the excluded movies a word of
+ * the {@link MovieFilter} at a time.
+ */
+public final class MovieSpliterator implements Spliterator.OfInt {
+    /**
+     * The movies to skip.
+     */
+    private final MovieFilter mFilter;
+
+    /**
+     * The largest range that isn't split any further.
+     */
+    private final int mChunkSize;
+
+    /**
+     * The next id to traverse.
+     */
+    private int mFrom;
+
+    /**
+     * The id after the last one to traverse.
+     */
+    private final int mTo;
+
+    /**
+     * Constructor traverses the ids from {@code from} up to {@code
+     * to}.
+     *
+     * @param filter The {@link MovieFilter} of the movies to skip
+     * @param from The first id to traverse
+     * @param to The id after the last one to traverse
+     * @param chunkSize The largest range that isn't split any further
+     */
+    public MovieSpliterator(MovieFilter filter,
+                            int from,
+                            int to,
+                            int chunkSize) {
+        mFilter = filter;
+        mFrom = from;
+        mTo = to;
+        mChunkSize = Math.max(chunkSize, 1);
+    }
+
+    /**
+     * Constructor traverses every movie of the catalog that isn't
+     * excluded by the {@code filter}.
+     *
+     * @param filter The {@link MovieFilter} of the movies to skip
+     * @param chunkSize The largest range that isn't split any further
+     */
+    public MovieSpliterator(MovieFilter filter, int chunkSize) {
+        this(filter, 0, filter.size(), chunkSize);
+    }
+
+    @Override
+    public boolean tryAdvance(IntConsumer action) {
+        int id = mFilter.nextIncluded(mFrom);
+        if (id >= mTo) {
+            mFrom = mTo;
+            return false;
+        }
+
+        mFrom = id + 1;
+        action.accept(id);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(IntConsumer action) {
+        // Score the rest of the range in a tight loop.
+        int to = mTo;
+        for (int id = mFilter.nextIncluded(mFrom);
+             id < to;
+             id = mFilter.nextIncluded(id + 1))
+            action.accept(id);
+        mFrom = to;
+    }
+
+    @Override
+    public MovieSpliterator trySplit() {
+        if (mTo - mFrom <= mChunkSize)
+            return null;
+
+        // Hand off the first half of the range.
+        int middle = (mFrom + mTo) >>> 1;
+        MovieSpliterator prefix =
+            new MovieSpliterator(mFilter, mFrom, middle, mChunkSize);
+        mFrom = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return mTo - mFrom;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SORTED | DISTINCT | NONNULL | IMMUTABLE;
+    }
+
+    @Override
+    public Comparator<? super Integer> getComparator() {
+        // The ids are traversed in their natural order.
+        return null;
+    }
+}
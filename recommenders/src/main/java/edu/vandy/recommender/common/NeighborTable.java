@@ -0,0 +1,339 @@
+package edu.vandy.recommender.common;
+
+import edu.vandy.recommender.common.model.Ranking;
+import edu.vandy.recommender.utils.TopKSelector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * This class holds the top {@link #count()} neighbors of every movie
+ * in a {@link MovieCatalog}, i.e., the other movies with the greatest
+ * cosine similarity to it in descending order, so single-movie
+ * recommendations can be answered without scanning the catalog.
+ *
+ * The table is stored in one {@link ByteBuffer} with a small header
+ * followed by the neighbor ids of all movies and then their scores,
+ * both row-major.  The same layout is written to a file that is
+ * memory-mapped when the table is loaded again, so a restarted
+ * microservice reads the neighbors straight from the page cache
+ * instead of rebuilding the table.  The header records the {@link
+ * MovieCatalog#version()} the table was built from, so a file built
+ * from another catalog is never used.
+ */
+public final class NeighborTable {
+    /**
+     * Identifies a neighbor table file written in the native byte
+     * order of this machine.
+     */
+    private static final int MAGIC = 0x4E424852;
+
+    /**
+     * The version of the file layout.
+     */
+    private static final int FORMAT = 1;
+
+    /**
+     * The number of bytes in the header, i.e., the magic number, the
+     * format, the catalog version, the number of movies, and the
+     * number of neighbors per movie.
+     */
+    private static final int HEADER_BYTES = 32;
+
+    /**
+     * The catalog version the table was built from.
+     */
+    private final long mVersion;
+
+    /**
+     * The number of movies in the catalog.
+     */
+    private final int mSize;
+
+    /**
+     * The number of neighbors stored per movie.
+     */
+    private final int mCount;
+
+    /**
+     * The whole table including the header.
+     */
+    private final ByteBuffer mBuffer;
+
+    /**
+     * The neighbor ids of movie {@code id} start at {@code id *
+     * mCount}.
+     */
+    private final IntBuffer mIds;
+
+    /**
+     * The neighbor scores, in the same layout as {@link #mIds}.
+     */
+    private final DoubleBuffer mScores;
+
+    /**
+     * Constructor initializes the fields.
+     *
+     * @param buffer The table including the header
+     * @param version The catalog version the table was built from
+     * @param size The number of movies in the catalog
+     * @param count The number of neighbors stored per movie
+     */
+    private NeighborTable(ByteBuffer buffer,
+                          long version,
+                          int size,
+                          int count) {
+        mBuffer = buffer;
+        mVersion = version;
+        mSize = size;
+        mCount = count;
+
+        int cells = size * count;
+        mIds = buffer
+            .slice(HEADER_BYTES, cells * Integer.BYTES)
+            .order(buffer.order())
+            .asIntBuffer();
+        mScores = buffer
+            .slice(HEADER_BYTES + cells * Integer.BYTES,
+                   cells * Double.BYTES)
+            .order(buffer.order())
+            .asDoubleBuffer();
+    }
+
+    /**
+     * Build the table of the {@code count} nearest neighbors of every
+     * movie in the {@code catalog}.  The rows are computed by a
+     * parallel stream, i.e., in the fork-join pool of the calling
+     * task, such as the dedicated pool of {@link MovieNeighbors}, and
+     * each row keeps its neighbors in a {@link TopKSelector} as it
+     * scans the catalog with the exact cosine similarity.
+     *
+     * @param catalog The {@link MovieCatalog} to build the table of
+     * @param count The number of neighbors to store per movie, which
+     *              is limited to the number of other movies
+     * @return The {@link NeighborTable} of the {@code catalog}
+     */
+    public static NeighborTable build(MovieCatalog catalog, int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("count must be >= 0");
+
+        int size = catalog.size();
+        int neighbors = Math.max(Math.min(count, size - 1), 0);
+
+        ByteBuffer buffer = ByteBuffer
+            .allocate(bytes(size, neighbors))
+            .order(ByteOrder.nativeOrder());
+        writeHeader(buffer, catalog.version(), size, neighbors);
+
+        NeighborTable table =
+            new NeighborTable(buffer, catalog.version(), size, neighbors);
+
+        IntStream
+            // Compute the rows in parallel.
+            .range(0, size)
+            .parallel()
+            .forEach(id -> {
+                TopKSelector selector = new TopKSelector(neighbors);
+                double[] unitQuery = catalog.unitVector(id);
+
+                for (int other = 0; other < size; other++)
+                    if (other != id)
+                        selector.offer(other,
+                                       catalog.cosineSimilarity(unitQuery,
+                                                                other));
+
+                // Each row is written to its own disjoint region.
+                table.mIds.put(id * neighbors, selector.ids());
+                table.mScores.put(id * neighbors, selector.scores());
+            });
+
+        return table;
+    }
+
+    /**
+     * Memory-map a table that was previously written by {@link
+     * #save(Path)} if it was built from the {@code catalog}.
+     *
+     * @param path The file containing the table
+     * @param catalog The {@link MovieCatalog} the table must be built
+     *                from
+     * @param count The number of neighbors the table must store per
+     *              movie
+     * @return The {@link NeighborTable} in the file, or null if the
+     *         file was written for another catalog, neighbor count,
+     *         file format, or byte order
+     * @throws IOException if the file can't be read
+     */
+    public static NeighborTable load(Path path,
+                                     MovieCatalog catalog,
+                                     int count) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel
+             .open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES)
+                return null;
+
+            // The mapping remains valid after the channel is closed.
+            buffer = channel
+                .map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .order(ByteOrder.nativeOrder());
+        }
+
+        long version = buffer.getLong(8);
+        int size = buffer.getInt(16);
+        int neighbors = buffer.getInt(20);
+
+        if (buffer.getInt(0) != MAGIC
+            || buffer.getInt(4) != FORMAT
+            || version != catalog.version()
+            || size != catalog.size()
+            || neighbors != Math.max(Math.min(count, size - 1), 0)
+            || buffer.capacity() != bytes(size, neighbors))
+            return null;
+
+        return new NeighborTable(buffer, version, size, neighbors);
+    }
+
+    /**
+     * Write the table to a file that can be memory-mapped by {@link
+     * #load(Path, MovieCatalog, int)}.  The table is written to a
+     * temporary file that then replaces the {@code path}, so a
+     * concurrent reader never sees a partially written table.
+     *
+     * @param path The file to write the table to
+     * @throws IOException if the file can't be written
+     */
+    public void save(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files
+            .createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+        try (FileChannel channel = FileChannel
+             .open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer contents = mBuffer.duplicate().clear();
+            while (contents.hasRemaining())
+                channel.write(contents);
+            channel.force(false);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(temporary,
+                   path,
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The catalog version the table was built from
+     */
+    public long version() {
+        return mVersion;
+    }
+
+    /**
+     * @return The number of movies in the table
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return The number of neighbors stored per movie
+     */
+    public int count() {
+        return mCount;
+    }
+
+    /**
+     * @param maxCount The number of recommendations requested
+     * @return True if the table contains the top {@code maxCount}
+     *         neighbors of every movie, i.e., {@code maxCount} doesn't
+     *         exceed the number of neighbors stored per movie or the
+     *         table stores all other movies, else false
+     */
+    public boolean covers(int maxCount) {
+        return maxCount <= mCount || mCount == mSize - 1;
+    }
+
+    /**
+     * @param id A movie id
+     * @param rank The rank of a neighbor, starting at 0
+     * @return The id of the neighbor of movie {@code id} at
+     *         {@code rank}
+     */
+    public int neighbor(int id, int rank) {
+        return mIds.get(id * mCount + rank);
+    }
+
+    /**
+     * @param id A movie id
+     * @param rank The rank of a neighbor, starting at 0
+     * @return The cosine similarity of the neighbor of movie {@code
+     *         id} at {@code rank}
+     */
+    public double score(int id, int rank) {
+        return mScores.get(id * mCount + rank);
+    }
+
+    /**
+     * Create the recommendations for a watched movie directly from
+     * its row of the table.
+     *
+     * @param id The id of the watched movie
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @param titles Maps each movie id to its title
+     * @return A {@link List} of at most {@code maxCount} {@link
+     *         Ranking} objects in descending similarity order
+     */
+    public List<Ranking> rankings(int id,
+                                  int maxCount,
+                                  IntFunction<String> titles) {
+        int count = Math.max(Math.min(maxCount, mCount), 0);
+        List<Ranking> rankings = new ArrayList<>(count);
+        for (int rank = 0; rank < count; rank++)
+            rankings.add(new Ranking(titles.apply(neighbor(id, rank)),
+                                     score(id, rank)));
+        return rankings;
+    }
+
+    /**
+     * @return The number of bytes in a table of {@code size} movies
+     *         with {@code count} neighbors each
+     */
+    private static int bytes(int size, int count) {
+        return Math.addExact(HEADER_BYTES,
+                             Math.multiplyExact(Math.multiplyExact(size, count),
+                                                Integer.BYTES + Double.BYTES));
+    }
+
+    /**
+     * Write the header of a table to the start of the {@code buffer}.
+     */
+    private static void writeHeader(ByteBuffer buffer,
+                                    long version,
+                                    int size,
+                                    int count) {
+        buffer
+            .putInt(0, MAGIC)
+            .putInt(4, FORMAT)
+            .putLong(8, version)
+            .putInt(16, size)
+            .putInt(20, count);
+    }
+}
@@ -0,0 +1,277 @@
+package edu.vandy.recommender.common;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * This class decides where the work of a request runs in parallel,
+ * so parallel work is never started inside other parallel work.
+ *
+ * A computation consists of {@code outer} independent items, e.g.,
+ * the movies of the catalog, that each take {@code inner} steps, e.g.,
+ * the elements of a vector.  It runs {@link Mode#SEQUENTIAL}ly when
+ * it's too small to amortize the cost of parallelism, when there are
+ * at least as many requests in flight as cores, since the cores are
+ * then busy with other requests, or when a utility method is called
+ * on a thread that is already running parallel work.  Otherwise it
+ * runs the {@link Mode#OUTER} items in parallel, unless there are
+ * fewer of them than cores, in which case the {@link Mode#INNER}
+ * steps of each item run in parallel instead.  It never runs both in
+ * parallel.
+ *
+ * The requests in flight are counted across the whole JVM, since the
+ * requests of every service share the same cores, so the static
+ * {@link #choose(int, int)} used by utility methods also backs off
+ * under load.  The number of rails decisions of each {@link Mode}, the
+ * number of requests in flight and the rails of the latest decision
+ * are published as Micrometer meters and reported as {@link
+ * Statistics}.
+ */
+@Component
+public class ParallelismPolicy
+       implements MeterBinder {
+    /**
+     * The number of multiply-adds below which a computation isn't
+     * worth running in parallel.
+     */
+    public static final long DEFAULT_MIN_PARALLEL_WORK = 32_768;
+
+    /**
+     * Where a computation runs in parallel.
+     */
+    public enum Mode {
+        /**
+         * Nothing runs in parallel.
+         */
+        SEQUENTIAL,
+
+        /**
+         * The independent items run in parallel, each sequentially.
+         */
+        OUTER,
+
+        /**
+         * The items run sequentially, the steps of each in parallel.
+         */
+        INNER
+    }
+
+    /**
+     * The rails decisions made by the policy.  Since a vector is always
+     * scored by a single kernel call, every decision either runs the
+     * movies on several rails or scores them on one.
+     *
+     * @param inFlight The number of requests currently in flight
+     * @param sequential The number of decisions that scored the movies
+     *                   on one rail
+     * @param outer The number of decisions that scored the movies on
+     *              several rails
+     * @param lastRails The number of rails of the latest decision
+     */
+    public record Statistics(int inFlight,
+                             long sequential,
+                             long outer,
+                             int lastRails) {
+    }
+
+    /**
+     * The number of multiply-adds below which a computation isn't
+     * worth running in parallel.
+     */
+    @Value("${app.parallel.min-work:32768}")
+    long mMinWork = DEFAULT_MIN_PARALLEL_WORK;
+
+    /**
+     * The number of requests whose computations are in flight in this
+     * JVM.
+     */
+    private static final AtomicInteger sInFlight = new AtomicInteger();
+
+    /**
+     * The number of {@link Mode#SEQUENTIAL} and {@link Mode#OUTER}
+     * rails decisions, indexed by the ordinal of the {@link Mode}.
+     */
+    private final LongAdder[] mDecisions = {
+        new LongAdder(), new LongAdder()
+    };
+
+    /**
+     * The number of rails of the latest decision.
+     */
+    private volatile int mLastRails;
+
+    /**
+     * Decide where a computation runs in parallel given the requests
+     * in flight.  This is used by utility methods that don't have
+     * access to the policy of a service, which may be called on a
+     * thread that is already running parallel work, or by a request
+     * that is itself counted as in flight.
+     *
+     * @param outer The number of independent items
+     * @param inner The number of steps per item
+     * @return The {@link Mode} of the computation, which is {@link
+     *         Mode#SEQUENTIAL} on a parallel worker thread
+     */
+    public static Mode choose(int outer, int inner) {
+        return inParallelWorker()
+            ? Mode.SEQUENTIAL
+            : choose(outer,
+                     inner,
+                     Math.max(sInFlight.get() - 1, 0),
+                     Runtime.getRuntime().availableProcessors(),
+                     DEFAULT_MIN_PARALLEL_WORK);
+    }
+
+    /**
+     * Decide where a computation runs in parallel.
+     *
+     * @param outer The number of independent items
+     * @param inner The number of steps per item
+     * @param inFlight The number of other requests in flight
+     * @param cores The number of cores
+     * @param minWork The number of multiply-adds below which a
+     *                computation isn't worth running in parallel
+     * @return The {@link Mode} of the computation
+     */
+    public static Mode choose(int outer,
+                              int inner,
+                              int inFlight,
+                              int cores,
+                              long minWork) {
+        if ((long) outer * inner < minWork || inFlight >= cores)
+            return Mode.SEQUENTIAL;
+
+        // Only run the steps in parallel if there are too few items
+        // to keep every core busy.
+        return outer >= cores
+            ? Mode.OUTER
+            : Mode.INNER;
+    }
+
+    /**
+     * @return True if the calling thread is a worker of a {@link
+     *         java.util.concurrent.ForkJoinPool} or of a non-blocking
+     *         Reactor {@link reactor.core.scheduler.Scheduler}, i.e.,
+     *         it's already running parallel work, else false
+     */
+    public static boolean inParallelWorker() {
+        return Thread.currentThread() instanceof ForkJoinWorkerThread
+            || Schedulers.isInNonBlockingThread();
+    }
+
+    /**
+     * Decide how many rails score a catalog of {@code movies}
+     * vectors of {@code dimension} elements for a new request, given
+     * the number of requests already in flight, and record the
+     * decision.  A vector is always scored by a single kernel call,
+     * so only the {@link Mode#OUTER} decision runs on several rails.
+     *
+     * @param movies The number of movies to score
+     * @param dimension The number of elements per vector
+     * @param maxRails The largest number of rails to use
+     * @return The number of rails, which is 1 unless the movies are
+     *         scored in parallel
+     */
+    public int rails(int movies, int dimension, int maxRails) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        // This request is counted as in flight while it's scored.
+        int others = Math.max(sInFlight.get() - 1, 0);
+        Mode mode = choose(movies, dimension, others, cores, mMinWork);
+
+        // Share the cores with the other requests in flight.
+        int rails = mode == Mode.OUTER
+            ? Math.max(Math.min(maxRails, cores / (others + 1)), 1)
+            : 1;
+
+        // Record what actually runs, since an INNER decision (or an
+        // OUTER one limited to one rail) scores every movie on one
+        // rail.
+        mDecisions[rails > 1
+                   ? Mode.OUTER.ordinal()
+                   : Mode.SEQUENTIAL.ordinal()].increment();
+        mLastRails = rails;
+        return rails;
+    }
+
+    /**
+     * Count a request as in flight from when the {@link Flux}
+     * computing it is subscribed to until it terminates.
+     *
+     * @param computation Supplies the {@link Flux} computing the
+     *                    request
+     * @return A {@link Flux} that emits the results of the {@code
+     *         computation}
+     */
+    public <T> Flux<T> tracked(Supplier<Flux<T>> computation) {
+        return Flux
+            .using(sInFlight::incrementAndGet,
+                   count -> computation.get(),
+                   count -> sInFlight.decrementAndGet());
+    }
+
+    /**
+     * Count a request as in flight while a blocking {@code
+     * computation} runs.
+     *
+     * @param computation Computes the results of the request
+     * @return The results of the {@code computation}
+     */
+    public <T> T runTracked(Supplier<T> computation) {
+        sInFlight.incrementAndGet();
+        try {
+            return computation.get();
+        } finally {
+            sInFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return The {@link Statistics} of the decisions so far
+     */
+    public Statistics statistics() {
+        return new Statistics(sInFlight.get(),
+                              mDecisions[Mode.SEQUENTIAL.ordinal()].sum(),
+                              mDecisions[Mode.OUTER.ordinal()].sum(),
+                              mLastRails);
+    }
+
+    /**
+     * Publish the decisions and the requests in flight as Micrometer
+     * meters, which Spring Boot Actuator calls for every {@link
+     * MeterBinder} bean.
+     *
+     * @param registry The {@link MeterRegistry} of the application
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("recommender.parallelism.in.flight",
+                      sInFlight,
+                      AtomicInteger::get)
+            .description("Requests whose computations are in flight")
+            .register(registry);
+        Gauge.builder("recommender.parallelism.last.rails",
+                      this,
+                      policy -> policy.mLastRails)
+            .description("Rails of the latest decision")
+            .register(registry);
+
+        for (Mode mode : new Mode[] { Mode.SEQUENTIAL, Mode.OUTER })
+            FunctionCounter.builder("recommender.parallelism.decisions",
+                                    mDecisions[mode.ordinal()],
+                                    LongAdder::sum)
+                .description("Rails decisions that scored on one or several rails")
+                .tag("mode", mode.name().toLowerCase())
+                .register(registry);
+    }
+}
@@ -0,0 +1,256 @@
+package edu.vandy.recommender.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import edu.vandy.recommender.common.index.RecommendationEngine;
+import edu.vandy.recommender.common.model.Ranking;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * This class caches the recommendations returned by the {@link
+ * BaseService} implementations in a bounded Caffeine cache.
+ *
+ * Each entry is keyed by the watched titles, the number of
+ * recommendations, the {@link RecommendationEngine}, and the {@link
+ * MovieCatalog#version()}, so recommendations computed from a catalog
+ * that has since been reloaded are never returned.  The whole cache is
+ * also invalidated the first time a new catalog version is seen.
+ *
+ * Caffeine's admission policy keeps the entries of frequently
+ * requested titles even when many rarely requested titles pass
+ * through the cache, which suits the skew of the recommendation
+ * traffic.  Entries are evicted when the cache exceeds {@code
+ * app.cache.maximum-size} or {@code app.cache.ttl-seconds} after they
+ * were computed.
+ *
+ * The size, hit, miss and eviction counts of the cache are published
+ * as Micrometer meters and reported as {@link Statistics}.
+ */
+@Component
+public class RecommendationCache
+       implements MeterBinder {
+    /**
+     * The maximum number of cached recommendation lists, or 0 to
+     * disable the cache.
+     */
+    @Value("${app.cache.maximum-size:10000}")
+    long mMaximumSize = 10_000;
+
+    /**
+     * The number of seconds recommendations are cached for.
+     */
+    @Value("${app.cache.ttl-seconds:600}")
+    long mTtlSeconds = 600;
+
+    /**
+     * The catalog version of the cached recommendations.
+     */
+    private volatile long mVersion;
+
+    /**
+     * Maps each {@link Key} to its recommendations, which is created
+     * when it's first used so the properties have been injected.
+     */
+    private volatile Cache<Key, List<Ranking>> mCache;
+
+    /**
+     * The key of the recommendations for a set of watched movies.
+     *
+     * @param watchedMovies The titles of the watched movies, which
+     *                      ignores their order and duplicates
+     * @param blockedMovies The titles of the blocked movies, which
+     *                      ignores their order and duplicates
+     * @param maxCount The upper limit for the number of
+     *                 recommendations
+     * @param engine The {@link RecommendationEngine} that computed
+     *               the recommendations
+     * @param version The {@link MovieCatalog#version()} the
+     *                recommendations were computed from
+     */
+    public record Key(Set<String> watchedMovies,
+                      Set<String> blockedMovies,
+                      int maxCount,
+                      RecommendationEngine engine,
+                      long version) {
+        /**
+         * @param watchedMovies The titles of the watched movies
+         * @param maxCount The upper limit for the number of
+         *                 recommendations
+         * @param engine The {@link RecommendationEngine} that
+         *               computes the recommendations
+         * @param catalog The {@link MovieCatalog} the recommendations
+         *                are computed from
+         * @return The {@link Key} of the recommendations
+         */
+        public static Key of(Collection<String> watchedMovies,
+                             int maxCount,
+                             RecommendationEngine engine,
+                             MovieCatalog catalog) {
+            return of(watchedMovies, Set.of(), maxCount, engine, catalog);
+        }
+
+        /**
+         * @param watchedMovies The titles of the watched movies
+         * @param blockedMovies The titles of the blocked movies
+         * @param maxCount The upper limit for the number of
+         *                 recommendations
+         * @param engine The {@link RecommendationEngine} that
+         *               computes the recommendations
+         * @param catalog The {@link MovieCatalog} the recommendations
+         *                are computed from
+         * @return The {@link Key} of the recommendations
+         */
+        public static Key of(Collection<String> watchedMovies,
+                             Collection<String> blockedMovies,
+                             int maxCount,
+                             RecommendationEngine engine,
+                             MovieCatalog catalog) {
+            return new Key(Set.copyOf(watchedMovies),
+                           Set.copyOf(blockedMovies),
+                           maxCount,
+                           engine,
+                           catalog.version());
+        }
+    }
+
+    /**
+     * The hit and miss counts of the cache.
+     *
+     * @param size The approximate number of cached entries
+     * @param hits The number of requests answered by the cache
+     * @param misses The number of requests that were computed
+     * @param hitRate The ratio of hits to requests
+     * @param evictions The number of entries that were evicted
+     */
+    public record Statistics(long size,
+                             long hits,
+                             long misses,
+                             double hitRate,
+                             long evictions) {
+    }
+
+    /**
+     * Get the cached recommendations for the {@code key}, or compute
+     * and cache them when the returned {@link Flux} is subscribed to
+     * if they aren't cached.
+     *
+     * @param key The {@link Key} of the recommendations
+     * @param recommendations Supplies a {@link Flux} that computes
+     *                        the recommendations
+     * @return A {@link Flux} that emits the recommendations
+     */
+    public Flux<Ranking> recommendations
+        (Key key,
+         Supplier<Flux<Ranking>> recommendations) {
+        if (mMaximumSize <= 0)
+            return recommendations.get();
+
+        return Flux
+            // Look up the key when the Flux is subscribed to.
+            .defer(() -> {
+                Cache<Key, List<Ranking>> cache = cache(key.version());
+                List<Ranking> cached = cache.getIfPresent(key);
+                if (cached != null)
+                    return Flux.fromIterable(cached);
+
+                return recommendations
+                    // Compute the recommendations.
+                    .get()
+                    // Collect them so they can be cached.
+                    .collectList()
+                    // Cache the recommendations.
+                    .doOnNext(list -> cache.put(key, List.copyOf(list)))
+                    // Emit the recommendations.
+                    .flatMapIterable(list -> list);
+            });
+    }
+
+    /**
+     * @return The {@link Statistics} of the cache since it was created
+     */
+    public Statistics statistics() {
+        Cache<Key, List<Ranking>> cache = mCache;
+        if (cache == null)
+            return new Statistics(0, 0, 0, 0, 0);
+
+        CacheStats stats = cache.stats();
+        return new Statistics(cache.estimatedSize(),
+                              stats.hitCount(),
+                              stats.missCount(),
+                              stats.hitRate(),
+                              stats.evictionCount());
+    }
+
+    /**
+     * Publish the size, hit, miss and eviction counts of the cache as
+     * Micrometer meters, which Spring Boot Actuator calls for every
+     * {@link MeterBinder} bean.
+     *
+     * @param registry The {@link MeterRegistry} of the application
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("recommender.cache.size",
+                      this,
+                      cache -> cache.statistics().size())
+            .description("Approximate number of cached recommendation lists")
+            .register(registry);
+        FunctionCounter.builder("recommender.cache.requests",
+                                this,
+                                cache -> cache.statistics().hits())
+            .description("Requests answered by or computed for the cache")
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("recommender.cache.requests",
+                                this,
+                                cache -> cache.statistics().misses())
+            .description("Requests answered by or computed for the cache")
+            .tag("result", "miss")
+            .register(registry);
+        FunctionCounter.builder("recommender.cache.evictions",
+                                this,
+                                cache -> cache.statistics().evictions())
+            .description("Cached recommendation lists that were evicted")
+            .register(registry);
+    }
+
+    /**
+     * Get the cache, creating it when it's first used and
+     * invalidating it when a new catalog {@code version} is seen.
+     */
+    private Cache<Key, List<Ranking>> cache(long version) {
+        Cache<Key, List<Ranking>> cache = mCache;
+        if (cache != null && mVersion == version)
+            return cache;
+
+        synchronized (this) {
+            if (mCache == null)
+                mCache = Caffeine
+                    .newBuilder()
+                    .maximumSize(mMaximumSize)
+                    .expireAfterWrite(Duration.ofSeconds(mTtlSeconds))
+                    .recordStats()
+                    .build();
+
+            if (mVersion != version) {
+                // Drop the recommendations of the previous catalog.
+                mCache.invalidateAll();
+                mVersion = version;
+            }
+            return mCache;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package edu.vandy.recommender.common;
+
+/**
+ * A {@link SimilarityKernel} that computes dot products with a plain
+ * scalar loop.  It is the fallback when the incubator Vector API is
+ * not available at runtime.
+ */
+public class ScalarSimilarityKernel
+       implements SimilarityKernel {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double dotProduct(double[] a,
+                             int aOffset,
+                             double[] b,
+                             int bOffset,
+                             int length) {
+        return CosineSimilarityUtils
+            .dotProduct(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double dotProduct(float[] a,
+                             int aOffset,
+                             float[] b,
+                             int bOffset,
+                             int length) {
+        float sum = 0.0f;
+        for (int i = 0; i < length; i++)
+            sum += a[aOffset + i] * b[bOffset + i];
+        return sum;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double dotProduct(float[] a,
+                             int aOffset,
+                             byte[] b,
+                             int bOffset,
+                             int length) {
+        float sum = 0.0f;
+        for (int i = 0; i < length; i++)
+            sum += a[aOffset + i] * b[bOffset + i];
+        return sum;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,166 @@
+package edu.vandy.recommender.common;
+
+import edu.vandy.recommender.utils.TopKSelector;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.IntToDoubleFunction;
+
+import static edu.vandy.recommender.common.GetTopRecommendationsFlux.selectTopChunked;
+import static edu.vandy.recommender.common.GetTopRecommendationsFlux.selectTopParallel;
+
+/**
+ * Compares scoring the catalog on a {@link
+ * reactor.core.publisher.ParallelFlux} that hands every movie id off
+ * to a rail individually with scoring contiguous chunks of ids on
+ * each rail, for chunk sizes growing from a single movie up to one
+ * chunk per rail.
+ *
+ * @param movies The number of movies in the catalog
+ * @param rails The number of rails scoring in parallel
+ * @param k The number of movies selected per query
+ * @param samples The number of sampled query movies
+ * @param elementMicros The average time in microseconds when every
+ *                      movie is handed off individually
+ * @param chunked The average time of each measured chunk size
+ * @param crossoverChunkSize The smallest measured chunk size that is
+ *                           faster than handing off every movie, or
+ *                           -1 if there is none
+ */
+public record SchedulingReport(int movies,
+                               int rails,
+                               int k,
+                               int samples,
+                               double elementMicros,
+                               List<Chunked> chunked,
+                               int crossoverChunkSize) {
+    /**
+     * The seed used to sample the query movies, so reports are
+     * comparable across runs.
+     */
+    private static final long SAMPLE_SEED = 42L;
+
+    /**
+     * The factor between consecutive measured chunk sizes.
+     */
+    private static final int CHUNK_GROWTH = 4;
+
+    /**
+     * The average time of scoring the catalog in chunks of one size.
+     *
+     * @param chunkSize The number of movies per chunk
+     * @param micros The average time in microseconds
+     */
+    public record Chunked(int chunkSize, double micros) {
+    }
+
+    /**
+     * Measure both schedules by using randomly sampled movies as
+     * queries.  Each schedule is run once before it is timed so the
+     * comparison isn't skewed by warming up the JIT compiler.
+     *
+     * @param catalog The {@link MovieCatalog} to score
+     * @param rails The number of rails scoring in parallel
+     * @param k The number of movies selected per query
+     * @param samples The number of query movies to sample
+     * @return The {@link SchedulingReport}
+     */
+    public static SchedulingReport measure(MovieCatalog catalog,
+                                           int rails,
+                                           int k,
+                                           int samples) {
+        if (catalog.isEmpty() || k <= 0 || samples <= 0)
+            return new SchedulingReport(catalog.size(), rails, k, 0,
+                                        0.0, List.of(), -1);
+
+        // The same query movies are used for every schedule.
+        SplittableRandom random = new SplittableRandom(SAMPLE_SEED);
+        int[] queries = random
+            .ints(samples, 0, catalog.size())
+            .toArray();
+
+        double elementMicros = time(queries, (query, scorer) ->
+            selectTopParallel(Flux
+                              // Convert movie ids to a Flux
+                              .range(0, catalog.size())
+                              // Hand each id off to a rail
+                              .parallel(rails)
+                              .runOn(Schedulers.parallel())
+                              // Filter the query movie
+                              .filter(id -> id != query),
+                              scorer,
+                              k), catalog);
+
+        // Grow the chunk size up to a single chunk per rail.
+        int largest = Math.max((catalog.size() + rails - 1) / rails, 1);
+        List<Chunked> chunked = new ArrayList<>();
+        int crossover = -1;
+        for (int chunkSize = 1; ; chunkSize = Math.min(chunkSize * CHUNK_GROWTH,
+                                                       largest)) {
+            int size = chunkSize;
+            double micros = time(queries, (query, scorer) ->
+                selectTopChunked(new MovieFilter(catalog.size()).exclude(query),
+                                 rails,
+                                 size,
+                                 scorer,
+                                 k), catalog);
+
+            chunked.add(new Chunked(chunkSize, micros));
+            if (crossover < 0 && micros < elementMicros)
+                crossover = chunkSize;
+            if (chunkSize == largest)
+                break;
+        }
+
+        return new SchedulingReport(catalog.size(),
+                                    rails,
+                                    k,
+                                    samples,
+                                    elementMicros,
+                                    List.copyOf(chunked),
+                                    crossover);
+    }
+
+    /**
+     * Selects the top movies for one query movie.
+     */
+    private interface Schedule {
+        /**
+         * @param query The id of the query movie
+         * @param scorer Computes the similarity of a movie id to the
+         *               query movie
+         * @return A {@link Mono} that emits the selection
+         */
+        Mono<TopKSelector> select(int query, IntToDoubleFunction scorer);
+    }
+
+    /**
+     * @return The average time in microseconds of blocking on the
+     *         selection of each query movie, after an untimed run
+     */
+    private static double time(int[] queries,
+                               Schedule schedule,
+                               MovieCatalog catalog) {
+        run(queries[0], schedule, catalog);
+
+        long start = System.nanoTime();
+        for (int query : queries)
+            run(query, schedule, catalog);
+        return (System.nanoTime() - start) / 1_000.0 / queries.length;
+    }
+
+    /**
+     * Select the top movies for one query movie and block until
+     * they are selected.
+     */
+    private static void run(int query,
+                            Schedule schedule,
+                            MovieCatalog catalog) {
+        MovieCatalog.Query vector = catalog.query(query);
+        schedule.select(query, id -> catalog.score(vector, id)).block();
+    }
+}
@@ -1,6 +1,8 @@
 package edu.vandy.recommender.common;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.PropertySource;
@@ -8,10 +10,9 @@ import org.springframework.stereotype.Component;
 
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
- * This class contains a {@code Bean} annotation that can be injected into
+ * This class contains {@code Bean} annotations that can be injected into
  * classes using the Spring {@code @Autowired} annotation.
  */
 @Component
@@ -20,26 +21,71 @@ import java.util.TreeMap;
     factory = YamlPropertySourceFactory.class)
 public class ServerBeans {
     /**
-     * Constructs a {@link TreeMap} Bean that contains the movie titles
-     * and cosine vectors.
+     * Constructs a {@link MovieCatalog} Bean that contains the movie
+     * titles and cosine vectors in packed primitive form.
      *
-     * @return A {@link Map} containing all movie titles and associated
-     *         cosine vectors.
+     * @param dataset The dataset name (unused when loading from the
+     *                database microservice)
+     * @param kernel The name of the {@link SimilarityKernel} to use
+     * @param precision The name of the {@link VectorPrecision} used
+     *                  to store the scoring vectors
+     * @param rescore True if recommendations are rescored in full
+     *                precision, which keeps the raw vectors alongside
+     *                a reduced precision copy
+     * @param publisher Publishes a {@link CatalogLoadedEvent} once
+     *                  the catalog is loaded
+     * @return A {@link MovieCatalog} containing all movie titles and
+     *         associated cosine vectors.
      */
     @Lazy // Only create this bean lazily (on demand).
-    @Bean("movieMap")
-    public Map<String, List<Double>> getMovieMap
-        (@Value("${app.dataset}") final String dataset) {
+    @Bean("movieCatalog")
+    public MovieCatalog getMovieCatalog
+        (@Value("${app.dataset}") final String dataset,
+         @Value("${app.similarity.kernel:auto}") final String kernel,
+         @Value("${app.vectors.precision:float64}") final String precision,
+         @Value("${app.vectors.rescore:false}") final boolean rescore,
+         final ApplicationEventPublisher publisher) {
+        // Fail fast on a misconfigured kernel or precision.
+        SimilarityKernel similarityKernel =
+            SimilarityKernels.select(kernel);
+        VectorPrecision vectorPrecision =
+            VectorPrecision.valueOf(precision.toUpperCase());
+
+        MovieCatalog catalog;
         try {
-            // return LoadVectors.loadVectors(dataset);
-            return MoviesLoader.loadMoviesFromDatabase();
+            // return MovieCatalog.of(LoadVectors.loadVectors(dataset));
+            catalog = MovieCatalog
+                .of(MoviesLoader.loadMoviesFromDatabase(),
+                    similarityKernel,
+                    vectorPrecision,
+                    rescore);
         } catch (Exception e) {
             System.out.println(
                 "ERROR! Unable to retrieve movie cosine"
                     + " vectors from database microservice: "
                     + e);
-            // Return an empty TreeMap.
-            return new TreeMap<>();
+            // Return an empty MovieCatalog.
+            return MovieCatalog.empty();
         }
+
+        // Let the indexes and the neighbor table start building.
+        publisher.publishEvent(new CatalogLoadedEvent(catalog));
+        return catalog;
+    }
+
+    /**
+     * Constructs a {@link Map} Bean that contains the movie titles
+     * and cosine vectors.  This bean is a read-only adapter over the
+     * {@link MovieCatalog} that is kept for legacy clients.
+     *
+     * @param catalog The {@link MovieCatalog} to adapt
+     * @return A {@link Map} containing all movie titles and associated
+     *         cosine vectors.
+     */
+    @Lazy // Only create this bean lazily (on demand).
+    @Bean("movieMap")
+    public Map<String, List<Double>> getMovieMap
+        (@Qualifier("movieCatalog") final MovieCatalog catalog) {
+        return catalog.asMap();
     }
 }
@@ -0,0 +1,72 @@
+package edu.vandy.recommender.common;
+
+/**
+ * This interface defines the primitive dot-product kernel that is
+ * used to score the row-major vectors stored in a {@link
+ * MovieCatalog}.  Implementations are chosen once at startup via
+ * {@link SimilarityKernels#select(String)}.
+ */
+public interface SimilarityKernel {
+    /**
+     * Compute the dot product of two vectors stored in primitive
+     * arrays.
+     *
+     * @param a The array containing the first vector
+     * @param aOffset The index in {@code a} where the first vector
+     *                starts
+     * @param b The array containing the second vector
+     * @param bOffset The index in {@code b} where the second vector
+     *                starts
+     * @param length The number of elements in each vector
+     * @return The dot product of the two vectors
+     */
+    double dotProduct(double[] a,
+                      int aOffset,
+                      double[] b,
+                      int bOffset,
+                      int length);
+
+    /**
+     * Compute the dot product of two vectors stored in {@code float}
+     * arrays.
+     *
+     * @param a The array containing the first vector
+     * @param aOffset The index in {@code a} where the first vector
+     *                starts
+     * @param b The array containing the second vector
+     * @param bOffset The index in {@code b} where the second vector
+     *                starts
+     * @param length The number of elements in each vector
+     * @return The dot product of the two vectors
+     */
+    double dotProduct(float[] a,
+                      int aOffset,
+                      float[] b,
+                      int bOffset,
+                      int length);
+
+    /**
+     * Compute the dot product of a {@code float} vector and a scalar
+     * quantized {@code byte} vector.  The caller is responsible for
+     * multiplying the result by the quantization scale.
+     *
+     * @param a The array containing the {@code float} vector
+     * @param aOffset The index in {@code a} where the first vector
+     *                starts
+     * @param b The array containing the quantized vector
+     * @param bOffset The index in {@code b} where the second vector
+     *                starts
+     * @param length The number of elements in each vector
+     * @return The unscaled dot product of the two vectors
+     */
+    double dotProduct(float[] a,
+                      int aOffset,
+                      byte[] b,
+                      int bOffset,
+                      int length);
+
+    /**
+     * @return The name of this kernel, which is used in log output
+     */
+    String name();
+}
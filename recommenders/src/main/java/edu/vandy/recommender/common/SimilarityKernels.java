@@ -0,0 +1,87 @@
+package edu.vandy.recommender.common;
+
+/**
+ * This utility class selects the {@link SimilarityKernel} used to
+ * score the {@link MovieCatalog}.  The kernel is chosen once at
+ * startup from the {@code app.similarity.kernel} property, which
+ * makes it easy to compare the SIMD and scalar implementations on
+ * the same deployment.
+ */
+public class SimilarityKernels {
+    /**
+     * Use the SIMD kernel if the Vector API is available, else the
+     * scalar kernel.
+     */
+    public static final String AUTO = "auto";
+
+    /**
+     * Use the incubator Vector API kernel.
+     */
+    public static final String SIMD = "simd";
+
+    /**
+     * Use the scalar loop kernel.
+     */
+    public static final String SCALAR = "scalar";
+
+    /**
+     * The name of the incubator module that provides the Vector API.
+     */
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * A Java utility class should have a private constructor.
+     */
+    private SimilarityKernels() {}
+
+    /**
+     * Select a {@link SimilarityKernel} by name.
+     *
+     * @param mode One of {@link #AUTO}, {@link #SIMD}, or {@link
+     *             #SCALAR} (ignoring case)
+     * @return The selected {@link SimilarityKernel}
+     * @throws IllegalArgumentException If {@code mode} is unknown
+     * @throws IllegalStateException If {@link #SIMD} is requested but
+     *         the Vector API is not available
+     */
+    public static SimilarityKernel select(String mode) {
+        SimilarityKernel kernel = switch (mode.toLowerCase()) {
+            case AUTO -> defaultKernel();
+            case SIMD -> {
+                if (!isVectorApiAvailable())
+                    throw new IllegalStateException
+                        ("The " + VECTOR_MODULE + " module is not available;"
+                         + " run with --add-modules " + VECTOR_MODULE);
+                yield new VectorSimilarityKernel();
+            }
+            case SCALAR -> new ScalarSimilarityKernel();
+            default -> throw new IllegalArgumentException
+                ("Unknown similarity kernel: " + mode);
+        };
+
+        System.out.println("Using the "
+                           + kernel.name()
+                           + " similarity kernel");
+        return kernel;
+    }
+
+    /**
+     * @return The kernel selected by {@link #AUTO}
+     */
+    public static SimilarityKernel defaultKernel() {
+        return isVectorApiAvailable()
+            ? new VectorSimilarityKernel()
+            : new ScalarSimilarityKernel();
+    }
+
+    /**
+     * @return True if the {@code jdk.incubator.vector} module has been
+     *         added to the boot layer, else false
+     */
+    public static boolean isVectorApiAvailable() {
+        return ModuleLayer
+            .boot()
+            .findModule(VECTOR_MODULE)
+            .isPresent();
+    }
+}
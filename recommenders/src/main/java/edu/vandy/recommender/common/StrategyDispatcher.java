@@ -0,0 +1,270 @@
+package edu.vandy.recommender.common;
+
+import edu.vandy.recommender.common.index.RecommendationEngine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class decides per request whether the {@link
+ * RecommendationEngine} of the request runs {@link
+ * Strategy#SEQUENTIAL}ly or in {@link Strategy#CHUNKED} parallel
+ * rails, and calibrates the decision online from the observed latency
+ * of each strategy.  The engine itself is never changed, so both
+ * strategies return the same recommendations.
+ *
+ * Requests are grouped into buckets by their engine and by the order
+ * of magnitude of the catalog size and of the number of watched
+ * movies.  Each bucket keeps an exponentially weighted average of the
+ * latency of every strategy, which is tried once before its average
+ * is trusted.  A request then uses the strategy with the lowest
+ * average, except every {@code explore-period}-th request of a
+ * bucket, which tries the other one so its average follows changes in
+ * load.
+ *
+ * The {@link Decision} is returned to the caller, which reports it in
+ * the {@link Constants.Headers#STRATEGY} debug header of its own
+ * request.
+ */
+@Component
+public class StrategyDispatcher {
+    /**
+     * The default number of requests per bucket between two requests
+     * that try a strategy other than the fastest one.
+     */
+    public static final int DEFAULT_EXPLORE_PERIOD = 32;
+
+    /**
+     * The weight of a new latency sample in the average.
+     */
+    private static final double ALPHA = 0.2;
+
+    /**
+     * The number of buckets of catalog sizes, one per power of two.
+     */
+    private static final int MOVIE_BUCKETS = 32;
+
+    /**
+     * The number of buckets of watched movies, one per power of two,
+     * the last of which holds all larger requests.
+     */
+    private static final int WATCHED_BUCKETS = 8;
+
+    /**
+     * The number of buckets, one per engine, catalog size and number
+     * of watched movies.
+     */
+    private static final int BUCKETS = RecommendationEngine.values().length
+        * MOVIE_BUCKETS
+        * WATCHED_BUCKETS;
+
+    /**
+     * The value of the {@link Constants.Headers#STRATEGY} debug header
+     * when the recommendations were cached or computed by an identical
+     * request that was already running.
+     */
+    public static final String CACHE = "cache";
+
+    /**
+     * The value of the {@link Constants.Headers#STRATEGY} debug header
+     * when the recommendations were precomputed by the {@link
+     * MovieNeighbors}.
+     */
+    public static final String NEIGHBORS = "neighbors";
+
+    /**
+     * How the catalog is scored for a request.
+     */
+    public enum Strategy {
+        /**
+         * The engine runs on the calling thread, which avoids the
+         * setup cost of parallel rails.
+         */
+        SEQUENTIAL,
+
+        /**
+         * The engine scores contiguous chunks of the catalog, or the
+         * probed clusters of an index, on parallel rails.
+         */
+        CHUNKED
+    }
+
+    /**
+     * The strategy chosen for a request.
+     *
+     * @param strategy The {@link Strategy} of the request
+     * @param engine The {@link RecommendationEngine} of the request
+     * @param movies The number of movies in the catalog
+     * @param watched The number of watched movies
+     * @param expectedMicros The average latency of the {@code
+     *                       strategy} in microseconds for requests
+     *                       like this one, or -1 if it's unknown
+     * @param explored True if the {@code strategy} was chosen to
+     *                 calibrate its average rather than because it's
+     *                 expected to be the fastest
+     */
+    public record Decision(Strategy strategy,
+                           RecommendationEngine engine,
+                           int movies,
+                           int watched,
+                           double expectedMicros,
+                           boolean explored) {
+        /**
+         * @return The value of the {@link Constants.Headers#STRATEGY}
+         *         debug header for this decision
+         */
+        public String header() {
+            return strategy.name().toLowerCase(Locale.ROOT)
+                + "; engine=" + engine.name().toLowerCase(Locale.ROOT)
+                + "; movies=" + movies
+                + "; watched=" + watched
+                + "; expected-us="
+                + (expectedMicros < 0
+                   ? "unknown"
+                   : String.format(Locale.ROOT, "%.1f", expectedMicros))
+                + (explored ? "; explored" : "");
+        }
+    }
+
+    /**
+     * The number of requests per bucket between two requests that try
+     * a strategy other than the fastest one, or 0 to never do so once
+     * every strategy was tried.
+     */
+    @Value("${app.dispatch.explore-period:32}")
+    int mExplorePeriod = DEFAULT_EXPLORE_PERIOD;
+
+    /**
+     * The average latency in microseconds of each strategy in each
+     * bucket, stored as the bits of a {@code double} and indexed by
+     * {@link #slot(Strategy, int)}.
+     */
+    private final AtomicLongArray mMicros =
+        new AtomicLongArray(Strategy.values().length * BUCKETS);
+
+    /**
+     * The number of latency samples of each strategy in each bucket,
+     * indexed by {@link #slot(Strategy, int)}.
+     */
+    private final AtomicLongArray mSamples =
+        new AtomicLongArray(mMicros.length());
+
+    /**
+     * The number of decisions made in each bucket.
+     */
+    private final AtomicLongArray mRequests = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Choose the {@link Strategy} of a request.
+     *
+     * @param engine The {@link RecommendationEngine} of the request
+     * @param movies The number of movies in the catalog
+     * @param watched The number of watched movies
+     * @param chunked True if the {@code engine} can run on parallel
+     *                rails, else false to always run it sequentially
+     * @return The {@link Decision} of the request
+     */
+    public Decision choose(RecommendationEngine engine,
+                           int movies,
+                           int watched,
+                           boolean chunked) {
+        int bucket = bucket(engine, movies, watched);
+        Strategy[] strategies = Strategy.values();
+        // CHUNKED is the last strategy, so it's simply left out.
+        int eligible = chunked
+            ? strategies.length
+            : strategies.length - 1;
+
+        Decision decision = null;
+
+        // Try each eligible strategy once before trusting the
+        // averages.
+        for (int i = 0; i < eligible && decision == null; i++)
+            if (mSamples.get(slot(strategies[i], bucket)) == 0)
+                decision = new Decision(strategies[i], engine, movies, watched, -1, true);
+
+        if (decision == null) {
+            // Find the strategy with the lowest average latency.
+            int best = 0;
+            for (int i = 1; i < eligible; i++)
+                if (micros(strategies[i], bucket) < micros(strategies[best], bucket))
+                    best = i;
+
+            // Try each of the other strategies in turn once per
+            // explore period.
+            long request = mRequests.getAndIncrement(bucket);
+            int chosen = best;
+            boolean explored = mExplorePeriod > 0
+                && eligible > 1
+                && request % mExplorePeriod == mExplorePeriod - 1;
+            if (explored)
+                chosen = (best + 1 + (int) (request / mExplorePeriod % (eligible - 1)))
+                    % eligible;
+
+            decision = new Decision(strategies[chosen],
+                                    engine,
+                                    movies,
+                                    watched,
+                                    micros(strategies[chosen], bucket),
+                                    explored);
+        }
+
+        return decision;
+    }
+
+    /**
+     * Record the observed latency of a request computed with the
+     * strategy of its {@code decision}.
+     *
+     * @param decision The {@link Decision} of the request
+     * @param nanos The latency of the request in nanoseconds
+     */
+    public void record(Decision decision, long nanos) {
+        int slot = slot(decision.strategy(),
+                        bucket(decision.engine(),
+                               decision.movies(),
+                               decision.watched()));
+        double micros = nanos / 1_000.0;
+
+        // The first sample replaces the average.
+        boolean first = mSamples.getAndIncrement(slot) == 0;
+        mMicros.getAndUpdate(slot, bits -> {
+                double average = Double.longBitsToDouble(bits);
+                return Double.doubleToLongBits(first
+                                               ? micros
+                                               : average + ALPHA * (micros - average));
+            });
+    }
+
+    /**
+     * @return The average latency in microseconds of the {@code
+     *         strategy} in the {@code bucket}
+     */
+    private double micros(Strategy strategy, int bucket) {
+        return Double.longBitsToDouble(mMicros.get(slot(strategy, bucket)));
+    }
+
+    /**
+     * @return The bucket of a request, given its engine, the number of
+     *         movies in the catalog and the number of watched movies
+     */
+    private static int bucket(RecommendationEngine engine,
+                              int movies,
+                              int watched) {
+        int movieBucket = 31 - Integer.numberOfLeadingZeros(Math.max(movies, 1));
+        int watchedBucket = Math.min(31 - Integer.numberOfLeadingZeros(Math.max(watched, 1)),
+                                     WATCHED_BUCKETS - 1);
+        return (engine.ordinal() * MOVIE_BUCKETS + movieBucket) * WATCHED_BUCKETS
+            + watchedBucket;
+    }
+
+    /**
+     * @return The index of the average and the samples of the {@code
+     *         strategy} in the {@code bucket}
+     */
+    private static int slot(Strategy strategy, int bucket) {
+        return strategy.ordinal() * BUCKETS + bucket;
+    }
+}
@@ -0,0 +1,25 @@
+package edu.vandy.recommender.common;
+
+/**
+ * The representations a {@link MovieCatalog} can use to store the
+ * normalized vectors that recommendations are scored against.  The
+ * smaller representations let much larger catalogs fit in the CPU
+ * caches and heap at the cost of some scoring precision.
+ */
+public enum VectorPrecision {
+    /**
+     * 64-bit {@code double} elements (8 bytes per element).
+     */
+    FLOAT64,
+
+    /**
+     * 32-bit {@code float} elements (4 bytes per element).
+     */
+    FLOAT32,
+
+    /**
+     * Scalar quantized {@code byte} elements with one {@code float}
+     * scale per vector (1 byte per element).
+     */
+    INT8
+}
@@ -0,0 +1,151 @@
+package edu.vandy.recommender.common;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link SimilarityKernel} that computes dot products with the
+ * incubator {@code jdk.incubator.vector} API, which the JIT compiles
+ * into SIMD instructions for the widest vector shape supported by
+ * the CPU.
+ *
+ * This class must only be loaded when the {@code jdk.incubator.vector}
+ * module has been added to the JVM, which {@link SimilarityKernels}
+ * checks before instantiating it.
+ */
+public class VectorSimilarityKernel
+       implements SimilarityKernel {
+    /**
+     * The widest {@link DoubleVector} shape supported by the CPU.
+     */
+    private static final VectorSpecies<Double> SPECIES =
+        DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * The widest {@link FloatVector} shape supported by the CPU.
+     */
+    private static final VectorSpecies<Float> FLOAT_SPECIES =
+        FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * The {@link ByteVector} shape of the quantized elements widened
+     * per step, which is the narrowest shape holding at least as many
+     * lanes as {@link #FLOAT_SPECIES}.
+     */
+    private static final VectorSpecies<Byte> BYTE_SPECIES =
+        VectorSpecies.of(byte.class,
+                         VectorShape.forBitSize(Math.max(64,
+                                                         FLOAT_SPECIES.vectorBitSize() / 4)));
+
+    /**
+     * The number of {@link #FLOAT_SPECIES} vectors each {@link
+     * #BYTE_SPECIES} vector widens into.
+     */
+    private static final int PARTS =
+        BYTE_SPECIES.length() / FLOAT_SPECIES.length();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double dotProduct(double[] a,
+                             int aOffset,
+                             double[] b,
+                             int bOffset,
+                             int length) {
+        var sum = DoubleVector.zero(SPECIES);
+        int upperBound = SPECIES.loopBound(length);
+        int i = 0;
+
+        // Multiply and accumulate one full vector of lanes at a time.
+        for (; i < upperBound; i += SPECIES.length())
+            sum = DoubleVector
+                .fromArray(SPECIES, a, aOffset + i)
+                .fma(DoubleVector.fromArray(SPECIES, b, bOffset + i),
+                     sum);
+
+        double result = sum.reduceLanes(VectorOperators.ADD);
+
+        // Handle the elements that don't fill a full vector.
+        for (; i < length; i++)
+            result += a[aOffset + i] * b[bOffset + i];
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double dotProduct(float[] a,
+                             int aOffset,
+                             float[] b,
+                             int bOffset,
+                             int length) {
+        var sum = FloatVector.zero(FLOAT_SPECIES);
+        int upperBound = FLOAT_SPECIES.loopBound(length);
+        int i = 0;
+
+        // Multiply and accumulate one full vector of lanes at a time.
+        for (; i < upperBound; i += FLOAT_SPECIES.length())
+            sum = FloatVector
+                .fromArray(FLOAT_SPECIES, a, aOffset + i)
+                .fma(FloatVector.fromArray(FLOAT_SPECIES, b, bOffset + i),
+                     sum);
+
+        float result = sum.reduceLanes(VectorOperators.ADD);
+
+        // Handle the elements that don't fill a full vector.
+        for (; i < length; i++)
+            result += a[aOffset + i] * b[bOffset + i];
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double dotProduct(float[] a,
+                             int aOffset,
+                             byte[] b,
+                             int bOffset,
+                             int length) {
+        var sum = FloatVector.zero(FLOAT_SPECIES);
+        int upperBound = BYTE_SPECIES.loopBound(length);
+        int i = 0;
+
+        // Widen one vector of quantized bytes to floats, one float
+        // vector at a time, and accumulate.
+        for (; i < upperBound; i += BYTE_SPECIES.length()) {
+            var bytes = ByteVector.fromArray(BYTE_SPECIES, b, bOffset + i);
+            for (int part = 0; part < PARTS; part++)
+                sum = FloatVector
+                    .fromArray(FLOAT_SPECIES, a,
+                               aOffset + i + part * FLOAT_SPECIES.length())
+                    .fma((FloatVector) bytes
+                         .convertShape(VectorOperators.B2F, FLOAT_SPECIES, part),
+                         sum);
+        }
+
+        float result = sum.reduceLanes(VectorOperators.ADD);
+
+        // Handle the elements that don't fill a full vector.
+        for (; i < length; i++)
+            result += a[aOffset + i] * b[bOffset + i];
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String name() {
+        return "simd(" + SPECIES + ")";
+    }
+}
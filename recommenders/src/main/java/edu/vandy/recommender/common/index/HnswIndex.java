@@ -0,0 +1,450 @@
+package edu.vandy.recommender.common.index;
+
+import edu.vandy.recommender.common.MovieCatalog;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * A Hierarchical Navigable Small World (HNSW) graph over the vectors
+ * of a {@link MovieCatalog}, which finds the movies most similar to a
+ * query in roughly logarithmic time instead of scoring every movie.
+ *
+ * Each movie is inserted at a random level drawn from an exponential
+ * distribution.  On every level up to its own, a movie is linked to at
+ * most {@code M} neighbors ({@code 2 * M} on the bottom level) that
+ * are chosen from the {@code efConstruction} closest movies found so
+ * far.  A search greedily descends the sparse upper levels and then
+ * explores the bottom level with a candidate list of {@code efSearch}
+ * movies.  Larger values of {@code M}, {@code efConstruction}, and
+ * {@code efSearch} raise recall at the cost of memory, build time,
+ * and search time, respectively.
+ *
+ * The graph is built single-threaded from the catalog's full precision
+ * similarities and is immutable afterwards, so it can be searched by
+ * any number of threads.  Searches score movies with {@link
+ * MovieCatalog#score}, i.e., in the catalog's {@code VectorPrecision}.
+ */
+public final class HnswIndex implements VectorIndex {
+    /**
+     * The indexed catalog.
+     */
+    private final MovieCatalog mCatalog;
+
+    /**
+     * The maximum number of links per movie on the upper levels.
+     */
+    private final int mM;
+
+    /**
+     * The maximum number of links per movie on the bottom level.
+     */
+    private final int mMaxM0;
+
+    /**
+     * The size of the candidate list used while building the graph.
+     */
+    private final int mEfConstruction;
+
+    /**
+     * The size of the candidate list used while searching the graph.
+     */
+    private final int mEfSearch;
+
+    /**
+     * Normalizes the random level of each movie.
+     */
+    private final double mLevelMultiplier;
+
+    /**
+     * The links of each movie on each of its levels.  Element 0 of
+     * {@code mLinks[id][level]} holds the number of links, which
+     * follow it.
+     */
+    private final int[][][] mLinks;
+
+    /**
+     * The movie at which all searches start.
+     */
+    private int mEntryPoint = -1;
+
+    /**
+     * The highest level in the graph.
+     */
+    private int mMaxLevel = -1;
+
+    /**
+     * The movies visited by a search on the current thread.
+     */
+    private final ThreadLocal<Visited> mVisited;
+
+    /**
+     * Constructor initializes the fields.
+     */
+    private HnswIndex(MovieCatalog catalog,
+                      int m,
+                      int efConstruction,
+                      int efSearch) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1)
+            throw new IllegalArgumentException
+                ("HNSW requires M >= 2, efConstruction >= 1, and efSearch >= 1");
+
+        mCatalog = catalog;
+        mM = m;
+        mMaxM0 = 2 * m;
+        mEfConstruction = Math.max(efConstruction, m);
+        mEfSearch = efSearch;
+        mLevelMultiplier = 1.0 / Math.log(m);
+        mLinks = new int[catalog.size()][][];
+        mVisited = ThreadLocal
+            .withInitial(() -> new Visited(catalog.size()));
+    }
+
+    /**
+     * Build an {@link HnswIndex} containing every movie in the {@code
+     * catalog}.
+     *
+     * @param catalog The {@link MovieCatalog} to index
+     * @param m The maximum number of links per movie
+     * @param efConstruction The candidate list size used while
+     *                       building the graph
+     * @param efSearch The candidate list size used while searching
+     * @param seed The seed of the random movie levels
+     * @return An {@link HnswIndex} over all movies in the catalog
+     */
+    public static HnswIndex build(MovieCatalog catalog,
+                                  int m,
+                                  int efConstruction,
+                                  int efSearch,
+                                  long seed) {
+        HnswIndex index =
+            new HnswIndex(catalog, m, efConstruction, efSearch);
+        SplittableRandom random = new SplittableRandom(seed);
+
+        for (int id = 0; id < catalog.size(); id++)
+            index.insert(id, index.randomLevel(random));
+
+        return index;
+    }
+
+    /**
+     * @return The {@link MovieCatalog} this index was built from
+     */
+    @Override
+    public MovieCatalog catalog() {
+        return mCatalog;
+    }
+
+    /**
+     * @return The maximum number of links per movie
+     */
+    public int m() {
+        return mM;
+    }
+
+    /**
+     * @return The candidate list size used while building the graph
+     */
+    public int efConstruction() {
+        return mEfConstruction;
+    }
+
+    /**
+     * @return The candidate list size used while searching
+     */
+    public int efSearch() {
+        return mEfSearch;
+    }
+
+    /**
+     * Find (approximately) the {@code k} movies most similar to the
+     * {@code query} using the configured {@code efSearch}.
+     *
+     * @param query A {@link MovieCatalog.Query} prepared by the
+     *              indexed catalog
+     * @param k The maximum number of movies to return
+     * @return The {@link Neighbors} found, ordered from most to least
+     *         similar
+     */
+    @Override
+    public Neighbors search(MovieCatalog.Query query, int k) {
+        return search(query, k, mEfSearch);
+    }
+
+    /**
+     * Find (approximately) the {@code k} movies most similar to the
+     * {@code query}.
+     *
+     * @param query A {@link MovieCatalog.Query} prepared by the
+     *              indexed catalog
+     * @param k The maximum number of movies to return
+     * @param efSearch The candidate list size, which is raised to
+     *                 {@code k} if it's smaller
+     * @return The {@link Neighbors} found, ordered from most to least
+     *         similar
+     */
+    public Neighbors search(MovieCatalog.Query query, int k, int efSearch) {
+        if (mEntryPoint < 0 || k <= 0)
+            return Neighbors.empty();
+
+        IntToDoubleFunction similarity = id -> mCatalog.score(query, id);
+
+        // Greedily descend the upper levels.
+        int entryPoint = mEntryPoint;
+        for (int level = mMaxLevel; level > 0; level--)
+            entryPoint = closest(similarity, entryPoint, level);
+
+        // Explore the bottom level and keep the best k results.
+        ScoredQueue results = searchLevel(similarity,
+                                          entryPoint,
+                                          Math.max(efSearch, k),
+                                          0);
+        while (results.size() > k)
+            results.pop();
+
+        return results.drainDescending();
+    }
+
+    /**
+     * Insert a movie into the graph.
+     *
+     * @param id The movie id
+     * @param level The highest level of the movie
+     */
+    private void insert(int id, int level) {
+        mLinks[id] = new int[level + 1][];
+        for (int l = 0; l <= level; l++)
+            mLinks[id][l] = new int[maxLinks(l) + 1];
+
+        if (mEntryPoint < 0) {
+            mEntryPoint = id;
+            mMaxLevel = level;
+            return;
+        }
+
+        IntToDoubleFunction similarity =
+            other -> mCatalog.cosineSimilarity(id, other);
+
+        // Greedily descend the levels above the new movie's level.
+        int entryPoint = mEntryPoint;
+        for (int l = mMaxLevel; l > level; l--)
+            entryPoint = closest(similarity, entryPoint, l);
+
+        // Link the movie on each of its levels that already exist.
+        for (int l = Math.min(level, mMaxLevel); l >= 0; l--) {
+            Neighbors candidates =
+                searchLevel(similarity, entryPoint, mEfConstruction, l)
+                    .drainDescending();
+            int[] selected = selectNeighbors(candidates, mM);
+
+            setLinks(id, l, selected, selected.length);
+            for (int neighbor : selected)
+                addLink(neighbor, id, l);
+
+            entryPoint = candidates.ids()[0];
+        }
+
+        if (level > mMaxLevel) {
+            mMaxLevel = level;
+            mEntryPoint = id;
+        }
+    }
+
+    /**
+     * Add a link from {@code id} to {@code neighbor}, pruning the
+     * links of {@code id} if it already has the maximum number.
+     */
+    private void addLink(int id, int neighbor, int level) {
+        int[] links = mLinks[id][level];
+        int count = links[0];
+
+        if (count < maxLinks(level)) {
+            links[count + 1] = neighbor;
+            links[0] = count + 1;
+            return;
+        }
+
+        // Re-select the links from the existing ones and the new one.
+        ScoredQueue queue = new ScoredQueue(count + 1, true);
+        queue.push(neighbor, mCatalog.cosineSimilarity(id, neighbor));
+        for (int i = 1; i <= count; i++)
+            queue.push(links[i], mCatalog.cosineSimilarity(id, links[i]));
+
+        int[] selected =
+            selectNeighbors(queue.drainDescending(), maxLinks(level));
+        setLinks(id, level, selected, selected.length);
+    }
+
+    /**
+     * Select up to {@code max} diverse neighbors from candidates
+     * ordered from most to least similar.  A candidate is kept only if
+     * it's more similar to the new movie than to every neighbor that
+     * was already selected, which keeps links pointing in different
+     * directions so searches can escape local clusters.
+     */
+    private int[] selectNeighbors(Neighbors candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        int count = 0;
+
+        for (int i = 0;
+             i < candidates.size() && count < selected.length;
+             i++) {
+            int candidate = candidates.ids()[i];
+            boolean diverse = true;
+
+            for (int j = 0; j < count && diverse; j++)
+                diverse = mCatalog.cosineSimilarity(candidate, selected[j])
+                    <= candidates.scores()[i];
+
+            if (diverse)
+                selected[count++] = candidate;
+        }
+
+        return count == selected.length
+            ? selected
+            : Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Replace the links of a movie on a level.
+     */
+    private void setLinks(int id, int level, int[] neighbors, int count) {
+        int[] links = mLinks[id][level];
+        System.arraycopy(neighbors, 0, links, 1, count);
+        links[0] = count;
+    }
+
+    /**
+     * Greedily walk a level towards the movie most similar to the
+     * query.
+     *
+     * @return The most similar movie found
+     */
+    private int closest(IntToDoubleFunction similarity,
+                        int entryPoint,
+                        int level) {
+        int best = entryPoint;
+        double bestScore = similarity.applyAsDouble(best);
+
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            int[] links = mLinks[best][level];
+            for (int i = 1; i <= links[0]; i++) {
+                double score = similarity.applyAsDouble(links[i]);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = links[i];
+                    changed = true;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Perform a best-first search of a level starting at {@code
+     * entryPoint}.
+     *
+     * @return A min-heap holding the (at most) {@code ef} movies most
+     *         similar to the query
+     */
+    private ScoredQueue searchLevel(IntToDoubleFunction similarity,
+                                    int entryPoint,
+                                    int ef,
+                                    int level) {
+        Visited visited = mVisited.get();
+        visited.clear();
+
+        ScoredQueue candidates = new ScoredQueue(ef, true);
+        ScoredQueue results = new ScoredQueue(ef + 1, false);
+
+        double score = similarity.applyAsDouble(entryPoint);
+        visited.add(entryPoint);
+        candidates.push(entryPoint, score);
+        results.push(entryPoint, score);
+
+        while (!candidates.isEmpty()) {
+            // Stop once the best candidate left can't improve the
+            // results.
+            if (results.size() >= ef
+                && candidates.topScore() < results.topScore())
+                break;
+
+            int[] links = mLinks[candidates.pop()][level];
+            for (int i = 1; i <= links[0]; i++) {
+                int neighbor = links[i];
+                if (!visited.add(neighbor))
+                    continue;
+
+                score = similarity.applyAsDouble(neighbor);
+                if (results.size() < ef || score > results.topScore()) {
+                    candidates.push(neighbor, score);
+                    results.push(neighbor, score);
+                    if (results.size() > ef)
+                        results.pop();
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * @return The maximum number of links per movie on {@code level}
+     */
+    private int maxLinks(int level) {
+        return level == 0 ? mMaxM0 : mM;
+    }
+
+    /**
+     * @return A random level drawn from an exponential distribution
+     */
+    private int randomLevel(SplittableRandom random) {
+        return (int) (-Math.log(1.0 - random.nextDouble())
+                      * mLevelMultiplier);
+    }
+
+    /**
+     * Tracks the movies visited by a search without clearing an array
+     * per search, by bumping an epoch instead.
+     */
+    private static final class Visited {
+        /**
+         * The epoch in which each movie was last visited.
+         */
+        private final int[] mEpochs;
+
+        /**
+         * The epoch of the current search.
+         */
+        private int mEpoch;
+
+        Visited(int size) {
+            mEpochs = new int[size];
+        }
+
+        /**
+         * Start a new search.
+         */
+        void clear() {
+            if (++mEpoch == 0) {
+                Arrays.fill(mEpochs, 0);
+                mEpoch = 1;
+            }
+        }
+
+        /**
+         * Mark a movie as visited.
+         *
+         * @return True if the movie wasn't visited yet, else false
+         */
+        boolean add(int id) {
+            if (mEpochs[id] == mEpoch)
+                return false;
+            mEpochs[id] = mEpoch;
+            return true;
+        }
+    }
+}
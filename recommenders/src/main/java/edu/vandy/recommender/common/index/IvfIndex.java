@@ -0,0 +1,301 @@
+package edu.vandy.recommender.common.index;
+
+import edu.vandy.recommender.common.MovieCatalog;
+import edu.vandy.recommender.utils.TopKSelector;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * An inverted file (IVF) index over the vectors of a {@link
+ * MovieCatalog}, which partitions the movies into clusters with
+ * spherical k-means so a query only scores the movies in the {@code
+ * nprobe} clusters whose centroids are most similar to it.
+ *
+ * The cost of a search is roughly {@code lists + nprobe * size() /
+ * lists} similarity computations, so {@code nprobe} is a predictable
+ * knob that trades recall for latency.  Building the index takes a
+ * few passes over the catalog, so it's cheap to rebuild when the
+ * catalog is reloaded.
+ *
+ * The members of all clusters are stored in one {@code int[]}, with
+ * the members of cluster {@code c} in the positions {@link
+ * #listStart(int)} (inclusive) to {@link #listEnd(int)} (exclusive),
+ * so the clusters can also be scanned in parallel by callers.
+ */
+public final class IvfIndex implements VectorIndex {
+    /**
+     * The indexed catalog.
+     */
+    private final MovieCatalog mCatalog;
+
+    /**
+     * The normalized centroid of each cluster.
+     */
+    private final double[][] mCentroids;
+
+    /**
+     * The start of each cluster's members in {@link #mMembers}, with
+     * one extra element holding the total number of members.
+     */
+    private final int[] mListOffsets;
+
+    /**
+     * The movie ids of each cluster's members, grouped by cluster.
+     */
+    private final int[] mMembers;
+
+    /**
+     * The number of clusters scanned per search by default.
+     */
+    private final int mNprobe;
+
+    /**
+     * Constructor initializes the fields.
+     */
+    private IvfIndex(MovieCatalog catalog,
+                     double[][] centroids,
+                     int[] listOffsets,
+                     int[] members,
+                     int nprobe) {
+        mCatalog = catalog;
+        mCentroids = centroids;
+        mListOffsets = listOffsets;
+        mMembers = members;
+        mNprobe = Math.min(nprobe, centroids.length);
+    }
+
+    /**
+     * Build an {@link IvfIndex} containing every movie in the {@code
+     * catalog}.
+     *
+     * @param catalog The {@link MovieCatalog} to index
+     * @param lists The number of clusters, or 0 to use the square
+     *              root of the catalog size
+     * @param iterations The maximum number of k-means iterations
+     * @param nprobe The number of clusters scanned per search
+     * @param seed The seed used to pick the initial centroids
+     * @return An {@link IvfIndex} over all movies in the catalog
+     */
+    public static IvfIndex build(MovieCatalog catalog,
+                                 int lists,
+                                 int iterations,
+                                 int nprobe,
+                                 long seed) {
+        if (lists < 0 || iterations < 0 || nprobe < 1)
+            throw new IllegalArgumentException
+                ("IVF requires lists >= 0, iterations >= 0, and nprobe >= 1");
+
+        int size = catalog.size();
+        int k = Math.min(size,
+                         lists > 0 ? lists : (int) Math.ceil(Math.sqrt(size)));
+        SplittableRandom random = new SplittableRandom(seed);
+
+        // Seed the centroids with distinct random movies.
+        double[][] centroids = new double[k][];
+        int[] ids = IntStream.range(0, size).toArray();
+        for (int c = 0; c < k; c++) {
+            int pick = c + random.nextInt(size - c);
+            int id = ids[pick];
+            ids[pick] = ids[c];
+            ids[c] = id;
+            centroids[c] = catalog.unitVector(id);
+        }
+
+        // Alternate between assigning every movie to its most similar
+        // centroid and moving each centroid to the mean direction of
+        // its members until the assignments stop changing.
+        int[] assignments = new int[size];
+        Arrays.fill(assignments, -1);
+        for (int i = 0;
+             assign(catalog, centroids, assignments) && i < iterations;
+             i++)
+            update(catalog, centroids, assignments, random);
+
+        // Group the movie ids by cluster.
+        int[] offsets = new int[k + 1];
+        for (int cluster : assignments)
+            offsets[cluster + 1]++;
+        for (int c = 0; c < k; c++)
+            offsets[c + 1] += offsets[c];
+
+        int[] members = new int[size];
+        int[] next = Arrays.copyOf(offsets, k);
+        for (int id = 0; id < size; id++)
+            members[next[assignments[id]]++] = id;
+
+        return new IvfIndex(catalog, centroids, offsets, members, nprobe);
+    }
+
+    /**
+     * @return The {@link MovieCatalog} this index was built from
+     */
+    @Override
+    public MovieCatalog catalog() {
+        return mCatalog;
+    }
+
+    /**
+     * @return The number of clusters
+     */
+    public int lists() {
+        return mCentroids.length;
+    }
+
+    /**
+     * @return The number of clusters scanned per search by default
+     */
+    public int nprobe() {
+        return mNprobe;
+    }
+
+    /**
+     * @param cluster A cluster number
+     * @return The position of the cluster's first member
+     */
+    public int listStart(int cluster) {
+        return mListOffsets[cluster];
+    }
+
+    /**
+     * @param cluster A cluster number
+     * @return The position after the cluster's last member
+     */
+    public int listEnd(int cluster) {
+        return mListOffsets[cluster + 1];
+    }
+
+    /**
+     * @param position The position of a cluster member
+     * @return The movie id of the member
+     */
+    public int member(int position) {
+        return mMembers[position];
+    }
+
+    /**
+     * Find the {@link #nprobe()} clusters whose centroids are most
+     * similar to the {@code query}.
+     *
+     * @param query A {@link MovieCatalog.Query} prepared by the
+     *              indexed catalog
+     * @return The cluster numbers ordered from most to least similar
+     */
+    public int[] probe(MovieCatalog.Query query) {
+        return probe(query, mNprobe);
+    }
+
+    /**
+     * Find the {@code nprobe} clusters whose centroids are most
+     * similar to the {@code query}.
+     *
+     * @param query A {@link MovieCatalog.Query} prepared by the
+     *              indexed catalog
+     * @param nprobe The number of clusters to find
+     * @return The cluster numbers ordered from most to least similar
+     */
+    public int[] probe(MovieCatalog.Query query, int nprobe) {
+        TopKSelector best = new TopKSelector(nprobe);
+        double[] vector = query.vector();
+
+        for (int c = 0; c < mCentroids.length; c++) {
+            double score = mCatalog.kernel()
+                .dotProduct(mCentroids[c], 0, vector, 0, vector.length);
+            best.offer(c, score);
+        }
+
+        return best.ids();
+    }
+
+    /**
+     * Find (approximately) the {@code k} movies most similar to the
+     * {@code query} by scanning the {@link #nprobe()} most similar
+     * clusters.
+     *
+     * @param query A {@link MovieCatalog.Query} prepared by the
+     *              indexed catalog
+     * @param k The maximum number of movies to return
+     * @return The {@link Neighbors} found, ordered from most to least
+     *         similar
+     */
+    @Override
+    public Neighbors search(MovieCatalog.Query query, int k) {
+        if (k <= 0 || mCatalog.isEmpty())
+            return Neighbors.empty();
+
+        TopKSelector results = new TopKSelector(k);
+
+        for (int cluster : probe(query)) {
+            for (int i = listStart(cluster); i < listEnd(cluster); i++) {
+                int id = mMembers[i];
+                results.offer(id, mCatalog.score(query, id));
+            }
+        }
+
+        return Neighbors.of(results);
+    }
+
+    /**
+     * Assign every movie to its most similar centroid in parallel.
+     *
+     * @return True if any assignment changed, else false
+     */
+    private static boolean assign(MovieCatalog catalog,
+                                  double[][] centroids,
+                                  int[] assignments) {
+        return IntStream
+            // Assign the movies in parallel.
+            .range(0, catalog.size())
+            .parallel()
+            // Compute the most similar centroid of each movie and
+            // record whether it changed.
+            .map(id -> {
+                int best = 0;
+                double bestScore = Double.NEGATIVE_INFINITY;
+                for (int c = 0; c < centroids.length; c++) {
+                    double score = catalog.cosineSimilarity(centroids[c], id);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = c;
+                    }
+                }
+                int previous = assignments[id];
+                assignments[id] = best;
+                return previous != best ? 1 : 0;
+            })
+            .sum() > 0;
+    }
+
+    /**
+     * Move each centroid to the normalized sum of its members' unit
+     * vectors, reseeding clusters that lost all their members.
+     */
+    private static void update(MovieCatalog catalog,
+                               double[][] centroids,
+                               int[] assignments,
+                               SplittableRandom random) {
+        int dimension = catalog.dimension();
+
+        for (double[] centroid : centroids)
+            Arrays.fill(centroid, 0.0);
+
+        for (int id = 0; id < assignments.length; id++)
+            catalog.addUnitVector(id, centroids[assignments[id]]);
+
+        for (int c = 0; c < centroids.length; c++) {
+            double norm = 0.0;
+            for (double value : centroids[c])
+                norm += value * value;
+
+            if (norm == 0.0)
+                centroids[c] = catalog
+                    .unitVector(random.nextInt(assignments.length));
+            else {
+                norm = Math.sqrt(norm);
+                for (int i = 0; i < dimension; i++)
+                    centroids[c][i] /= norm;
+            }
+        }
+    }
+}
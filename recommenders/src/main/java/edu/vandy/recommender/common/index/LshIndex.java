@@ -0,0 +1,215 @@
+package edu.vandy.recommender.common.index;
+
+import edu.vandy.recommender.common.CosineSimilarityUtils;
+import edu.vandy.recommender.common.MovieCatalog;
+import edu.vandy.recommender.utils.TopKSelector;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * A random-hyperplane locality-sensitive hashing (LSH) index over the
+ * vectors of a {@link MovieCatalog}.
+ *
+ * Each movie is hashed to a signature of {@code bits} sign bits, one
+ * per random hyperplane, which are packed into {@code long}s.  The
+ * probability that two movies disagree on a bit is proportional to
+ * the angle between them, so the Hamming distance between signatures
+ * estimates their cosine similarity.
+ *
+ * A search computes the Hamming distance between the query signature
+ * and every movie signature with {@link Long#bitCount(long)}, which
+ * is much cheaper than a dot product, buckets the movies by distance,
+ * and takes candidates from the closest buckets until it has {@code
+ * candidatesFactor * k} of them.  Only these candidates are rescored
+ * by {@link CosineSimilarityUtils} in full precision.
+ */
+public final class LshIndex implements VectorIndex {
+    /**
+     * The indexed catalog.
+     */
+    private final MovieCatalog mCatalog;
+
+    /**
+     * The number of bits in each signature.
+     */
+    private final int mBits;
+
+    /**
+     * The number of {@code long}s in each signature.
+     */
+    private final int mWords;
+
+    /**
+     * The number of candidates rescored per requested movie.
+     */
+    private final int mCandidatesFactor;
+
+    /**
+     * The random hyperplanes stored row-major, one per signature bit.
+     */
+    private final double[] mHyperplanes;
+
+    /**
+     * The signatures of all movies stored row-major.
+     */
+    private final long[] mSignatures;
+
+    /**
+     * Constructor initializes the fields.
+     */
+    private LshIndex(MovieCatalog catalog,
+                     int bits,
+                     int candidatesFactor,
+                     long seed) {
+        if (bits < 1 || candidatesFactor < 1)
+            throw new IllegalArgumentException
+                ("LSH requires bits >= 1 and candidatesFactor >= 1");
+
+        mCatalog = catalog;
+        mBits = bits;
+        mWords = (bits + Long.SIZE - 1) / Long.SIZE;
+        mCandidatesFactor = candidatesFactor;
+
+        // Draw each hyperplane normal from a Gaussian, which makes
+        // its direction uniformly distributed.
+        SplittableRandom random = new SplittableRandom(seed);
+        mHyperplanes = new double[bits * catalog.dimension()];
+        for (int i = 0; i < mHyperplanes.length; i++)
+            mHyperplanes[i] = random.nextGaussian();
+
+        mSignatures = new long[catalog.size() * mWords];
+    }
+
+    /**
+     * Build an {@link LshIndex} containing every movie in the {@code
+     * catalog}.
+     *
+     * @param catalog The {@link MovieCatalog} to index
+     * @param bits The number of bits in each signature
+     * @param candidatesFactor The number of candidates rescored per
+     *                         requested movie
+     * @param seed The seed of the random hyperplanes
+     * @return An {@link LshIndex} over all movies in the catalog
+     */
+    public static LshIndex build(MovieCatalog catalog,
+                                 int bits,
+                                 int candidatesFactor,
+                                 long seed) {
+        LshIndex index = new LshIndex(catalog, bits, candidatesFactor, seed);
+
+        IntStream
+            // Hash the movies in parallel.
+            .range(0, catalog.size())
+            .parallel()
+            // Compute the signature of each movie's unit vector.
+            .forEach(id -> index
+                     .sign(catalog.unitVector(id),
+                           0,
+                           index.mSignatures,
+                           id * index.mWords));
+
+        return index;
+    }
+
+    /**
+     * @return The {@link MovieCatalog} this index was built from
+     */
+    @Override
+    public MovieCatalog catalog() {
+        return mCatalog;
+    }
+
+    /**
+     * @return The number of bits in each signature
+     */
+    public int bits() {
+        return mBits;
+    }
+
+    /**
+     * Find (approximately) the {@code k} movies most similar to the
+     * {@code query}.
+     *
+     * @param query A {@link MovieCatalog.Query} prepared by the
+     *              indexed catalog
+     * @param k The maximum number of movies to return
+     * @return The {@link Neighbors} found, ordered from most to least
+     *         similar, with full precision similarities
+     */
+    @Override
+    public Neighbors search(MovieCatalog.Query query, int k) {
+        if (k <= 0 || mCatalog.isEmpty())
+            return Neighbors.empty();
+
+        long[] signature = new long[mWords];
+        sign(query.vector(), 0, signature, 0);
+
+        // Compute the Hamming distance of each movie once and count
+        // the movies in each distance bucket.
+        int[] distances = new int[mCatalog.size()];
+        int[] buckets = new int[mBits + 1];
+        for (int id = 0; id < distances.length; id++)
+            buckets[distances[id] = distance(signature, id)]++;
+
+        // Find the smallest distance whose buckets hold enough
+        // candidates.
+        int wanted = (int) Math.min((long) k * mCandidatesFactor,
+                                    mCatalog.size());
+        int limit = 0;
+        for (int found = buckets[0]; found < wanted; found += buckets[limit])
+            limit++;
+
+        // Collect every movie that is closer than the limit, which
+        // are fewer than wanted, and only then fill the remaining
+        // candidates from the bucket at the limit, so movies at the
+        // limit never push out closer ones.
+        int[] candidates = new int[wanted];
+        int count = 0;
+        for (int id = 0; id < distances.length; id++)
+            if (distances[id] < limit)
+                candidates[count++] = id;
+        for (int id = 0; id < distances.length && count < wanted; id++)
+            if (distances[id] == limit)
+                candidates[count++] = id;
+
+        // Rescore only the candidates in full precision.
+        double[] similarities = CosineSimilarityUtils
+            .cosineSimilarities(query.vector(), candidates, count, mCatalog);
+
+        TopKSelector results = new TopKSelector(k);
+        for (int i = 0; i < count; i++)
+            results.offer(candidates[i], similarities[i]);
+
+        return Neighbors.of(results);
+    }
+
+    /**
+     * Compute the Hamming distance between a signature and the
+     * signature of a movie.
+     */
+    private int distance(long[] signature, int id) {
+        int distance = 0;
+        for (int w = 0, offset = id * mWords; w < mWords; w++)
+            distance += Long.bitCount(signature[w] ^ mSignatures[offset + w]);
+        return distance;
+    }
+
+    /**
+     * Compute the signature of a vector, with bit {@code b} set if the
+     * vector lies on the positive side of hyperplane {@code b}.
+     */
+    private void sign(double[] vector,
+                      int offset,
+                      long[] signatures,
+                      int signatureOffset) {
+        int dimension = mCatalog.dimension();
+
+        for (int b = 0; b < mBits; b++)
+            if (mCatalog.kernel().dotProduct(mHyperplanes, b * dimension,
+                                             vector, offset,
+                                             dimension) >= 0.0)
+                signatures[signatureOffset + b / Long.SIZE] |=
+                    1L << (b % Long.SIZE);
+    }
+}
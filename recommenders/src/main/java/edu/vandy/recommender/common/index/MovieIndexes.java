@@ -0,0 +1,290 @@
+package edu.vandy.recommender.common.index;
+
+import edu.vandy.recommender.common.CatalogLoadedEvent;
+import edu.vandy.recommender.common.MovieCatalog;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class builds and holds the {@link VectorIndex} objects used by
+ * the approximate {@link RecommendationEngine}s.
+ *
+ * Each index is built once per {@link MovieCatalog} in the background
+ * as soon as the catalog is loaded (the catalog itself is loaded
+ * lazily) and is then shared by all requests.  Every engine has its
+ * own build, so a request only waits for the index it needs, and only
+ * if that index isn't ready yet.  The builds run in a dedicated {@link
+ * ForkJoinPool}, which also runs the parallel streams of the builds,
+ * so they never compete for the common pool.  The index parameters
+ * are configured by the {@code app.index.*} properties.
+ */
+@Component
+public class MovieIndexes {
+    /**
+     * The seed of the random HNSW levels, so every instance of a
+     * microservice builds the same graph.
+     */
+    private static final long HNSW_SEED = 42L;
+
+    /**
+     * The seed used to pick the initial IVF centroids, so every
+     * instance of a microservice builds the same clusters.
+     */
+    private static final long IVF_SEED = 42L;
+
+    /**
+     * The seed of the random LSH hyperplanes, so every instance of a
+     * microservice computes the same signatures.
+     */
+    private static final long LSH_SEED = 42L;
+
+    /**
+     * The maximum number of links per movie in the HNSW graph.
+     */
+    @Value("${app.index.hnsw.m:16}")
+    int mHnswM = 16;
+
+    /**
+     * The candidate list size used while building the HNSW graph.
+     */
+    @Value("${app.index.hnsw.ef-construction:100}")
+    int mHnswEfConstruction = 100;
+
+    /**
+     * The candidate list size used while searching the HNSW graph.
+     */
+    @Value("${app.index.hnsw.ef-search:64}")
+    int mHnswEfSearch = 64;
+
+    /**
+     * The number of IVF clusters, or 0 to use the square root of the
+     * catalog size.
+     */
+    @Value("${app.index.ivf.lists:0}")
+    int mIvfLists;
+
+    /**
+     * The maximum number of k-means iterations used to build the IVF
+     * clusters.
+     */
+    @Value("${app.index.ivf.iterations:10}")
+    int mIvfIterations = 10;
+
+    /**
+     * The number of IVF clusters scanned per search.
+     */
+    @Value("${app.index.ivf.nprobe:8}")
+    int mIvfNprobe = 8;
+
+    /**
+     * The number of bits in each LSH signature.
+     */
+    @Value("${app.index.lsh.bits:256}")
+    int mLshBits = 256;
+
+    /**
+     * The number of LSH candidates rescored per requested movie.
+     */
+    @Value("${app.index.lsh.candidates-factor:20}")
+    int mLshCandidatesFactor = 20;
+
+    /**
+     * The build of the index of the most recently indexed catalog for
+     * each approximate {@link RecommendationEngine}.
+     */
+    private final Map<RecommendationEngine, Build> mBuilds =
+        new ConcurrentHashMap<>();
+
+    /**
+     * The {@link ForkJoinPool} that builds the indexes, or null until
+     * the first build starts.
+     */
+    private volatile ForkJoinPool mPool;
+
+    /**
+     * The build of the index of a catalog.
+     *
+     * @param catalog The {@link MovieCatalog} being indexed
+     * @param index Completes with the {@link VectorIndex} of the
+     *              {@code catalog}
+     */
+    private record Build(MovieCatalog catalog,
+                         CompletableFuture<VectorIndex> index) {
+    }
+
+    /**
+     * Start building the index of every approximate {@link
+     * RecommendationEngine} once a catalog is loaded.
+     *
+     * @param event The {@link CatalogLoadedEvent} of the catalog
+     */
+    @EventListener
+    public void onCatalogLoaded(CatalogLoadedEvent event) {
+        if (event.catalog().isEmpty())
+            return;
+
+        for (RecommendationEngine engine : RecommendationEngine.values())
+            if (engine != RecommendationEngine.EXACT)
+                prepare(engine, event.catalog());
+    }
+
+    /**
+     * Start building the index used by an approximate {@link
+     * RecommendationEngine} for the {@code catalog} unless it was
+     * already started.
+     *
+     * @param engine An approximate {@link RecommendationEngine}
+     * @param catalog The {@link MovieCatalog} to index
+     * @return A {@link CompletableFuture} that completes with the
+     *         {@link VectorIndex} for the {@code engine}
+     * @throws IllegalArgumentException if the {@code engine} doesn't
+     *         use an index
+     */
+    public CompletableFuture<VectorIndex> prepare(RecommendationEngine engine,
+                                                  MovieCatalog catalog) {
+        if (engine == RecommendationEngine.EXACT)
+            throw new IllegalArgumentException
+                ("The " + engine + " engine doesn't use an index");
+
+        Build build = mBuilds.get(engine);
+        if (build == null || build.catalog() != catalog)
+            // Only the builds of the same engine wait for each other.
+            build = mBuilds
+                .compute(engine, (key, current) -> current != null
+                         && current.catalog() == catalog
+                         ? current
+                         : new Build(catalog, CompletableFuture
+                                     .supplyAsync(() -> timedBuild(engine, catalog),
+                                                  pool())));
+        return build.index();
+    }
+
+    /**
+     * Get the index used by an approximate {@link RecommendationEngine},
+     * waiting for it if it isn't ready yet for the {@code catalog}.
+     *
+     * @param engine An approximate {@link RecommendationEngine}
+     * @param catalog The {@link MovieCatalog} to index
+     * @return The {@link VectorIndex} for the {@code engine}
+     * @throws IllegalArgumentException if the {@code engine} doesn't
+     *         use an index
+     */
+    public VectorIndex index(RecommendationEngine engine,
+                             MovieCatalog catalog) {
+        CompletableFuture<VectorIndex> index = prepare(engine, catalog);
+        try {
+            return index.join();
+        } catch (CompletionException e) {
+            // Let a later request try to build the index again.
+            mBuilds.computeIfPresent(engine, (key, current) -> current
+                                     .index() == index ? null : current);
+            throw e.getCause() instanceof RuntimeException cause
+                ? cause
+                : e;
+        }
+    }
+
+    /**
+     * Shut down the {@link ForkJoinPool} that builds the indexes, if
+     * any, when the application stops.
+     */
+    @PreDestroy
+    public void shutdown() {
+        ForkJoinPool pool = mPool;
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    /**
+     * @param catalog The {@link MovieCatalog} to index
+     * @return The {@link HnswIndex} of the {@code catalog}
+     */
+    public HnswIndex hnsw(MovieCatalog catalog) {
+        return (HnswIndex) index(RecommendationEngine.HNSW, catalog);
+    }
+
+    /**
+     * @param catalog The {@link MovieCatalog} to index
+     * @return The {@link IvfIndex} of the {@code catalog}
+     */
+    public IvfIndex ivf(MovieCatalog catalog) {
+        return (IvfIndex) index(RecommendationEngine.IVF, catalog);
+    }
+
+    /**
+     * @param catalog The {@link MovieCatalog} to index
+     * @return The {@link LshIndex} of the {@code catalog}
+     */
+    public LshIndex lsh(MovieCatalog catalog) {
+        return (LshIndex) index(RecommendationEngine.LSH, catalog);
+    }
+
+    /**
+     * Build the index of an approximate {@link RecommendationEngine}
+     * and log how long it took.
+     */
+    private VectorIndex timedBuild(RecommendationEngine engine,
+                                   MovieCatalog catalog) {
+        long start = System.nanoTime();
+        VectorIndex index = build(engine, catalog);
+        System.out.println("Built the "
+                           + engine
+                           + " index of "
+                           + catalog.size()
+                           + " movies in "
+                           + (System.nanoTime() - start) / 1_000_000
+                           + " msecs");
+        return index;
+    }
+
+    /**
+     * @return The {@link ForkJoinPool} that builds the indexes, whose
+     *         parallelism is the number of cores
+     */
+    private ForkJoinPool pool() {
+        ForkJoinPool pool = mPool;
+        if (pool == null)
+            synchronized (this) {
+                pool = mPool;
+                if (pool == null)
+                    mPool = pool = new ForkJoinPool(Runtime
+                                                    .getRuntime()
+                                                    .availableProcessors());
+            }
+        return pool;
+    }
+
+    /**
+     * Build the index of an approximate {@link RecommendationEngine}
+     * using the configured parameters.
+     */
+    private VectorIndex build(RecommendationEngine engine,
+                              MovieCatalog catalog) {
+        return switch (engine) {
+            case HNSW -> HnswIndex.build(catalog,
+                                         mHnswM,
+                                         mHnswEfConstruction,
+                                         mHnswEfSearch,
+                                         HNSW_SEED);
+            case IVF -> IvfIndex.build(catalog,
+                                       mIvfLists,
+                                       mIvfIterations,
+                                       mIvfNprobe,
+                                       IVF_SEED);
+            case LSH -> LshIndex.build(catalog,
+                                       mLshBits,
+                                       mLshCandidatesFactor,
+                                       LSH_SEED);
+            case EXACT -> throw new IllegalArgumentException
+                ("The " + engine + " engine doesn't use an index");
+        };
+    }
+}
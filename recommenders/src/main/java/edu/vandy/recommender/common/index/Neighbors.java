@@ -0,0 +1,34 @@
+package edu.vandy.recommender.common.index;
+
+import edu.vandy.recommender.utils.TopKSelector;
+
+/**
+ * The movies returned by a {@link VectorIndex} search, ordered from
+ * most to least similar to the query.
+ *
+ * @param ids The ids of the movies found
+ * @param scores The similarity of each movie to the query
+ */
+public record Neighbors(int[] ids, double[] scores) {
+    /**
+     * @return {@link Neighbors} without any movies
+     */
+    public static Neighbors empty() {
+        return new Neighbors(new int[0], new double[0]);
+    }
+
+    /**
+     * @param selector A {@link TopKSelector} of movie ids
+     * @return {@link Neighbors} containing the selected movies
+     */
+    public static Neighbors of(TopKSelector selector) {
+        return new Neighbors(selector.ids(), selector.scores());
+    }
+
+    /**
+     * @return The number of movies found
+     */
+    public int size() {
+        return ids.length;
+    }
+}
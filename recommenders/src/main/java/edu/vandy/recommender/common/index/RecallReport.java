@@ -0,0 +1,106 @@
+package edu.vandy.recommender.common.index;
+
+import edu.vandy.recommender.common.MovieCatalog;
+import edu.vandy.recommender.utils.TopKSelector;
+
+import java.util.SplittableRandom;
+
+/**
+ * Compares the movies found by a {@link VectorIndex} with the movies
+ * found by scoring every movie in the catalog.
+ *
+ * @param engine The {@link RecommendationEngine} that was measured
+ * @param k The number of movies requested per query
+ * @param samples The number of sampled query movies
+ * @param recall The average fraction of the exact top {@code k}
+ *               movies that the index also found
+ * @param exactMicros The average exact scan time in microseconds
+ * @param indexMicros The average index search time in microseconds
+ */
+public record RecallReport(RecommendationEngine engine,
+                           int k,
+                           int samples,
+                           double recall,
+                           double exactMicros,
+                           double indexMicros) {
+    /**
+     * The seed used to sample the query movies, so reports are
+     * comparable across runs.
+     */
+    private static final long SAMPLE_SEED = 42L;
+
+    /**
+     * Measure the recall of an index by using randomly sampled movies
+     * as queries.
+     *
+     * @param engine The {@link RecommendationEngine} of the {@code index}
+     * @param index The {@link VectorIndex} to measure
+     * @param k The number of movies requested per query
+     * @param samples The number of query movies to sample
+     * @return The {@link RecallReport}
+     */
+    public static RecallReport measure(RecommendationEngine engine,
+                                       VectorIndex index,
+                                       int k,
+                                       int samples) {
+        MovieCatalog catalog = index.catalog();
+        if (catalog.isEmpty() || k <= 0 || samples <= 0)
+            return new RecallReport(engine, k, 0, 0.0, 0.0, 0.0);
+
+        SplittableRandom random = new SplittableRandom(SAMPLE_SEED);
+        int expected = Math.min(k, catalog.size());
+        double recall = 0.0;
+        long exactNanos = 0, indexNanos = 0;
+
+        for (int sample = 0; sample < samples; sample++) {
+            MovieCatalog.Query query =
+                catalog.query(random.nextInt(catalog.size()));
+
+            long start = System.nanoTime();
+            Neighbors exact = exactSearch(catalog, query, k);
+            exactNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Neighbors found = index.search(query, k);
+            indexNanos += System.nanoTime() - start;
+
+            recall += (double) overlap(exact, found) / expected;
+        }
+
+        return new RecallReport(engine,
+                                k,
+                                samples,
+                                recall / samples,
+                                exactNanos / 1_000.0 / samples,
+                                indexNanos / 1_000.0 / samples);
+    }
+
+    /**
+     * Find the {@code k} movies most similar to the {@code query} by
+     * scoring every movie in the {@code catalog}.
+     */
+    static Neighbors exactSearch(MovieCatalog catalog,
+                                 MovieCatalog.Query query,
+                                 int k) {
+        TopKSelector results = new TopKSelector(k);
+
+        for (int id = 0; id < catalog.size(); id++)
+            results.offer(id, catalog.score(query, id));
+
+        return Neighbors.of(results);
+    }
+
+    /**
+     * @return The number of movies in both {@code a} and {@code b}
+     */
+    private static int overlap(Neighbors a, Neighbors b) {
+        int count = 0;
+        for (int id : a.ids())
+            for (int other : b.ids())
+                if (id == other) {
+                    count++;
+                    break;
+                }
+        return count;
+    }
+}
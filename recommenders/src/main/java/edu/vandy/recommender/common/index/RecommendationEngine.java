@@ -0,0 +1,42 @@
+package edu.vandy.recommender.common.index;
+
+import java.util.Locale;
+
+/**
+ * The engines that can be used to find the movies most similar to a
+ * watched movie.  The engine is chosen per deployment via the {@code
+ * app.index.engine} property and can be overridden per request.
+ */
+public enum RecommendationEngine {
+    /**
+     * Score every movie in the catalog.
+     */
+    EXACT,
+
+    /**
+     * Search an {@link HnswIndex} graph.
+     */
+    HNSW,
+
+    /**
+     * Scan the nearest clusters of an {@link IvfIndex}.
+     */
+    IVF,
+
+    /**
+     * Rescore the candidates found by an {@link LshIndex}.
+     */
+    LSH;
+
+    /**
+     * Convert an engine name (ignoring case in any locale) to a
+     * {@link RecommendationEngine}.
+     *
+     * @param name The engine name
+     * @return The matching {@link RecommendationEngine}
+     * @throws IllegalArgumentException if there's no such engine
+     */
+    public static RecommendationEngine from(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,160 @@
+package edu.vandy.recommender.common.index;
+
+import java.util.Arrays;
+
+/**
+ * A growable binary heap of movie ids ordered by their scores that
+ * keeps the ids and scores in parallel primitive arrays.  The heap
+ * is either a min-heap (the lowest score is at the top) or a max-heap
+ * (the highest score is at the top).
+ *
+ * This class is not thread-safe and is only used by the indexes in
+ * this package.
+ */
+class ScoredQueue {
+    /**
+     * The movie ids in heap order.
+     */
+    private int[] mIds;
+
+    /**
+     * The score of each movie id in heap order.
+     */
+    private double[] mScores;
+
+    /**
+     * The number of entries in the heap.
+     */
+    private int mSize;
+
+    /**
+     * True if the highest score is at the top of the heap.
+     */
+    private final boolean mMax;
+
+    /**
+     * Constructor initializes the fields.
+     *
+     * @param capacity The initial capacity
+     * @param max True for a max-heap, false for a min-heap
+     */
+    ScoredQueue(int capacity, boolean max) {
+        mIds = new int[Math.max(capacity, 1)];
+        mScores = new double[mIds.length];
+        mMax = max;
+    }
+
+    /**
+     * @return The number of entries in the heap
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return True if the heap is empty, else false
+     */
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return The id at the top of the heap
+     */
+    int topId() {
+        return mIds[0];
+    }
+
+    /**
+     * @return The score at the top of the heap
+     */
+    double topScore() {
+        return mScores[0];
+    }
+
+    /**
+     * Add an id and its score to the heap.
+     *
+     * @param id A movie id
+     * @param score The movie's score
+     */
+    void push(int id, double score) {
+        if (mSize == mIds.length) {
+            mIds = Arrays.copyOf(mIds, mSize * 2);
+            mScores = Arrays.copyOf(mScores, mSize * 2);
+        }
+
+        // Sift the new entry up.
+        int i = mSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(score, mScores[parent]))
+                break;
+            mIds[i] = mIds[parent];
+            mScores[i] = mScores[parent];
+            i = parent;
+        }
+        mIds[i] = id;
+        mScores[i] = score;
+    }
+
+    /**
+     * Remove the entry at the top of the heap.
+     *
+     * @return The id that was removed
+     */
+    int pop() {
+        int top = mIds[0];
+        int id = mIds[--mSize];
+        double score = mScores[mSize];
+
+        // Sift the last entry down from the top.
+        int i = 0;
+        for (int child; (child = 2 * i + 1) < mSize; i = child) {
+            if (child + 1 < mSize
+                && before(mScores[child + 1], mScores[child]))
+                child++;
+            if (!before(mScores[child], score))
+                break;
+            mIds[i] = mIds[child];
+            mScores[i] = mScores[child];
+        }
+        mIds[i] = id;
+        mScores[i] = score;
+        return top;
+    }
+
+    /**
+     * Remove all entries from the heap.
+     */
+    void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Drain the heap into {@link Neighbors} ordered from the highest
+     * to the lowest score, which empties the heap.
+     *
+     * @return The {@link Neighbors} in descending score order
+     */
+    Neighbors drainDescending() {
+        int[] ids = new int[mSize];
+        double[] scores = new double[mSize];
+
+        // A min-heap pops the lowest score first, so fill the arrays
+        // from the back.
+        for (int n = mSize, i = 0; i < n; i++) {
+            int slot = mMax ? i : n - 1 - i;
+            scores[slot] = topScore();
+            ids[slot] = pop();
+        }
+        return new Neighbors(ids, scores);
+    }
+
+    /**
+     * @return True if score {@code a} belongs above score {@code b}
+     */
+    private boolean before(double a, double b) {
+        return mMax ? a > b : a < b;
+    }
+}
@@ -0,0 +1,26 @@
+package edu.vandy.recommender.common.index;
+
+import edu.vandy.recommender.common.MovieCatalog;
+
+/**
+ * An index over the vectors of a {@link MovieCatalog} that finds the
+ * movies most similar to a query without scoring every movie.
+ */
+public interface VectorIndex {
+    /**
+     * Find (approximately) the {@code k} movies most similar to the
+     * {@code query}.
+     *
+     * @param query A {@link MovieCatalog.Query} prepared by the
+     *              indexed catalog
+     * @param k The maximum number of movies to return
+     * @return The {@link Neighbors} found, ordered from most to least
+     *         similar
+     */
+    Neighbors search(MovieCatalog.Query query, int k);
+
+    /**
+     * @return The {@link MovieCatalog} this index was built from
+     */
+    MovieCatalog catalog();
+}
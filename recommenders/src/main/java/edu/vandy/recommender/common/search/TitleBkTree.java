@@ -0,0 +1,168 @@
+package edu.vandy.recommender.common.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class finds the title closest to a possibly mistyped title,
+ * ignoring case, with a BK-tree of the normalized titles under the
+ * Levenshtein edit distance.
+ *
+ * Every child of a BK-tree node is labeled with its distance to the
+ * node, so by the triangle inequality a search for titles within
+ * distance {@code k} of a query at distance {@code d} from a node
+ * only needs to descend into the children labeled {@code d - k}
+ * through {@code d + k}.  The bound shrinks to the distance of the
+ * closest title found so far, so most of the tree is never visited.
+ * The tree is stored in flat arrays where node {@code i} is the title
+ * with id {@code i}, and the children of each node are linked through
+ * their next sibling.
+ */
+public final class TitleBkTree {
+    /**
+     * The normalized titles indexed by id.
+     */
+    private final String[] mTitles;
+
+    /**
+     * The first child of each node, or -1 if it has none.
+     */
+    private final int[] mFirstChild;
+
+    /**
+     * The next sibling of each node, or -1 if it's the last child.
+     */
+    private final int[] mNextSibling;
+
+    /**
+     * The distance of each node to its parent.
+     */
+    private final int[] mDistance;
+
+    /**
+     * Constructor builds the tree.
+     *
+     * @param titles The titles to search, whose positions are their
+     *               ids
+     */
+    public TitleBkTree(List<String> titles) {
+        mTitles = titles
+            .stream()
+            .map(TitleIndex::normalize)
+            .toArray(String[]::new);
+        mFirstChild = new int[mTitles.length];
+        mNextSibling = new int[mTitles.length];
+        mDistance = new int[mTitles.length];
+        Arrays.fill(mFirstChild, -1);
+        Arrays.fill(mNextSibling, -1);
+
+        // Insert each title below the root, i.e., the first title.
+        int[] row = new int[0];
+        for (int id = 1; id < mTitles.length; id++) {
+            int node = 0;
+            while (true) {
+                row = grow(row, mTitles[node].length() + 1);
+                int distance = distance(mTitles[id], mTitles[node], row);
+
+                // Descend into the child with the same distance, if any.
+                int child = mFirstChild[node];
+                while (child >= 0 && mDistance[child] != distance)
+                    child = mNextSibling[child];
+
+                if (child < 0) {
+                    mDistance[id] = distance;
+                    mNextSibling[id] = mFirstChild[node];
+                    mFirstChild[node] = id;
+                    break;
+                }
+                node = child;
+            }
+        }
+    }
+
+    /**
+     * Find the title with the smallest edit distance to the {@code
+     * query}, ignoring case.
+     *
+     * @param query A possibly mistyped title
+     * @param maxDistance The largest edit distance of a match
+     * @return The id of the closest title within {@code maxDistance}
+     *         edits, preferring the lowest id among equally close
+     *         titles, or -1 if there is none
+     */
+    public int closest(String query, int maxDistance) {
+        if (mTitles.length == 0 || maxDistance < 0)
+            return -1;
+
+        String normalized = TitleIndex.normalize(query);
+        int[] row = new int[0];
+        int[] stack = new int[16];
+        int size = 0;
+        int best = -1;
+        int bound = maxDistance;
+
+        stack[size++] = 0;
+        while (size > 0) {
+            int node = stack[--size];
+            row = grow(row, mTitles[node].length() + 1);
+            int distance = distance(normalized, mTitles[node], row);
+
+            if (distance < bound
+                || distance == bound && (best < 0 || node < best)) {
+                best = node;
+                bound = distance;
+            }
+
+            // Only visit the children that can be within the bound.
+            for (int child = mFirstChild[node];
+                 child >= 0;
+                 child = mNextSibling[child])
+                if (Math.abs(mDistance[child] - distance) <= bound) {
+                    if (size == stack.length)
+                        stack = Arrays.copyOf(stack, size * 2);
+                    stack[size++] = child;
+                }
+        }
+
+        return best;
+    }
+
+    /**
+     * Compute the Levenshtein distance of two strings using a single
+     * row of the dynamic programming table.
+     *
+     * @param a The first string
+     * @param b The second string
+     * @param row Holds at least {@code b.length() + 1} elements
+     * @return The number of insertions, deletions, and substitutions
+     *         that turn {@code a} into {@code b}
+     */
+    static int distance(String a, String b, int[] row) {
+        for (int j = 0; j <= b.length(); j++)
+            row[j] = j;
+
+        for (int i = 1; i <= a.length(); i++) {
+            // The value of row[j - 1] before it was overwritten.
+            int diagonal = row[0];
+            row[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int above = row[j];
+                row[j] = Math.min(Math.min(above, row[j - 1]) + 1,
+                                  diagonal + (c == b.charAt(j - 1) ? 0 : 1));
+                diagonal = above;
+            }
+        }
+        return row[b.length()];
+    }
+
+    /**
+     * @return The {@code row} if it holds at least {@code length}
+     *         elements, else a larger row
+     */
+    private static int[] grow(int[] row, int length) {
+        return row.length >= length
+            ? row
+            : new int[Math.max(length, row.length * 2)];
+    }
+}
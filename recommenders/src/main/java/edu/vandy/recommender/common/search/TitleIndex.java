@@ -0,0 +1,268 @@
+package edu.vandy.recommender.common.search;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class answers case-insensitive "title contains query" searches
+ * with an inverted index of the trigrams, i.e., the three character
+ * substrings, of every normalized title.
+ *
+ * A title can only contain the query if it contains every trigram of
+ * the query, so a search intersects the posting lists of the query's
+ * trigrams, starting with the shortest one, and only checks the few
+ * remaining candidates with {@link String#contains(CharSequence)}.
+ * Each trigram is packed into a {@code long} and the posting lists
+ * are stored back to back in one {@code int[]}, so the index holds no
+ * boxed values.  Titles are identified by their position in the
+ * {@link List} the index was built from, and since posting lists are
+ * in ascending id order the matches are found in that order as well.
+ *
+ * Queries shorter than a trigram are answered by scanning the
+ * normalized titles until {@code limit} matches are found.
+ */
+public final class TitleIndex {
+    /**
+     * The number of characters in each indexed substring.
+     */
+    private static final int GRAM = 3;
+
+    /**
+     * The normalized titles indexed by id.
+     */
+    private final String[] mTitles;
+
+    /**
+     * The distinct trigrams of all titles in ascending order.
+     */
+    private final long[] mGrams;
+
+    /**
+     * The posting list of {@code mGrams[i]} is stored in {@code
+     * mPostings[mStarts[i]]} up to {@code mPostings[mStarts[i + 1]]}.
+     */
+    private final int[] mStarts;
+
+    /**
+     * The ids of the titles containing each trigram, in ascending
+     * order within each posting list.
+     */
+    private final int[] mPostings;
+
+    /**
+     * Constructor builds the index.
+     *
+     * @param titles The titles to index, whose positions are their ids
+     */
+    public TitleIndex(List<String> titles) {
+        mTitles = new String[titles.size()];
+
+        // The distinct trigrams of each title.
+        long[][] titleGrams = new long[titles.size()][];
+        int total = 0;
+        for (int id = 0; id < mTitles.length; id++) {
+            mTitles[id] = normalize(titles.get(id));
+            titleGrams[id] = grams(mTitles[id]);
+            total += titleGrams[id].length;
+        }
+
+        // Collect the distinct trigrams of all titles.
+        long[] all = new long[total];
+        int next = 0;
+        for (long[] grams : titleGrams) {
+            System.arraycopy(grams, 0, all, next, grams.length);
+            next += grams.length;
+        }
+        mGrams = distinct(all, total);
+
+        // Count the titles per trigram and convert the counts into
+        // the start of each posting list.
+        mStarts = new int[mGrams.length + 1];
+        for (long[] grams : titleGrams)
+            for (long gram : grams)
+                mStarts[Arrays.binarySearch(mGrams, gram) + 1]++;
+        for (int i = 0; i < mGrams.length; i++)
+            mStarts[i + 1] += mStarts[i];
+
+        // Fill the posting lists in ascending id order.
+        mPostings = new int[total];
+        int[] fill = Arrays.copyOf(mStarts, mGrams.length);
+        for (int id = 0; id < titleGrams.length; id++)
+            for (long gram : titleGrams[id])
+                mPostings[fill[Arrays.binarySearch(mGrams, gram)]++] = id;
+    }
+
+    /**
+     * Normalize a title or a query so searches ignore case.
+     *
+     * @param text A title or a query
+     * @return The normalized {@code text}
+     */
+    public static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return The number of indexed titles
+     */
+    public int size() {
+        return mTitles.length;
+    }
+
+    /**
+     * Find the titles containing the {@code query}, ignoring case.
+     *
+     * @param query The search query
+     * @param limit The maximum number of titles to find
+     * @return The ids of at most {@code limit} titles containing the
+     *         {@code query} in ascending order
+     */
+    public int[] search(String query, int limit) {
+        return search(query, 0, mTitles.length, limit);
+    }
+
+    /**
+     * Find the titles with ids from {@code from} up to {@code to}
+     * containing the {@code query}, ignoring case, so a search can be
+     * split across shards of the titles.
+     *
+     * @param query The search query
+     * @param from The first id to search
+     * @param to The id after the last one to search
+     * @param limit The maximum number of titles to find
+     * @return The ids of at most {@code limit} titles in the range
+     *         containing the {@code query} in ascending order
+     */
+    public int[] search(String query, int from, int to, int limit) {
+        String normalized = normalize(query);
+        to = Math.min(to, mTitles.length);
+        if (limit <= 0 || from >= to)
+            return new int[0];
+        if (normalized.length() < GRAM)
+            return scan(normalized, from, to, limit);
+
+        // Find the posting list of each trigram of the query, which
+        // has no matches if any trigram isn't indexed.
+        long[] grams = grams(normalized);
+        int[] starts = new int[grams.length];
+        int[] ends = new int[grams.length];
+        for (int i = 0; i < grams.length; i++) {
+            int gram = Arrays.binarySearch(mGrams, grams[i]);
+            if (gram < 0)
+                return new int[0];
+            starts[i] = mStarts[gram];
+            ends[i] = mStarts[gram + 1];
+        }
+
+        // Walk the shortest posting list, starting at the first id
+        // in the range.
+        int shortest = 0;
+        for (int i = 1; i < grams.length; i++)
+            if (ends[i] - starts[i] < ends[shortest] - starts[shortest])
+                shortest = i;
+        starts[shortest] = advance(starts[shortest], ends[shortest], from);
+
+        int[] matches = new int[Math.min(limit, ends[shortest] - starts[shortest])];
+        int count = 0;
+
+        candidates:
+        for (int p = starts[shortest];
+             p < ends[shortest] && count < matches.length;
+             p++) {
+            int id = mPostings[p];
+            if (id >= to)
+                break;
+
+            // Advance every other posting list to the candidate.
+            for (int i = 0; i < grams.length; i++) {
+                if (i == shortest)
+                    continue;
+                starts[i] = advance(starts[i], ends[i], id);
+                if (starts[i] == ends[i])
+                    break candidates;
+                if (mPostings[starts[i]] != id)
+                    continue candidates;
+            }
+
+            // The title contains every trigram, but the trigrams may
+            // not be adjacent.
+            if (mTitles[id].contains(normalized))
+                matches[count++] = id;
+        }
+
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Scan the titles in a range for a query that is too short to have
+     * trigrams.
+     */
+    private int[] scan(String normalized, int from, int to, int limit) {
+        int[] matches = new int[Math.min(limit, to - from)];
+        int count = 0;
+        for (int id = from; id < to && count < matches.length; id++)
+            if (mTitles[id].contains(normalized))
+                matches[count++] = id;
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Find the first position in a posting list whose id is at least
+     * {@code id} by galloping from {@code from}, which skips quickly
+     * over long posting lists.
+     *
+     * @return The position, or {@code end} if there is none
+     */
+    private int advance(int from, int end, int id) {
+        int step = 1;
+        int low = from;
+        int high = from;
+
+        // Double the step until the id is passed.
+        while (high < end && mPostings[high] < id) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+
+        // Binary search the last step.
+        high = Math.min(high, end);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mPostings[middle] < id)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return The distinct trigrams of the normalized {@code text} in
+     *         ascending order
+     */
+    private static long[] grams(String text) {
+        int count = Math.max(text.length() - GRAM + 1, 0);
+        long[] grams = new long[count];
+        for (int i = 0; i < count; i++)
+            grams[i] = (long) text.charAt(i) << 32
+                | (long) text.charAt(i + 1) << 16
+                | text.charAt(i + 2);
+        return distinct(grams, count);
+    }
+
+    /**
+     * @return The distinct values of the first {@code count} elements
+     *         of {@code values} in ascending order, which sorts them
+     *         in place
+     */
+    private static long[] distinct(long[] values, int count) {
+        Arrays.sort(values, 0, count);
+        int size = 0;
+        for (int i = 0; i < count; i++)
+            if (size == 0 || values[i] != values[size - 1])
+                values[size++] = values[i];
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,201 @@
+package edu.vandy.recommender.common.search;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * This class completes title prefixes, ignoring case, with a trie of
+ * the normalized titles that is encoded in flat arrays.
+ *
+ * The titles are sorted by their normalized form, so the titles
+ * below each trie node are a contiguous range of that order, which
+ * every node records.  The nodes are numbered breadth first, so the
+ * children of each node are contiguous as well and a node only stores
+ * the number of its first child, how many children it has, and the
+ * character leading to it.  Completing a prefix walks one node per
+ * character, binary searching the labels of the children, and then
+ * returns the start of the node's range without visiting the rest of
+ * the subtree.
+ */
+public final class TitleTrie {
+    /**
+     * The ids of the titles sorted by their normalized form, ties
+     * being broken by id.
+     */
+    private final int[] mOrder;
+
+    /**
+     * The character leading to each node.
+     */
+    private char[] mLabels;
+
+    /**
+     * The number of the first child of each node.
+     */
+    private int[] mFirstChild;
+
+    /**
+     * The number of children of each node.
+     */
+    private int[] mChildCount;
+
+    /**
+     * The first position in {@link #mOrder} of the titles below each
+     * node.
+     */
+    private int[] mLow;
+
+    /**
+     * The position in {@link #mOrder} after the titles below each
+     * node.
+     */
+    private int[] mHigh;
+
+    /**
+     * The number of nodes.
+     */
+    private int mSize;
+
+    /**
+     * Constructor builds the trie.
+     *
+     * @param titles The titles to complete, whose positions are their
+     *               ids
+     */
+    public TitleTrie(List<String> titles) {
+        String[] normalized = titles
+            .stream()
+            .map(TitleIndex::normalize)
+            .toArray(String[]::new);
+
+        mOrder = IntStream
+            .range(0, normalized.length)
+            .boxed()
+            .sorted(Comparator
+                    .<Integer, String>comparing(id -> normalized[id])
+                    .thenComparing(id -> id))
+            .mapToInt(Integer::intValue)
+            .toArray();
+
+        int capacity = Math.max(normalized.length, 16);
+        mLabels = new char[capacity];
+        mFirstChild = new int[capacity];
+        mChildCount = new int[capacity];
+        mLow = new int[capacity];
+        mHigh = new int[capacity];
+
+        // The root holds all titles.
+        add('\0', 0, mOrder.length);
+
+        // Expand the nodes breadth first, where the depth of a node
+        // is the length of the prefix it stands for.
+        int[] depths = new int[capacity];
+        for (int node = 0; node < mSize; node++) {
+            int depth = depths[node];
+            mFirstChild[node] = mSize;
+
+            // Titles equal to the prefix sort first and have no child.
+            int low = mLow[node];
+            while (low < mHigh[node]
+                   && normalized[mOrder[low]].length() == depth)
+                low++;
+
+            // Add one child per distinct next character.
+            while (low < mHigh[node]) {
+                char label = normalized[mOrder[low]].charAt(depth);
+                int high = low + 1;
+                while (high < mHigh[node]
+                       && normalized[mOrder[high]].charAt(depth) == label)
+                    high++;
+
+                int child = add(label, low, high);
+                if (child >= depths.length)
+                    depths = Arrays.copyOf(depths, mLabels.length);
+                depths[child] = depth + 1;
+                mChildCount[node]++;
+                low = high;
+            }
+        }
+
+        // Release the unused capacity.
+        mLabels = Arrays.copyOf(mLabels, mSize);
+        mFirstChild = Arrays.copyOf(mFirstChild, mSize);
+        mChildCount = Arrays.copyOf(mChildCount, mSize);
+        mLow = Arrays.copyOf(mLow, mSize);
+        mHigh = Arrays.copyOf(mHigh, mSize);
+    }
+
+    /**
+     * @return The number of nodes in the trie
+     */
+    public int nodes() {
+        return mSize;
+    }
+
+    /**
+     * Complete a prefix of a title, ignoring case.
+     *
+     * @param prefix The start of a title
+     * @param limit The maximum number of titles to return
+     * @return The ids of at most {@code limit} titles starting with
+     *         the {@code prefix}, ordered by their normalized form
+     */
+    public int[] complete(String prefix, int limit) {
+        String normalized = TitleIndex.normalize(prefix);
+
+        // Walk down one node per character of the prefix.
+        int node = 0;
+        for (int i = 0; i < normalized.length() && node >= 0; i++)
+            node = child(node, normalized.charAt(i));
+
+        if (node < 0 || limit <= 0)
+            return new int[0];
+
+        return Arrays.copyOfRange(mOrder,
+                                  mLow[node],
+                                  mLow[node] + Math.min(limit,
+                                                        mHigh[node] - mLow[node]));
+    }
+
+    /**
+     * @return The child of {@code node} leading with {@code label},
+     *         or -1 if there is none
+     */
+    private int child(int node, char label) {
+        int low = mFirstChild[node];
+        int high = low + mChildCount[node] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (mLabels[middle] < label)
+                low = middle + 1;
+            else if (mLabels[middle] > label)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * Add a node, growing the arrays if they are full.
+     *
+     * @return The number of the new node
+     */
+    private int add(char label, int low, int high) {
+        if (mSize == mLabels.length) {
+            int capacity = mSize * 2;
+            mLabels = Arrays.copyOf(mLabels, capacity);
+            mFirstChild = Arrays.copyOf(mFirstChild, capacity);
+            mChildCount = Arrays.copyOf(mChildCount, capacity);
+            mLow = Arrays.copyOf(mLow, capacity);
+            mHigh = Arrays.copyOf(mHigh, capacity);
+        }
+
+        mLabels[mSize] = label;
+        mLow[mSize] = low;
+        mHigh[mSize] = high;
+        return mSize++;
+    }
+}
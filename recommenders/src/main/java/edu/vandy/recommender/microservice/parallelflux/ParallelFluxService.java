@@ -1,22 +1,37 @@
 package edu.vandy.recommender.microservice.parallelflux;
 
 import edu.vandy.recommender.common.BaseService;
-import edu.vandy.recommender.common.Converters;
+import edu.vandy.recommender.common.BatchRecommender;
 import edu.vandy.recommender.common.CosineSimilarityUtils;
+import edu.vandy.recommender.common.GetTopRecommendationsFlux;
+import edu.vandy.recommender.common.MovieCatalog;
+import edu.vandy.recommender.common.MovieFilter;
+import edu.vandy.recommender.common.NeighborTable;
+import edu.vandy.recommender.common.RecommendationCache;
+import edu.vandy.recommender.common.StrategyDispatcher;
+import edu.vandy.recommender.common.StrategyDispatcher.Strategy;
+import edu.vandy.recommender.common.index.IvfIndex;
+import edu.vandy.recommender.common.index.RecommendationEngine;
+import edu.vandy.recommender.common.index.VectorIndex;
 import edu.vandy.recommender.common.model.Ranking;
+import edu.vandy.recommender.common.model.RecommendationRequest;
+import edu.vandy.recommender.utils.SingleFlight;
+import edu.vandy.recommender.utils.TopKSelector;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.core.publisher.ParallelFlux;
 import reactor.core.scheduler.Schedulers;
 
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
-import static edu.vandy.recommender.common.Converters.titles2Rankings;
-import static edu.vandy.recommender.common.CosineSimilarityUtils.cosineSimilarity;
-import static edu.vandy.recommender.common.CosineSimilarityUtils.sumOfCosines;
-import static edu.vandy.recommender.common.GetTopRecommendationsFlux.getTopRecommendationsHeap;
-import static edu.vandy.recommender.common.GetTopRecommendationsFlux.getTopRecommendationsSort;
+import static edu.vandy.recommender.common.GetTopRecommendationsFlux.rescore;
+import static edu.vandy.recommender.common.GetTopRecommendationsFlux.toRankings;
 
 /**
  * This class defines implementation methods that are called by the
@@ -37,30 +52,44 @@ import static edu.vandy.recommender.common.GetTopRecommendationsFlux.getTopRecom
 @Service
 public class ParallelFluxService
        extends BaseService<Flux<Ranking>> {
+    /**
+     * Shares the computation of identical recommendation requests
+     * that are running at the same time.
+     */
+    private final SingleFlight<RecommendationCache.Key, List<Ranking>> mFlights =
+        new SingleFlight<>();
+
     /**
      * Get a {@link Flux} that emits all movies represented as {@link
      * String} objects.
      *
      * @return A {@link Flux} that emits movie titles represented as
      *        {@link String} objects sorted in ascending order
-     *        (ignoring case)
      */
     @Override
     public Flux<Ranking> getAllMovies() {
-        // Convert the mMovieMap keyset into a Flux via a helper
-        // method in the Converters class.
-
-        // TODO -- you fill in here, replacing 'return null'
-        // with the proper code.
-        // Converting the mMovieMap key set into a flux
+        // Emit the Ranking objects that were created once for the
+        // current catalog.
         return Flux
                 // Create a Flux from an Iterable
-                .fromIterable(Converters
-                        // Using Converters helper method to create
-                        // ranking object from movie titles
-                        .titles2Rankings(mMovieMap
-                                // get mMovieMap key set
-                                .keySet()));
+                .fromIterable(view().rankings());
+    }
+
+    /**
+     * Get a {@link Flux} that emits a page of at most {@code limit}
+     * movies following the {@code after} title.
+     *
+     * @param after The title the page follows, or null to start at
+     *              the first movie
+     * @param limit The maximum number of movies in the page
+     * @return A {@link Flux} that emits movie titles represented as
+     *        {@link String} objects sorted in ascending order
+     */
+    @Override
+    public Flux<Ranking> getAllMovies(String after, int limit) {
+        return Flux
+                // Create a Flux from a view of the page
+                .fromIterable(view().page(after, limit));
     }
 
     /**
@@ -68,215 +97,605 @@ public class ParallelFluxService
      * given query {@link String} using Project Reactor reactive
      * types.
      *
-     * @param query The search query
+     * @param query The search query, which ignores case
      * @return A {@link Flux} that emits movie titles containing the
      *         query represented as {@link String} objects in
-     *         ascending sorted order (ignoring case)
+     *         ascending sorted order
      */
     @Override
     public Flux<Ranking> search(String query) {
-        // Perform the following steps using a Project Reactor
-        // ParallelFlux.
-        // 
-        // 1. Create a Flux of Ranking objects containing movie titles
-        //    from mMovieMap using a helper method in the Converters class.
-        // 2. Convert Flux to a ParallelFlux.
-        // 3. Run each rail in the parallel thread pool.
-        // 4. Only keep titles that contain the search query (ignore
-        //    case).
-        // 5. Convert ParallelFlux to Flux.
-        // 6. Sort Ranking objects by title in ascending order before
-        //    returning.
-
-        // TODO -- you fill in here, replacing 'return null' with
-        // the proper code.
+        // Return every matching title.
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Search for at most {@code limit} movie titles in the database
+     * containing the given query {@link String} using the trigram
+     * index of the catalog titles rather than scanning every title.
+     *
+     * @param query The search query, which ignores case
+     * @param limit The maximum number of titles returned
+     * @return A {@link Flux} that emits movie titles containing the
+     *         query represented as {@link String} objects in
+     *         ascending sorted order
+     */
+    @Override
+    public Flux<Ranking> search(String query, int limit) {
+        // Find the ids of the matching titles, which are in
+        // ascending title order since ids are assigned that way.
+        int[] ids = mCatalog
+            .titleIndex()
+            .search(query, limit);
+
+        return Flux
+            // Convert the matching ids to a Flux.
+            .range(0, ids.length)
+            // Map each id to a new Ranking object.
+            .map(i -> new Ranking(mCatalog.title(ids[i]), 0.0));
+    }
+
+    /**
+     * Complete a prefix of a movie title using the trie of the
+     * catalog titles, which only visits one trie node per character
+     * of the {@code prefix}.
+     *
+     * @param prefix The start of a movie title, which ignores case
+     * @param limit The maximum number of titles returned
+     * @return A {@link Flux} that emits movie titles starting with
+     *         the {@code prefix} in ascending order (ignoring case)
+     */
+    @Override
+    public Flux<Ranking> autocomplete(String prefix, int limit) {
+        // Find the ids of the completed titles.
+        int[] ids = mCatalog
+            .titleTrie()
+            .complete(prefix, limit);
+
         return Flux
-                // Create a Flux of Ranking Objects
-                .fromIterable(
-                        // Use a helper method to convert titles to Rankings
-                        Converters.titles2Rankings(mMovieMap.keySet()))
-                        // Convert Flux to a ParallelFlux
-                        .parallel()
-                        // Run the ParallelFlux on the parallel() Scheduler
-                        .runOn(Schedulers.parallel())
-                        // Filter based on match between title and query
-                        .filter(title -> title.movieTitle.toLowerCase().contains(query))
-                        // Convert ParallelFlux to Flux
-                        .sequential()
-                        // Sort by title in ascending order
-                        .sort(Comparator.comparing(Ranking::getTitle));
+            // Convert the completed ids to a Flux.
+            .range(0, ids.length)
+            // Map each id to a new Ranking object.
+            .map(i -> new Ranking(mCatalog.title(ids[i]), 0.0));
     }
 
     /**
      * Recommend {@code maxCount} movies from our movie database as a
-     * function of a single {@code watchedMovie}, indicated by a
-     * request parameter containing the title of the movie that has
-     * been watched.
+     * function of a single {@code watchedMovie} using the given
+     * {@link RecommendationEngine}.
      *
      * @param watchedMovie A {@link String} indicating the title of
      *                     the movie that has been watched
      * @param maxCount The upper limit for the number of
      *                 recommendations returned
+     * @param engine The {@link RecommendationEngine} to use
+     * @param strategy Receives the value of the {@link
+     *                 edu.vandy.recommender.common.Constants.Headers#STRATEGY}
+     *                 debug header before the {@link Flux} completes
      * @return A {@link Flux} that emits movie titles most similar to
      *         the {@code watchedMovie}
      */
     @Override
     public Flux<Ranking> getRecommendations(String watchedMovie,
-                                            int maxCount) {
+                                            int maxCount,
+                                            RecommendationEngine engine,
+                                            Consumer<String> strategy) {
+        // Answer from the cache if the recommendations were already
+        // computed for the current catalog, and only decide how to
+        // compute them otherwise.
+        return cached(RecommendationCache.Key
+                      .of(List.of(watchedMovie), maxCount, engine, mCatalog),
+                      strategy,
+                      () -> computeRecommendations(watchedMovie,
+                                                   maxCount,
+                                                   engine,
+                                                   strategy));
+    }
+
+    /**
+     * Compute {@code maxCount} recommendations for a single {@code
+     * watchedMovie} using the given {@link RecommendationEngine}
+     * without consulting the cache.
+     *
+     * @param watchedMovie A {@link String} indicating the title of
+     *                     the movie that has been watched
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @param engine The {@link RecommendationEngine} to use
+     * @param strategy Receives the value of the {@link
+     *                 edu.vandy.recommender.common.Constants.Headers#STRATEGY}
+     *                 debug header
+     * @return A {@link Flux} that emits movie titles most similar to
+     *         the {@code watchedMovie}
+     */
+    protected Flux<Ranking> computeRecommendations(String watchedMovie,
+                                                   int maxCount,
+                                                   RecommendationEngine engine,
+                                                   Consumer<String> strategy) {
         // Compute the cosine similarities and return the movie titles
         // in order from greatest to least similarity based on the
         // watchedMovie param.
 
-        // Start by checking that the 'watchedMovie' exists in
-        // mMovieMap, returning an empty Flux if it's not there.
+        // Start by looking up the id of the 'watchedMovie' in
+        // mCatalog, or of the closest title if fuzzy matching is
+        // enabled, returning an empty Flux if it's not there.
+        int watchedId = resolve(watchedMovie);
 
-        // TODO -- you fill in here, replacing 'return null' with
-        // the proper code.
-        // If watchedMovie does not exist in mMovieMap, return an empty Flux
-        if(!mMovieMap.containsKey(watchedMovie)){
+        // If watchedMovie does not exist in mCatalog or no
+        // recommendations are requested, return an empty Flux.
+        if (watchedId < 0 || maxCount < 1) {
             return Flux.empty();
         }
 
-        // Next, create a local Flux variable that is initialized via
-        // the following steps:
-        //
-        // 1. Call a helper method to get the vector portion of the
-        //    input movie and create a ParallelFlux stream containing
-        //    all the entries in the Map.
-        // 2. Filter out the 'watchedMovie' from the Flux stream.
-        // 3. Convert the ParallelFlux back to a Flux.
-
-        // TODO -- you fill in here, replacing 'Flux<Ranking> entries
-        // = null' with the proper code.
-        // Local Flux variable of recommendations for watchedMovie
-        Flux<Ranking> entries =
-                // Get a ParallelFlux stream of recommendations using a helper method
-                computeRecommendationsParallelFlux(mMovieMap.get(watchedMovie))
-                        // Filter watched movie
-                        .filter(ranking -> !ranking.getTitle().equals(watchedMovie))
-                        // Convert the ParallelFlux back to a Flux.
-                        .sequential();
-
-        // Call a helper method that return the top maxCount
-        // recommendations in the Flux of entries.
-
-        // TODO -- you fill in here, replacing 'return null' with the
-        // proper code.
-        return getTopRecommendationsHeap(entries, maxCount);
+        // Answer from the precomputed neighbors of the watched movie
+        // if they are ready and there are enough of them.
+        NeighborTable table = engine == RecommendationEngine.EXACT
+            ? neighborTable(maxCount)
+            : null;
+        if (table != null) {
+            strategy.accept(StrategyDispatcher.NEIGHBORS);
+            return Flux
+                // Convert the neighbors into a Flux.
+                .fromIterable(table.rankings(watchedId,
+                                             maxCount,
+                                             mCatalog::title));
+        }
+
+        // Decide whether the requested engine runs sequentially or on
+        // the rails, which only the exact scan and the IVF clusters
+        // can be split into.
+        StrategyDispatcher.Decision decision =
+            dispatch(1,
+                     engine,
+                     engine == RecommendationEngine.EXACT
+                     || engine == RecommendationEngine.IVF);
+        report(strategy, decision);
+        Strategy chosen = decision == null
+            ? Strategy.CHUNKED
+            : decision.strategy();
+
+        // Search the HNSW graph, the LSH signatures or the IVF
+        // clusters sequentially if an approximate engine was
+        // requested and its search isn't split into the rails.
+        if (engine != RecommendationEngine.EXACT
+            && (engine != RecommendationEngine.IVF
+                || chosen == Strategy.SEQUENTIAL))
+            return timed(decision,
+                         getRecommendationsIndexed(mIndexes.index(engine, mCatalog),
+                                                   watchedId,
+                                                   maxCount));
+
+        // The query for the normalized vector of the watched movie.
+        MovieCatalog.Query query = mCatalog.query(watchedId);
+
+        // The number of candidates to select, which includes extra
+        // candidates when they are rescored in full precision.
+        int candidates = candidates(maxCount);
+
+        // Select the best candidates among the members of the nearest
+        // IVF clusters on the rails, or among all other movies in the
+        // catalog, either sequentially or by scoring contiguous chunks
+        // of the catalog on each rail.
+        Mono<TopKSelector> selection = engine == RecommendationEngine.IVF
+            ? selectTopClusters(mIndexes.ivf(mCatalog),
+                                watchedId,
+                                // Dot product of the normalized query and movie vectors
+                                scorer(query),
+                                candidates)
+            : chosen == Strategy.SEQUENTIAL
+            ? selectTopSequential(new MovieFilter(mCatalog.size())
+                                  .exclude(watchedId),
+                                  scorer(query),
+                                  candidates)
+            : selectTopChunked(new MovieFilter(mCatalog.size())
+                               .exclude(watchedId),
+                               scorer(query),
+                               candidates);
+
+        if (mRescore)
+            // Rescore the best candidates in full precision by id.
+            selection = rescore(selection,
+                                id -> mCatalog.cosineSimilarity(watchedId, id),
+                                maxCount);
+
+        // Only look up the titles of the final recommendations.
+        return timed(decision, toRankings(selection, mCatalog::title));
+    }
+
+    /**
+     * Recommend {@code maxCount} movies that are similar to a watched
+     * movie by searching a {@link VectorIndex} rather than scoring
+     * every movie in the catalog.
+     *
+     * @param index The {@link VectorIndex} to search
+     * @param watchedId The id of the watched movie in the catalog
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @return A {@link Flux} that emits movie titles most similar to
+     *         the watched movie
+     */
+    protected Flux<Ranking> getRecommendationsIndexed(VectorIndex index,
+                                                      int watchedId,
+                                                      int maxCount) {
+        // The number of candidates to find, which includes extra
+        // candidates when they are rescored in full precision.
+        int candidates = candidates(maxCount);
+
+        Mono<TopKSelector> selection = Mono
+            // Defer the search until the Mono is subscribed to.
+            .fromSupplier(() -> searchIndex(index, watchedId, candidates));
+
+        if (mRescore)
+            // Rescore the candidates in full precision.
+            selection = rescore(selection,
+                                id -> mCatalog.cosineSimilarity(watchedId, id),
+                                maxCount);
+
+        // Only look up the titles of the final recommendations.
+        return toRankings(selection, mCatalog::title);
     }
 
     /**
      * Recommend {@code maxCount} number of movies from our database
-     * as a function of films the user has watched previously,
-     * indicated by the {@code watchedMovies} {@link List}.
+     * as a function of films the user has watched previously, never
+     * recommending any of the {@code blockedMovies}.
      *
      * @param watchedMovies A {@link List} of titles of movies the
      *                      user has watched
+     * @param blockedMovies A {@link List} of titles of movies that
+     *                      must not be recommended
      * @param maxCount The upper limit for the number of
      *                 recommendations returned
+     * @param strategy Receives the value of the {@link
+     *                 edu.vandy.recommender.common.Constants.Headers#STRATEGY}
+     *                 debug header before the {@link Flux} completes
      * @return A {@link Flux} of movie titles most similar to those in
      *         {@code watchedMovies}
      */
     @Override
     public Flux<Ranking> getRecommendations(List<String> watchedMovies,
-                                            int maxCount) {
-        // Remove all movies from the watchedMovies List that do not
-        // have a corresponding Movie in the mMovieMap map *without*
-        // affecting the original contents of the watchedMovies List.
-        // If the resulting List is empty, return an empty Flux.
-        // TODO -- you fill in here.
-        // Filter watchedMovies from movies that do not have a corresponding
-        // movie in mMovieMap
-        List<String> filteredWatchedList = watchedMovies
-                                        // Convert the List to a stream
-                                        .stream()
-                                        // Filter the list by checking corresponding key in mMovieMap
-                                        .filter(mMovieMap::containsKey)
-                                        // Eliminate duplicates
-                                        .distinct()
-                                        // Convert stream back to a List
-                                        .toList();
-
-        // If the resulting List is empty, return an empty Flux.
-        if (filteredWatchedList.isEmpty()){
+                                            List<String> blockedMovies,
+                                            int maxCount,
+                                            Consumer<String> strategy) {
+        // Answer from the cache if the recommendations were already
+        // computed for the same sets of watched and blocked movies,
+        // and only decide how to compute them otherwise.
+        return cached(RecommendationCache.Key
+                      .of(watchedMovies,
+                          blockedMovies,
+                          maxCount,
+                          RecommendationEngine.EXACT,
+                          mCatalog),
+                      strategy,
+                      () -> computeRecommendations(watchedMovies,
+                                                   blockedMovies,
+                                                   maxCount,
+                                                   strategy));
+    }
+
+    /**
+     * Compute {@code maxCount} recommendations for the films the user
+     * has watched without consulting the cache.
+     *
+     * @param watchedMovies A {@link List} of titles of movies the
+     *                      user has watched
+     * @param blockedMovies A {@link List} of titles of movies that
+     *                      must not be recommended
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @param strategy Receives the value of the {@link
+     *                 edu.vandy.recommender.common.Constants.Headers#STRATEGY}
+     *                 debug header
+     * @return A {@link Flux} of movie titles most similar to those in
+     *         {@code watchedMovies}
+     */
+    protected Flux<Ranking> computeRecommendations(List<String> watchedMovies,
+                                                   List<String> blockedMovies,
+                                                   int maxCount,
+                                                   Consumer<String> strategy) {
+        // Convert the watchedMovies List into the distinct ids of the
+        // movies that are in mCatalog.
+        int[] watchedIds = watchedIds(watchedMovies);
+
+        // If the resulting array is empty or no recommendations are
+        // requested, return an empty Flux.
+        if (watchedIds.length == 0 || maxCount < 1){
             return Flux.empty();
         }
 
+        // Exclude the watched and blocked movies from the
+        // recommendations via a bitset indexed by movie id.
+        MovieFilter filter = filter(watchedIds, blockedMovies);
+
+        // Decide whether the catalog is scored sequentially or in
+        // chunks on the rails.
+        StrategyDispatcher.Decision decision =
+            dispatch(watchedIds.length, RecommendationEngine.EXACT, true);
+        report(strategy, decision);
+
+        // Prepare a query for the profile of the watched movies once
+        // per request, i.e., the sum of their normalized vectors, so
+        // each movie's sum of cosine similarities to the watched
+        // movies is a single dot product.
+        MovieCatalog.Query profile = mCatalog.profile(watchedIds);
+
+        // The number of candidates to select, which includes extra
+        // candidates when they are rescored in full precision.
+        int candidates = candidates(maxCount);
+
+        // Rank the movies that aren't excluded by the sum of their
+        // cosine similarities to the previously watched movies,
+        // either sequentially or by scoring contiguous chunks of the
+        // catalog on each rail.
+        IntToDoubleFunction scorer =
+            // Dot product of the profile and movie vectors
+            scorer(profile);
+        Mono<TopKSelector> selection =
+            decision != null && decision.strategy() == Strategy.SEQUENTIAL
+            ? selectTopSequential(filter, scorer, candidates)
+            : selectTopChunked(filter, scorer, candidates);
+
+        if (mRescore)
+            // Rescore the best candidates in full precision by id.
+            selection = rescore(selection,
+                                id -> CosineSimilarityUtils
+                                    .sumOfCosines(id, watchedIds, mCatalog),
+                                maxCount);
+
+        // Only look up the titles of the final recommendations.
+        return timed(decision, toRankings(selection, mCatalog::title));
+    }
+
+    /**
+     * Get the recommendations with the given {@link
+     * RecommendationCache.Key} like {@link
+     * #cached(RecommendationCache.Key, Supplier)}, reporting {@link
+     * StrategyDispatcher#CACHE} unless this request computed them,
+     * i.e., if they were cached or an identical request that was
+     * already running computed them.
+     *
+     * @param key The {@link RecommendationCache.Key} of the
+     *            recommendations
+     * @param strategy Receives the value of the {@link
+     *                 edu.vandy.recommender.common.Constants.Headers#STRATEGY}
+     *                 debug header before the {@link Flux} completes
+     * @param recommendations Supplies a {@link Flux} that computes
+     *                        the recommendations and reports how
+     * @return A {@link Flux} that emits the recommendations
+     */
+    protected Flux<Ranking> cached(RecommendationCache.Key key,
+                                   Consumer<String> strategy,
+                                   Supplier<Flux<Ranking>> recommendations) {
+        return Flux
+            // Track each subscription separately.
+            .defer(() -> {
+                AtomicBoolean computed = new AtomicBoolean();
+                return cached(key,
+                              () -> {
+                                  computed.set(true);
+                                  return recommendations.get();
+                              })
+                    // Report the cache if nothing was computed.
+                    .doOnComplete(() -> {
+                        if (!computed.get())
+                            strategy.accept(StrategyDispatcher.CACHE);
+                    });
+            });
+    }
+
+    /**
+     * Get the recommendations with the given {@link
+     * RecommendationCache.Key} from the {@link RecommendationCache},
+     * computing them if they aren't cached.  Identical requests that
+     * miss the cache at the same time share a single computation.
+     *
+     * @param key The {@link RecommendationCache.Key} of the
+     *            recommendations
+     * @param recommendations Supplies a {@link Flux} that computes
+     *                        the recommendations
+     * @return A {@link Flux} that emits the recommendations
+     */
+    protected Flux<Ranking> cached(RecommendationCache.Key key,
+                                   Supplier<Flux<Ranking>> recommendations) {
+        // Join the running computation of identical requests, if any,
+        // which counts as in flight while it runs.
+        Supplier<Flux<Ranking>> coalesced = () -> mFlights
+            .execute(key, () -> tracked(recommendations).collectList())
+            .flatMapIterable(rankings -> rankings);
+
+        return mCache == null
+            ? coalesced.get()
+            : mCache.recommendations(key, coalesced);
+    }
+
+    /**
+     * @return A {@link Flux} that emits the {@code recommendations},
+     *         which counts as a request in flight for the {@link
+     *         edu.vandy.recommender.common.ParallelismPolicy}, if any,
+     *         while it runs
+     */
+    private Flux<Ranking> tracked(Supplier<Flux<Ranking>> recommendations) {
+        return mPolicy == null
+            ? recommendations.get()
+            : mPolicy.tracked(recommendations);
+    }
+
+    /**
+     * Recommend movies to many users at once, scoring the catalog a
+     * single time against the profiles of all users.  The blocks of
+     * movies are scored on the rails of a {@link ParallelFlux}, each
+     * of which keeps its own {@link TopKSelector} per user, and the
+     * selectors of all rails are merged at the end.
+     *
+     * @param requests The {@link RecommendationRequest} of each user
+     * @return A {@link List} of the {@link Ranking} objects recommended
+     *         to each user, in the order of the {@code requests}
+     */
+    @Override
+    public List<List<Ranking>> getBatchRecommendations
+        (List<RecommendationRequest> requests) {
+        BatchRecommender recommender = batchRecommender(requests);
+
         // Perform the following steps using a Project Reactor
         // ParallelFlux.
         //
-        // 1. Convert mMovieMap into a flux.
+        // 1. Convert the range of movie blocks into a Flux.
         // 2. Convert the Flux to a ParallelFlux.
         // 3. Run the ParallelFlux on the parallel() Scheduler.
-        // 4. Filter out 'watchedMovies' from the stream since they
-        //    shouldn't be considered as recommendations.
-        // 5. Rank movies by sum of cosine similarity functions
-        //    to the previously watched movies.
-        // 6. Convert the ParallelFlux back to a Flux.
-
-        // TODO -- you fill in here, replacing 'Flux<Ranking> entries
-        // = null' with the proper code.
-        Flux<Ranking> entries = Flux
-                                // Convert movie entries to a Flux
-                                .fromIterable(mMovieMap.entrySet())
-                                // Convert the Flux to a ParallelFlux
-                                .parallel()
-                                // Run the ParallelFlux on the parallel() Scheduler
-                                .runOn(Schedulers.parallel())
-                                .filter(movie -> !filteredWatchedList
-                                        // Exclude watched movies
-                                        .contains(movie.getKey().toLowerCase()))
-                                // Map movies to new Ranking objects
-                                .map(movie -> new Ranking(movie.getKey(), CosineSimilarityUtils
-                                        // Use a helper method to calculate the sum of cosine similarities between the
-                                        // current movie's vector and those
-                                        .sumOfCosines(movie.getValue(), filteredWatchedList, mMovieMap, true)))
-                                // Convert the ParallelFlux back to a Flux
-                                .sequential();
-
-        // Call a helper method to get/return the top maxCount
-        // recommendations.
-        // TODO -- you fill in here, replacing 'return null' with the
-        // proper code.
-        // return the top maxCount recommendations
-        return getTopRecommendationsSort(entries, maxCount);
+        // 4. Score the blocks on each rail into that rail's
+        //    selectors.
+        // 5. Merge the selectors of all rails.
+        // 6. Convert the selectors into the rankings of each user.
+        // 7. Block until the rankings of all users are available.
+        return Flux
+                // Convert the movie blocks to a Flux
+                .range(0, recommender.blocks())
+                // Convert the Flux to a ParallelFlux
+                .parallel()
+                // Run the ParallelFlux on the parallel() Scheduler
+                .runOn(Schedulers.parallel())
+                // Score each block against all users
+                .reduce(recommender::newSelectors,
+                        (selectors, block) -> recommender
+                            .scoreBlock(block, selectors))
+                // Merge the selectors of all rails
+                .reduce(BatchRecommender::merge)
+                // Convert the selectors to rankings
+                .map(recommender::toRankings)
+                // Use the empty rankings if the catalog is empty
+                .defaultIfEmpty(recommender
+                                .toRankings(recommender.newSelectors()))
+                // Block until all rankings are available
+                .block();
+    }
+
+    /**
+     * Record the latency of computing the {@code recommendations} for
+     * the {@link StrategyDispatcher}, from when they are subscribed to
+     * until they complete.
+     *
+     * @param decision The {@link StrategyDispatcher.Decision} of the
+     *                 request, or null if it wasn't dispatched
+     * @param recommendations The {@link Flux} that computes the
+     *                        recommendations
+     * @return A {@link Flux} that emits the {@code recommendations}
+     */
+    private Flux<Ranking> timed(StrategyDispatcher.Decision decision,
+                                Flux<Ranking> recommendations) {
+        if (decision == null || mDispatcher == null)
+            return recommendations;
+
+        return Flux
+            // Start the clock when the Flux is subscribed to.
+            .defer(() -> {
+                long start = System.nanoTime();
+                return recommendations
+                    // Record the latency once all are emitted.
+                    .doOnComplete(() -> mDispatcher
+                                  .record(decision, System.nanoTime() - start));
+            });
+    }
+
+    /**
+     * Select the {@code maxCount} best movies that aren't excluded by
+     * the {@code filter} on the subscribing thread, which avoids the
+     * setup cost of the rails for small requests.
+     *
+     * @param filter The {@link MovieFilter} of the movies to skip
+     * @param scorer Computes the similarity of a movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return A {@link Mono} that emits the {@link TopKSelector} of
+     *         the best ids
+     */
+    protected Mono<TopKSelector> selectTopSequential(MovieFilter filter,
+                                                     IntToDoubleFunction scorer,
+                                                     int maxCount) {
+        return Mono
+            // Defer scoring until the Mono is subscribed to.
+            .fromSupplier(() -> selectTop(filter, scorer, maxCount));
+    }
+
+    /**
+     * Select the {@code maxCount} best movies that aren't excluded by
+     * the {@code filter}, scoring contiguous chunks of the catalog on
+     * the rails granted by the {@link
+     * edu.vandy.recommender.common.ParallelismPolicy} rather than
+     * handing every movie off to a rail individually.
+     *
+     * @param filter The {@link MovieFilter} of the movies to skip
+     * @param scorer Computes the similarity of a movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return A {@link Mono} that emits the {@link TopKSelector} of
+     *         the best ids
+     */
+    protected Mono<TopKSelector> selectTopChunked(MovieFilter filter,
+                                                  IntToDoubleFunction scorer,
+                                                  int maxCount) {
+        // The number of rails this request may use.
+        int rails = railsPerRequest();
+
+        return GetTopRecommendationsFlux
+            .selectTopChunked(filter,
+                              rails,
+                              chunkSize(rails),
+                              scorer,
+                              maxCount);
     }
 
     /**
-     * Compute the cosine similarity between a movie and all other
-     * movies in the database using Project Reactor {@link
-     * ParallelFlux}.
+     * Select the {@code maxCount} best movies in the {@code nprobe}
+     * clusters of an {@link IvfIndex} that are most similar to the
+     * watched movie, scoring the members of each probed cluster in a
+     * tight loop on one rail.  Only the cluster numbers are handed off
+     * between threads, rather than every member id.
      *
-     * @param vector A {@link List} containing a vector description of
-     *               the watched movie
-     * @return A {@link ParallelFlux} that emits {@link Ranking}
-     *         objects representing the cosine similarity between
-     *         movies
+     * @param index The {@link IvfIndex} of the catalog
+     * @param movieId The id of the watched movie in the catalog
+     * @param scorer Computes the similarity of a movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return A {@link Mono} that emits the {@link TopKSelector} of
+     *         the best other movies in the probed clusters
      */
-    protected ParallelFlux<Ranking> computeRecommendationsParallelFlux
-        (List<Double> vector) {
+    protected Mono<TopKSelector> selectTopClusters(IvfIndex index,
+                                                   int movieId,
+                                                   IntToDoubleFunction scorer,
+                                                   int maxCount) {
+        if (maxCount < 1)
+            // Return an empty Mono if maxCount < 1.
+            return Mono.empty();
+
+        // The query for the normalized vector of the watched movie.
+        MovieCatalog.Query query = mCatalog.query(movieId);
+
         // Perform the following steps using a Project Reactor
         // ParallelFlux.
         //
-        // 1. Convert mMovieMap to a Flux.
+        // 1. Convert the clusters nearest to the watched movie to a
+        //    Flux.
         // 2. Convert the Flux to a ParallelFlux.
         // 3. Run the ParallelFlux on the parallel() Scheduler.
-        // 4. Call the cosineSimilarity() helper method to create a
-        //    new Ranking object.
-
-        // TODO -- you fill in here, replacing 'return null' with the
-        // proper code.
-        // Compute the cosine similarity between a movie and all other movies
+        // 4. Score the members of each cluster except the watched
+        //    movie and keep the best of each rail.
+        // 5. Merge the selections of all the rails.
         return Flux
-                // Convert movie entries to a Flux
-                .fromIterable(mMovieMap.entrySet())
+                // Convert the probed clusters to a Flux when subscribed
+                .fromStream(() -> IntStream.of(index.probe(query)).boxed())
                 // Convert the Flux to a ParallelFlux
-                .parallel()
+                .parallel(railsPerRequest())
                 // Run the ParallelFlux on the parallel() Scheduler
                 .runOn(Schedulers.parallel())
-                // Map each movie to a new Ranking object
-                .map(movie -> new Ranking(movie.getKey(),
-                                // Compute cosine similarity between a given vector and all other
-                                cosineSimilarity(vector, movie.getValue(), true)));
+                // Score the members of each cluster on its rail
+                .reduce(() -> new TopKSelector(maxCount),
+                        (selector, cluster) -> {
+                            for (int i = index.listStart(cluster);
+                                 i < index.listEnd(cluster);
+                                 i++) {
+                                int id = index.member(i);
+                                if (id != movieId)
+                                    selector.offer(id, scorer.applyAsDouble(id));
+                            }
+                            return selector;
+                        })
+                // Merge the selections of all the rails
+                .reduce(TopKSelector::merge);
     }
 }
@@ -0,0 +1,39 @@
+package edu.vandy.recommender.microservice.parallelstreams;
+
+import edu.vandy.recommender.common.BaseApplication;
+import edu.vandy.recommender.common.ServerBeans;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ComponentScan;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static edu.vandy.recommender.common.BaseApplication.run;
+
+/**
+ * This class provides the entry point for the {@link
+ * ParallelStreamsApplication} microservice, which uses Java parallel
+ * streams running in a dedicated {@link ForkJoinPool} to provide
+ * movie recommendations to clients.
+ *
+ * The {@code @SpringBootApplication} annotation enables apps to use
+ * autoconfiguration, component scan, and to define extra
+ * configurations on their "application" class.
+ *
+ * The {@code @ComponentScan} annotation tells Spring the packages to
+ * scan for annotated components (i.e., tagged with
+ * {@code @Component}).
+ */
+@SpringBootApplication
+@ComponentScan(basePackageClasses = {
+    ParallelStreamsApplication.class,
+    ServerBeans.class})
+public class ParallelStreamsApplication extends BaseApplication {
+    /**
+     * The static main() entry point runs this Spring application.
+     */
+    public static void main(String[] args) {
+        // Call BaseApplication helper to build and run this
+        // application.
+        run(ParallelStreamsApplication.class, args);
+    }
+}
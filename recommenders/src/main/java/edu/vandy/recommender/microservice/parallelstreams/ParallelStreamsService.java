@@ -0,0 +1,279 @@
+package edu.vandy.recommender.microservice.parallelstreams;
+
+import edu.vandy.recommender.common.BaseService;
+import edu.vandy.recommender.common.BatchRecommender;
+import edu.vandy.recommender.common.GetTopRecommendationsStream;
+import edu.vandy.recommender.common.MovieFilter;
+import edu.vandy.recommender.common.MovieSpliterator;
+import edu.vandy.recommender.common.index.RecommendationEngine;
+import edu.vandy.recommender.common.model.Ranking;
+import edu.vandy.recommender.common.model.RecommendationRequest;
+import edu.vandy.recommender.utils.TopKSelector;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * This class defines implementation methods that are called by the
+ * {@link ParallelStreamsController}, which serves as the main
+ * "front-end" app gateway entry point for remote clients that want
+ * to receive movie recommendations.
+ *
+ * This implementation uses Java parallel streams that run in a
+ * dedicated {@link ForkJoinPool} rather than the common pool, so its
+ * throughput can be compared with the reactive {@code
+ * ParallelFluxService} on the same endpoints.  The catalog is
+ * traversed by a {@link MovieSpliterator} that splits the packed
+ * vectors into contiguous chunks, one fork-join task per chunk.
+ * Every request is computed, i.e., there is no result cache in front
+ * of this service.
+ *
+ * This class is annotated as a Spring {@code @Service}, which enables
+ * the automatic detection and wiring of dependent implementation
+ * classes via classpath scanning.
+ */
+@Service
+public class ParallelStreamsService
+       extends BaseService<List<Ranking>> {
+    /**
+     * The {@link ForkJoinPool} that runs the parallel streams, which
+     * is created when it's first used so the number of rails has been
+     * injected.
+     */
+    private volatile ForkJoinPool mPool;
+
+    /**
+     * Get a {@link List} that contains all movies.
+     *
+     * @return A {@link List} of movie titles represented as {@link
+     *         String} objects sorted in ascending order
+     */
+    @Override
+    public List<Ranking> getAllMovies() {
+        // Return the Ranking objects that were created once for the
+        // current catalog.
+        return view().rankings();
+    }
+
+    /**
+     * Get a page of at most {@code limit} movies following the {@code
+     * after} title.
+     *
+     * @param after The title the page follows, or null to start at
+     *              the first movie
+     * @param limit The maximum number of movies in the page
+     * @return A {@link List} of movie titles represented as {@link
+     *         String} objects sorted in ascending order
+     */
+    @Override
+    public List<Ranking> getAllMovies(String after, int limit) {
+        return view().page(after, limit);
+    }
+
+    /**
+     * Search for the movie titles in the database containing the
+     * given query {@link String}.
+     *
+     * @param query The search query, which ignores case
+     * @return A {@link List} of movie titles containing the query in
+     *         ascending sorted order
+     */
+    @Override
+    public List<Ranking> search(String query) {
+        // Return every matching title.
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Search for at most {@code limit} movie titles in the database
+     * containing the given query {@link String} using the trigram
+     * index of the catalog titles.
+     *
+     * @param query The search query, which ignores case
+     * @param limit The maximum number of titles returned
+     * @return A {@link List} of movie titles containing the query in
+     *         ascending sorted order
+     */
+    @Override
+    public List<Ranking> search(String query, int limit) {
+        return rankings(mCatalog
+                        .titleIndex()
+                        .search(query, limit));
+    }
+
+    /**
+     * Complete a prefix of a movie title using the trie of the
+     * catalog titles.
+     *
+     * @param prefix The start of a movie title, which ignores case
+     * @param limit The maximum number of titles returned
+     * @return A {@link List} of movie titles starting with the {@code
+     *         prefix} in ascending order (ignoring case)
+     */
+    @Override
+    public List<Ranking> autocomplete(String prefix, int limit) {
+        return rankings(mCatalog
+                        .titleTrie()
+                        .complete(prefix, limit));
+    }
+
+    /**
+     * Recommend {@code maxCount} movies from our movie database as a
+     * function of a single {@code watchedMovie} using the given
+     * {@link RecommendationEngine}.
+     *
+     * @param watchedMovie A {@link String} indicating the title of
+     *                     the movie that has been watched
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @param engine The {@link RecommendationEngine} to use
+     * @param strategy Receives the value of the {@link
+     *                 edu.vandy.recommender.common.Constants.Headers#STRATEGY}
+     *                 debug header
+     * @return A {@link List} of movie titles most similar to the
+     *         {@code watchedMovie}
+     */
+    @Override
+    public List<Ranking> getRecommendations(String watchedMovie,
+                                            int maxCount,
+                                            RecommendationEngine engine,
+                                            Consumer<String> strategy) {
+        // Score the catalog in the calling thread or in the pool of
+        // this service, as dispatched, unless the neighbors or an
+        // index answer the request.
+        return recommend(watchedMovie, maxCount, engine, strategy);
+    }
+
+    /**
+     * Recommend {@code maxCount} number of movies from our database
+     * as a function of films the user has watched previously, never
+     * recommending any of the {@code blockedMovies}.
+     *
+     * @param watchedMovies A {@link List} of titles of movies the
+     *                      user has watched
+     * @param blockedMovies A {@link List} of titles of movies that
+     *                      must not be recommended
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @param strategy Receives the value of the {@link
+     *                 edu.vandy.recommender.common.Constants.Headers#STRATEGY}
+     *                 debug header
+     * @return A {@link List} of movie titles most similar to those in
+     *         {@code watchedMovies}
+     */
+    @Override
+    public List<Ranking> getRecommendations(List<String> watchedMovies,
+                                            List<String> blockedMovies,
+                                            int maxCount,
+                                            Consumer<String> strategy) {
+        // Score the catalog in the calling thread or in the pool of
+        // this service, as dispatched.
+        return recommend(watchedMovies, blockedMovies, maxCount, strategy);
+    }
+
+    /**
+     * Recommend movies to many users at once, scoring the blocks of
+     * movies of a {@link BatchRecommender} with a parallel stream in
+     * the {@link ForkJoinPool} of this service.
+     *
+     * @param requests The {@link RecommendationRequest} of each user
+     * @return A {@link List} of the {@link Ranking} objects recommended
+     *         to each user, in the order of the {@code requests}
+     */
+    @Override
+    public List<List<Ranking>> getBatchRecommendations
+        (List<RecommendationRequest> requests) {
+        BatchRecommender recommender = batchRecommender(requests);
+
+        return recommender
+            .toRankings(run(() -> IntStream
+                            // Convert the movie blocks to a parallel stream
+                            .range(0, recommender.blocks())
+                            .parallel()
+                            // Score each block against all users and
+                            // merge the selectors of all tasks
+                            .collect(recommender::newSelectors,
+                                     (selectors, block) -> recommender
+                                         .scoreBlock(block, selectors),
+                                     BatchRecommender::merge)));
+    }
+
+    /**
+     * Shut down the {@link ForkJoinPool} of this service, if any,
+     * when the application stops.
+     */
+    @PreDestroy
+    public void shutdown() {
+        ForkJoinPool pool = mPool;
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    /**
+     * Select the {@code maxCount} best movies that aren't excluded by
+     * the {@code filter} with a parallel stream over a {@link
+     * MovieSpliterator}, which splits the catalog into one chunk per
+     * rail granted by the {@link
+     * edu.vandy.recommender.common.ParallelismPolicy}.
+     *
+     * @param filter The {@link MovieFilter} of the movies to skip
+     * @param scorer Computes the similarity of a movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return The {@link TopKSelector} of the best ids
+     */
+    @Override
+    protected TopKSelector selectTopConcurrently(MovieFilter filter,
+                                                 IntToDoubleFunction scorer,
+                                                 int maxCount) {
+        return run(() -> {
+                // The number of rails this request may use, which is
+                // decided while the request is counted as in flight.
+                int rails = railsPerRequest();
+                MovieSpliterator ids =
+                    new MovieSpliterator(filter, chunkSize(rails));
+
+                return GetTopRecommendationsStream
+                    .selectTop(ids, rails > 1, scorer, maxCount);
+            });
+    }
+
+    /**
+     * Run a computation in the {@link ForkJoinPool} of this service
+     * and wait for its result.  The computation counts as a request
+     * in flight for the {@link
+     * edu.vandy.recommender.common.ParallelismPolicy}, if any.
+     *
+     * @param computation The computation to run
+     * @return The result of the {@code computation}
+     */
+    private <R> R run(Supplier<R> computation) {
+        Supplier<R> task = () -> pool()
+            .submit(computation::get)
+            .join();
+
+        return mPolicy == null
+            ? task.get()
+            : mPolicy.runTracked(task);
+    }
+
+    /**
+     * @return The {@link ForkJoinPool} of this service, whose
+     *         parallelism is the configured number of rails
+     */
+    private ForkJoinPool pool() {
+        ForkJoinPool pool = mPool;
+        if (pool == null)
+            synchronized (this) {
+                pool = mPool;
+                if (pool == null)
+                    mPool = pool = new ForkJoinPool(rails());
+            }
+        return pool;
+    }
+}
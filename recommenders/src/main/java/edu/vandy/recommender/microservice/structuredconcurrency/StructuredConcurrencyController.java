@@ -0,0 +1,21 @@
+package edu.vandy.recommender.microservice.structuredconcurrency;
+
+import edu.vandy.recommender.common.BaseController;
+import edu.vandy.recommender.common.model.Ranking;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * The Spring WebMVC controller for the {@link StructuredConcurrencyService}.
+ *
+ * {@code @RestController} is a convenience annotation for creating
+ * Restful controllers. It is a specialization of {@code @Component}
+ * and is automatically detected through classpath scanning. It adds
+ * the {@code @Controller} and {@code @ResponseBody} annotations. It
+ * also converts responses to JSON.
+ */
+@RestController
+public class StructuredConcurrencyController
+    extends BaseController<List<Ranking>> {
+}
@@ -0,0 +1,325 @@
+package edu.vandy.recommender.microservice.structuredconcurrency;
+
+import edu.vandy.recommender.common.BaseService;
+import edu.vandy.recommender.common.BatchRecommender;
+import edu.vandy.recommender.common.GetTopRecommendationsStream;
+import edu.vandy.recommender.common.MovieFilter;
+import edu.vandy.recommender.common.MovieSpliterator;
+import edu.vandy.recommender.common.index.RecommendationEngine;
+import edu.vandy.recommender.common.model.Ranking;
+import edu.vandy.recommender.common.model.RecommendationRequest;
+import edu.vandy.recommender.utils.TopKSelector;
+import jdk.incubator.concurrent.StructuredTaskScope;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Supplier;
+
+/**
+ * This class defines implementation methods that are called by the
+ * {@link StructuredConcurrencyController}, which serves as the main
+ * "front-end" app gateway entry point for remote clients that want
+ * to receive movie recommendations.
+ *
+ * This implementation uses the Java structured concurrency model.
+ * Each request splits the catalog into contiguous shards and forks a
+ * virtual thread per shard in a {@link
+ * StructuredTaskScope.ShutdownOnFailure}, which cancels the other
+ * subtasks if any of them fails.  The request thread, itself a
+ * virtual thread, blocks until every subtask is done and then merges
+ * their partial top-K selections or search matches.  Blocking is
+ * cheap on virtual threads, so this service scales with the number
+ * of concurrent requests rather than with a fixed number of reactor
+ * rails, while the {@link
+ * edu.vandy.recommender.common.ParallelismPolicy} reduces the number
+ * of shards per request when many requests are in flight.
+ *
+ * This class is annotated as a Spring {@code @Service}, which enables
+ * the automatic detection and wiring of dependent implementation
+ * classes via classpath scanning.
+ */
+@Service
+public class StructuredConcurrencyService
+       extends BaseService<List<Ranking>> {
+    /**
+     * Computes the partial result of a request for one shard.
+     */
+    private interface Shard<T> {
+        /**
+         * @param from The first id of the shard
+         * @param to The id after the last one of the shard
+         * @return The partial result for the shard
+         */
+        T compute(int from, int to) throws Exception;
+    }
+
+    /**
+     * Get a {@link List} that contains all movies.
+     *
+     * @return A {@link List} of movie titles represented as {@link
+     *         String} objects sorted in ascending order
+     */
+    @Override
+    public List<Ranking> getAllMovies() {
+        // Return the Ranking objects that were created once for the
+        // current catalog.
+        return view().rankings();
+    }
+
+    /**
+     * Get a page of at most {@code limit} movies following the {@code
+     * after} title.
+     *
+     * @param after The title the page follows, or null to start at
+     *              the first movie
+     * @param limit The maximum number of movies in the page
+     * @return A {@link List} of movie titles represented as {@link
+     *         String} objects sorted in ascending order
+     */
+    @Override
+    public List<Ranking> getAllMovies(String after, int limit) {
+        return view().page(after, limit);
+    }
+
+    /**
+     * Search for the movie titles in the database containing the
+     * given query {@link String}.
+     *
+     * @param query The search query, which ignores case
+     * @return A {@link List} of movie titles containing the query in
+     *         ascending sorted order
+     */
+    @Override
+    public List<Ranking> search(String query) {
+        // Return every matching title.
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Search for at most {@code limit} movie titles in the database
+     * containing the given query {@link String}.  A subtask searches
+     * the trigram index for the titles of each shard, and the matches
+     * of the shards are concatenated in shard order, i.e., in
+     * ascending title order.
+     *
+     * @param query The search query, which ignores case
+     * @param limit The maximum number of titles returned
+     * @return A {@link List} of movie titles containing the query in
+     *         ascending sorted order
+     */
+    @Override
+    public List<Ranking> search(String query, int limit) {
+        List<int[]> matches = forkShards
+            (mCatalog.size(),
+             // Search the titles of each shard
+             (from, to) -> mCatalog
+                 .titleIndex()
+                 .search(query, from, to, limit));
+
+        // Keep the first 'limit' matches of the shards.
+        return matches
+            .stream()
+            .flatMapToInt(Arrays::stream)
+            .limit(Math.max(limit, 0))
+            .mapToObj(id -> new Ranking(mCatalog.title(id), 0.0))
+            .toList();
+    }
+
+    /**
+     * Complete a prefix of a movie title using the trie of the
+     * catalog titles, which only visits the titles starting with the
+     * prefix, so it isn't split into subtasks.
+     *
+     * @param prefix The start of a movie title, which ignores case
+     * @param limit The maximum number of titles returned
+     * @return A {@link List} of movie titles starting with the {@code
+     *         prefix} in ascending order (ignoring case)
+     */
+    @Override
+    public List<Ranking> autocomplete(String prefix, int limit) {
+        return rankings(mCatalog
+                        .titleTrie()
+                        .complete(prefix, limit));
+    }
+
+    /**
+     * Recommend {@code maxCount} movies from our movie database as a
+     * function of a single {@code watchedMovie} using the given
+     * {@link RecommendationEngine}.
+     *
+     * @param watchedMovie A {@link String} indicating the title of
+     *                     the movie that has been watched
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @param engine The {@link RecommendationEngine} to use
+     * @param strategy Receives the value of the {@link
+     *                 edu.vandy.recommender.common.Constants.Headers#STRATEGY}
+     *                 debug header
+     * @return A {@link List} of movie titles most similar to the
+     *         {@code watchedMovie}
+     */
+    @Override
+    public List<Ranking> getRecommendations(String watchedMovie,
+                                            int maxCount,
+                                            RecommendationEngine engine,
+                                            Consumer<String> strategy) {
+        // Score the catalog in the calling thread or its shards in
+        // subtasks, as dispatched, unless the neighbors or an index
+        // answer the request.
+        return recommend(watchedMovie, maxCount, engine, strategy);
+    }
+
+    /**
+     * Recommend {@code maxCount} number of movies from our database
+     * as a function of films the user has watched previously, never
+     * recommending any of the {@code blockedMovies}.
+     *
+     * @param watchedMovies A {@link List} of titles of movies the
+     *                      user has watched
+     * @param blockedMovies A {@link List} of titles of movies that
+     *                      must not be recommended
+     * @param maxCount The upper limit for the number of
+     *                 recommendations returned
+     * @param strategy Receives the value of the {@link
+     *                 edu.vandy.recommender.common.Constants.Headers#STRATEGY}
+     *                 debug header
+     * @return A {@link List} of movie titles most similar to those in
+     *         {@code watchedMovies}
+     */
+    @Override
+    public List<Ranking> getRecommendations(List<String> watchedMovies,
+                                            List<String> blockedMovies,
+                                            int maxCount,
+                                            Consumer<String> strategy) {
+        // Score the catalog in the calling thread or its shards in
+        // subtasks, as dispatched.
+        return recommend(watchedMovies, blockedMovies, maxCount, strategy);
+    }
+
+    /**
+     * Recommend movies to many users at once, forking a subtask that
+     * scores a shard of the movie blocks of a {@link
+     * BatchRecommender} against all users.
+     *
+     * @param requests The {@link RecommendationRequest} of each user
+     * @return A {@link List} of the {@link Ranking} objects recommended
+     *         to each user, in the order of the {@code requests}
+     */
+    @Override
+    public List<List<Ranking>> getBatchRecommendations
+        (List<RecommendationRequest> requests) {
+        BatchRecommender recommender = batchRecommender(requests);
+
+        List<TopKSelector[]> partials = forkShards
+            (recommender.blocks(),
+             // Score the blocks of each shard against all users
+             (from, to) -> {
+                 TopKSelector[] selectors = recommender.newSelectors();
+                 for (int block = from; block < to; block++)
+                     recommender.scoreBlock(block, selectors);
+                 return selectors;
+             });
+
+        // Merge the selectors of all the shards.
+        return recommender
+            .toRankings(partials
+                        .stream()
+                        .reduce(recommender.newSelectors(),
+                                BatchRecommender::merge));
+    }
+
+    /**
+     * Select the {@code maxCount} best movies that aren't excluded by
+     * the {@code filter} by forking a subtask that selects the best
+     * movies of each shard and merging their partial selections.
+     *
+     * @param filter The {@link MovieFilter} of the movies to skip
+     * @param scorer Computes the similarity of a movie id
+     * @param maxCount The upper limit for the number of ids selected
+     * @return The {@link TopKSelector} of the best ids
+     */
+    @Override
+    protected TopKSelector selectTopConcurrently(MovieFilter filter,
+                                                 IntToDoubleFunction scorer,
+                                                 int maxCount) {
+        List<TopKSelector> partials = forkShards
+            (filter.size(),
+             // Score the movies of each shard sequentially
+             (from, to) -> GetTopRecommendationsStream
+                 .selectTop(new MovieSpliterator(filter,
+                                                 from,
+                                                 to,
+                                                 to - from),
+                            false,
+                            scorer,
+                            maxCount));
+
+        // Merge the partial selections of all the shards.
+        return partials
+            .stream()
+            .reduce(new TopKSelector(maxCount), TopKSelector::merge);
+    }
+
+    /**
+     * Split the ids from 0 up to {@code size} into contiguous shards,
+     * one per rail granted by the {@link
+     * edu.vandy.recommender.common.ParallelismPolicy}, and compute
+     * each shard in a subtask running on its own virtual thread.  If
+     * a subtask fails the others are cancelled and the failure is
+     * rethrown.
+     *
+     * @param size The number of ids to split into shards
+     * @param shard Computes the partial result of each shard
+     * @return The partial results of the shards in shard order
+     */
+    private <T> List<T> forkShards(int size, Shard<T> shard) {
+        return tracked(() -> {
+                // The number of shards of this request, which is
+                // decided while the request is counted as in flight.
+                int rails = railsPerRequest();
+                int shardSize = Math.max((size + rails - 1) / rails, 1);
+
+                try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+                    // Fork a subtask per shard.
+                    List<Future<T>> subtasks = new ArrayList<>();
+                    for (int from = 0; from < size; from += shardSize) {
+                        int start = from;
+                        int end = Math.min(from + shardSize, size);
+                        subtasks.add(scope.fork(() -> shard.compute(start, end)));
+                    }
+
+                    // Wait for all subtasks and rethrow the first
+                    // failure, if any.
+                    scope
+                        .join()
+                        .throwIfFailed(IllegalStateException::new);
+
+                    return subtasks
+                        .stream()
+                        .map(Future::resultNow)
+                        .toList();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            });
+    }
+
+    /**
+     * Count a computation as a request in flight for the {@link
+     * edu.vandy.recommender.common.ParallelismPolicy}, if any.
+     *
+     * @param computation The computation to run
+     * @return The result of the {@code computation}
+     */
+    private <R> R tracked(Supplier<R> computation) {
+        return mPolicy == null
+            ? computation.get()
+            : mPolicy.runTracked(computation);
+    }
+}
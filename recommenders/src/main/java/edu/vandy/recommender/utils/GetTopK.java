@@ -4,16 +4,23 @@ import reactor.core.publisher.Flux;
 
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Stream;
 
-import static java.util.Collections.reverseOrder;
-
 /**
  * This Java utility class efficiently finds the top {@code k} items
- * in a {@link Flux}, {@link Stream}, or {@link List} using a Java
- * {@link PriorityQueue}, which is implemented internally via a Heap
+ * in a {@link Flux}, {@link Stream}, or {@link List} using a Heap
  * data structure (<a
  * href="http://en.wikipedia.org/wiki/Heap_(data_structure)">here</a>).
+ *
+ * Items that are {@link Comparable} are kept in a Java {@link
+ * PriorityQueue} bounded to {@code k} items.  Items that are scored
+ * by a {@link ToDoubleFunction} are selected by a {@link
+ * TopKSelector} over primitive scores instead: each item's score is
+ * compared with the lowest score selected so far before the item is
+ * stored, so items that can't make the top {@code k} are dropped
+ * without touching the heap, and the selected items are kept in
+ * {@code k} slots that are reused as items are replaced.
  */
 public class GetTopK {
     /**
@@ -23,7 +30,8 @@ public class GetTopK {
 
    /**
      * This method returns a {@link Collection} that emits the top
-     * {@code k} items in the {@code stream} parameter.
+     * {@code k} {@link Comparable} items in the {@code stream}
+     * parameter.
      *
      * @param collection The {@link Collection} given as input
      * @param k The max number of items to return
@@ -38,43 +46,56 @@ public class GetTopK {
         else {
             // Create a new heap to efficiently keep track of the top
             // k items.
-            Queue<T> heap = new PriorityQueue<>();
+            Heap<T> heap = new Heap<>(k);
 
-            // Iterate through all the items in the collection.
-            for (var item : collection) {
-                // Insert the item into the heap.
+            // Offer all the items in the collection to the heap.
+            for (var item : collection)
                 heap.offer(item);
 
-                // Remove the item of lowest priority from the
-                // heap if its size exceeds k.
-                if (heap.size() > k)
-                    heap.poll();
-            }
-
             // After all heap update processing completes convert the
-            // heap into a List whose values are ordered from
-            // highest to lowest.
-            return convertHeapToCollection(heap);
+            // heap into a List whose values are ordered from highest
+            // to lowest.
+            return heap.toList();
         }
     }
 
-    /**
-     * Returns a {@link Collection} that contains the items in the {@code
-     * heap} sorted from highest to lowest.
+   /**
+     * This method returns a {@link Collection} that emits the top
+     * {@code k} items in the {@code stream} parameter.
      *
-     * @param heap The heap containing the top k items
-     * @return A {@link Collection} that contains the items in the {@code
-     *         heap} sorted from highest to lowest
+     * @param collection The {@link Collection} given as input
+     * @param k The max number of items to return
+     * @param scorer Computes the score of an item
+     * @return A {@link Collection} that contains the top {@code k}
+     *         items in the {@code stream} parameter
      */
-    private static <T> Collection<T> convertHeapToCollection(Queue<T> heap) {
-        var sortedList = new ArrayList<>(heap);
-        sortedList.sort(Collections.reverseOrder());
-        return sortedList;
+    public static <T> Collection<T> getTopK(Collection<T> collection,
+                                            int k,
+                                            ToDoubleFunction<? super T> scorer) {
+        if (k < 1)
+            // Return an empty Collection if k < 1.
+            return Collections.emptyList();
+        else {
+            // Create a new selection to efficiently keep track of the
+            // top k items.
+            Selection<T> selection = new Selection<>(k, scorer);
+
+            // Offer all the items in the collection to the selection.
+            for (var item : collection)
+                selection.offer(item);
+
+            // After all selection processing completes convert the
+            // selection into a List whose values are ordered from
+            // highest to lowest.
+            return selection.toList();
+        }
     }
 
     /**
      * This method returns a {@link Stream} that emits the top {@code
-     * k} items in the {@code stream} parameter.
+     * k} {@link Comparable} items in the {@code stream} parameter.  A
+     * parallel {@code stream} keeps a heap per chunk and then merges
+     * the heaps.
      *
      * @param stream The {@link Stream} given as input
      * @param k The max number of items to return
@@ -86,45 +107,48 @@ public class GetTopK {
         if (k < 1)
             // Return an empty Stream if k < 1.
             return Stream.empty();
-        else {
-            // Create a new heap to efficiently keep track of the top
-            // k items.
-            Queue<T> heap = new PriorityQueue<>();
+        else
+            return stream
+                // Offer each item to a heap of the top k items.
+                .collect(() -> new Heap<T>(k),
+                         Heap::offer,
+                         Heap::merge)
 
-            stream
-                // Update the heap.
-                .forEach(item -> {
-                    // Insert the item into the heap.
-                    heap.offer(item);
-
-                    // Remove the item of lowest priority from the
-                    // heap if its size exceeds k.
-                    if (heap.size() > k)
-                         heap.poll();
-                });
-
-            // After all heap update processing completes convert the
-            // heap into a Stream whose values are ordered from
-            // highest to lowest.
-            return convertHeapToStream(heap);
-        }
+                // Convert the heap into a Stream whose values are
+                // ordered from highest to lowest.
+                .toList()
+                .stream();
     }
 
     /**
-     * Returns a {@link Stream} that contains the items in the {@code
-     * heap} sorted from highest to lowest.
+     * This method returns a {@link Stream} that emits the top {@code
+     * k} items in the {@code stream} parameter.  A parallel {@code
+     * stream} selects the top {@code k} items of each chunk and then
+     * merges the selections.
      *
-     * @param heap The heap containing the top k items
-     * @return A {@link Stream} that emits the items in the {@code
-     *         heap} sorted from highest to lowest
+     * @param stream The {@link Stream} given as input
+     * @param k The max number of items to return
+     * @param scorer Computes the score of an item
+     * @return A {@link Stream} that emits the top {@code k}
+     *         items in the {@code stream} parameter
      */
-    private static <T> Stream<T> convertHeapToStream(Queue<T> heap) {
-        return heap
-            // Convert the Queue into a Stream.
-            .stream()
+    public static <T> Stream<T> getTopK(Stream<T> stream,
+                                        int k,
+                                        ToDoubleFunction<? super T> scorer) {
+        if (k < 1)
+            // Return an empty Stream if k < 1.
+            return Stream.empty();
+        else
+            return stream
+                // Offer each item to a selection of the top k items.
+                .collect(() -> new Selection<T>(k, scorer),
+                         Selection::offer,
+                         Selection::merge)
 
-            // Sort the Stream contents from highest to lowest.
-            .sorted(reverseOrder());
+                // Convert the selection into a Stream whose values
+                // are ordered from highest to lowest.
+                .toList()
+                .stream();
     }
 
     /**
@@ -139,9 +163,26 @@ public class GetTopK {
         return flux -> GetTopK.getTopK(flux, k);
     }
 
+    /**
+     * This adapter method enables integration with Project Reactor's
+     * {@code transform()} operator for items scored by the {@code
+     * scorer}.
+     *
+     * @param k The max number of items to return
+     * @param scorer Computes the score of an item
+     * @return A {@link Flux} that emits the top {@code k}
+     *         items in the implicit {@link Flux parameter}
+     */
+    public static <T> Function<Flux<T>, Flux<T>> getTopK
+        (int k,
+         ToDoubleFunction<? super T> scorer) {
+        return flux -> GetTopK.getTopK(flux, k, scorer);
+    }
+
     /**
      * This method returns a {@link Flux} that emits the top {@code k}
-     * items in the {@code flux} parameter.
+     * {@link Comparable} items in the {@code flux} parameter.  Each
+     * subscription uses its own heap.
      *
      * @param flux The {@link Flux} given as input
      * @param k The max number of items to return
@@ -153,47 +194,184 @@ public class GetTopK {
         if (k < 1)
             // Return an empty Flux if k < 1.
             return Flux.empty();
-        else {
-            // Create a new heap to efficiently keep track of the top
-            // k items.
-            Queue<T> heap = new PriorityQueue<>();
+        else
+            return flux
+                // Offer each item to a heap of the top k items.
+                .collect(() -> new Heap<T>(k),
+                         Heap::offer)
+
+                // After all the items are offered convert the heap
+                // into a Flux whose values are ordered from highest
+                // to lowest.
+                .flatMapIterable(Heap::toList);
+    }
 
+    /**
+     * This method returns a {@link Flux} that emits the top {@code k}
+     * items in the {@code flux} parameter.  Each subscription uses its
+     * own selection.
+     *
+     * @param flux The {@link Flux} given as input
+     * @param k The max number of items to return
+     * @param scorer Computes the score of an item
+     * @return A {@link Flux} that emits the top {@code k}
+     *         items in the {@code flux} parameter
+     */
+    public static <T> Flux<T> getTopK(Flux<T> flux,
+                                      int k,
+                                      ToDoubleFunction<? super T> scorer) {
+        if (k < 1)
+            // Return an empty Flux if k < 1.
+            return Flux.empty();
+        else
             return flux
-                // Return an empty Flux if there's no input.
-                .switchIfEmpty(Flux.empty())
-
-                // This action operator updates the heap.
-                .doOnNext(item -> {
-                    // Insert the item into the heap.
-                    heap.offer(item);
-
-                    // Remove the item of lowest priority from the heap if its
-                    // size exceeds k.
-                    if (heap.size() > k)
-                        heap.poll();
-                })
-
-                // After all the updateHeap() processing completes
-                // convert the heap into a Flux whose values are
-                // ordered from highest to lowest.
-                .thenMany(Flux.defer(() -> convertHeapToFlux(heap)));
+                // Offer each item to a selection of the top k items.
+                .collect(() -> new Selection<T>(k, scorer),
+                         Selection::offer)
+
+                // After all the items are offered convert the
+                // selection into a Flux whose values are ordered from
+                // highest to lowest.
+                .flatMapIterable(Selection::toList);
+    }
+
+    /**
+     * Keeps the top {@code k} {@link Comparable} items offered to it
+     * in a {@link PriorityQueue} whose head is the lowest of them.
+     */
+    private static final class Heap<T> {
+        /**
+         * The max number of items to keep.
+         */
+        private final int mK;
+
+        /**
+         * The top items offered so far.
+         */
+        private final Queue<T> mQueue = new PriorityQueue<>();
+
+        /**
+         * Constructor initializes the fields.
+         */
+        Heap(int k) {
+            mK = k;
+        }
+
+        /**
+         * Offer an item to the heap.
+         */
+        void offer(T item) {
+            // Insert the item into the heap.
+            mQueue.offer(item);
+
+            // Remove the item of lowest priority from the heap if its
+            // size exceeds k.
+            if (mQueue.size() > mK)
+                mQueue.poll();
+        }
+
+        /**
+         * Offer all the items kept by {@code other}.
+         */
+        void merge(Heap<T> other) {
+            for (T item : other.mQueue)
+                offer(item);
+        }
+
+        /**
+         * @return The kept items ordered from highest to lowest
+         */
+        List<T> toList() {
+            List<T> items = new ArrayList<>(mQueue);
+            items.sort(Collections.reverseOrder());
+            return items;
         }
     }
 
     /**
-     * Returns a {@link Flux} that contains the items in the queue
-     * sorted from highest to lowest.
-     *
-     * @param heap The heap containing the top k items
-     * @return A {@link Flux} that emits the items in the queue
-     *         sorted from highest to lowest
+     * Selects the top {@code k} items offered to it by storing them
+     * in {@code k} slots whose numbers are selected by a {@link
+     * TopKSelector}.
      */
-    private static <T> Flux<T> convertHeapToFlux(Queue<T> heap) {
-        return Flux
-            // Convert the Queue into a Flux.
-            .fromIterable(heap)
+    private static final class Selection<T> {
+        /**
+         * Selects the slots of the top k items.
+         */
+        private final TopKSelector mSelector;
+
+        /**
+         * The selected items indexed by slot, which grows as slots
+         * are used like the arrays of the {@link TopKSelector}.
+         */
+        private Object[] mItems = new Object[0];
+
+        /**
+         * Computes the score of an item.
+         */
+        private final ToDoubleFunction<? super T> mScorer;
 
-            // Sort the Flux contents from highest to lowest.
-            .sort(reverseOrder());
+        /**
+         * Constructor initializes the fields.
+         */
+        Selection(int k, ToDoubleFunction<? super T> scorer) {
+            mSelector = new TopKSelector(k);
+            mScorer = scorer;
+        }
+
+        /**
+         * Offer an item to the selection.
+         */
+        void offer(T item) {
+            offer(item, mScorer.applyAsDouble(item));
+        }
+
+        /**
+         * Offer an item with a known score to the selection.
+         */
+        private void offer(T item, double score) {
+            if (!mSelector.isFull()) {
+                // Use the next free slot.
+                int slot = mSelector.size();
+                if (slot == mItems.length)
+                    mItems = Arrays.copyOf(mItems,
+                                           Math.max(2 * slot, 16));
+                mItems[slot] = item;
+                mSelector.offer(slot, score);
+            } else if (score > mSelector.threshold()) {
+                // Reuse the slot of the lowest scoring item.
+                int slot = mSelector.minId();
+                mItems[slot] = item;
+                mSelector.offer(slot, score);
+            }
+        }
+
+        /**
+         * Offer all the items selected by {@code other}.
+         */
+        void merge(Selection<T> other) {
+            int[] slots = other.mSelector.ids();
+            double[] scores = other.mSelector.scores();
+            for (int i = 0; i < slots.length; i++)
+                offer(other.item(slots[i]), scores[i]);
+        }
+
+        /**
+         * @return The selected items ordered from highest to lowest
+         */
+        List<T> toList() {
+            int[] slots = mSelector.ids();
+            List<T> items = new ArrayList<>(slots.length);
+            for (int slot : slots)
+                items.add(item(slot));
+            return items;
+        }
+
+        /**
+         * @return The item in a slot
+         */
+        @SuppressWarnings("unchecked")
+        private T item(int slot) {
+            return (T) mItems[slot];
+        }
     }
 }
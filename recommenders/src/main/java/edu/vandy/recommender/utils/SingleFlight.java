@@ -0,0 +1,62 @@
+package edu.vandy.recommender.utils;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * This class coalesces identical concurrent computations, so when
+ * many callers request the result for the same key at once only the
+ * first caller's computation runs and all the others share its
+ * result.
+ *
+ * The {@link Mono} of a computation is cached while it's running and
+ * is forgotten as soon as it terminates, so a caller arriving after
+ * that starts a new computation.  Keeping results for longer is left
+ * to a result cache in front of this class.
+ *
+ * @param <K> The type of the keys identifying identical computations
+ * @param <V> The type of the computed results
+ */
+public final class SingleFlight<K, V> {
+    /**
+     * Maps the key of each running computation to its cached {@link
+     * Mono}.
+     */
+    private final Map<K, Mono<V>> mFlights = new ConcurrentHashMap<>();
+
+    /**
+     * Get a {@link Mono} that emits the result of the computation for
+     * the {@code key}, joining the running computation for the same
+     * key if there is one when the {@link Mono} is subscribed to.
+     *
+     * @param key Identifies identical computations
+     * @param computation Supplies a {@link Mono} that computes the
+     *                    result, which is only called if no computation
+     *                    for the {@code key} is running
+     * @return A {@link Mono} that emits the shared result
+     */
+    public Mono<V> execute(K key, Supplier<Mono<V>> computation) {
+        return Mono
+            // Look up the running computation when subscribed to.
+            .defer(() -> mFlights
+                   .computeIfAbsent(key,
+                                    k -> computation
+                                        // Start a new computation.
+                                        .get()
+                                        // Forget it once it terminates.
+                                        .doFinally(signal -> mFlights.remove(k))
+                                        // Share its result with every
+                                        // caller that joins it.
+                                        .cache()));
+    }
+
+    /**
+     * @return The number of computations that are running
+     */
+    public int inFlight() {
+        return mFlights.size();
+    }
+}
@@ -0,0 +1,261 @@
+package edu.vandy.recommender.utils;
+
+import edu.vandy.recommender.common.model.Ranking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * This class selects the {@code k} highest scoring {@code int} ids
+ * offered to it without allocating any objects per offer.
+ *
+ * The selected ids and their scores are kept in a bounded min-heap
+ * stored in parallel {@code int[]} and {@code double[]} arrays, so the
+ * lowest selected score is always at the top.  The arrays grow as ids
+ * are selected rather than being sized for {@code k} up front, so a
+ * huge {@code k} only costs memory for the ids actually offered.  Once {@code k} ids are
+ * selected, that score is the {@link #threshold()} an offered score
+ * must beat, so most offers are rejected by a single comparison.
+ * {@link Ranking} objects are only created for the final winners via
+ * {@link #toRankings(IntFunction)}.
+ *
+ * This class is not thread-safe.  Concurrent producers should each
+ * fill their own selector and then {@link #merge(TopKSelector)} them.
+ */
+public final class TopKSelector {
+    /**
+     * The capacity of the arrays once the first id is selected.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum number of ids to select.
+     */
+    private final int mK;
+
+    /**
+     * The selected ids in heap order.
+     */
+    private int[] mIds;
+
+    /**
+     * The score of each selected id in heap order.
+     */
+    private double[] mScores;
+
+    /**
+     * The number of selected ids.
+     */
+    private int mSize;
+
+    /**
+     * True if the arrays are sorted in descending score order rather
+     * than in heap order.
+     */
+    private boolean mSorted;
+
+    /**
+     * Constructor initializes the fields.
+     *
+     * @param k The maximum number of ids to select
+     */
+    public TopKSelector(int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("k must be >= 0");
+
+        mK = k;
+        mIds = new int[0];
+        mScores = new double[0];
+    }
+
+    /**
+     * @return The maximum number of ids to select
+     */
+    public int k() {
+        return mK;
+    }
+
+    /**
+     * @return The number of selected ids
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return True if {@code k} ids are selected, else false
+     */
+    public boolean isFull() {
+        return mSize == mK;
+    }
+
+    /**
+     * @return The score an offered id must exceed to be selected,
+     *         which is negative infinity until {@code k} ids are
+     *         selected
+     */
+    public double threshold() {
+        if (!isFull())
+            return Double.NEGATIVE_INFINITY;
+        heapify();
+        return mScores[0];
+    }
+
+    /**
+     * @return The selected id with the lowest score, which is the id
+     *         replaced by the next accepted offer once the selector is
+     *         full
+     */
+    public int minId() {
+        heapify();
+        return mIds[0];
+    }
+
+    /**
+     * Offer an id and its score to the selector.
+     *
+     * @param id The id
+     * @param score The id's score
+     * @return True if the id was selected, else false
+     */
+    public boolean offer(int id, double score) {
+        if (mSize < mK) {
+            heapify();
+            if (mSize == mIds.length)
+                grow();
+            siftUp(mSize++, id, score);
+            return true;
+        } else if (mK > 0 && score > threshold()) {
+            // Replace the lowest selected score.
+            siftDown(0, mSize, id, score);
+            return true;
+        } else
+            return false;
+    }
+
+    /**
+     * Offer all the ids selected by {@code other} to this selector.
+     *
+     * @param other Another {@link TopKSelector}
+     * @return This {@link TopKSelector}
+     */
+    public TopKSelector merge(TopKSelector other) {
+        for (int i = 0; i < other.mSize; i++)
+            offer(other.mIds[i], other.mScores[i]);
+        return this;
+    }
+
+    /**
+     * @return The selected ids in descending score order
+     */
+    public int[] ids() {
+        sort();
+        return Arrays.copyOf(mIds, mSize);
+    }
+
+    /**
+     * @return The selected scores in descending order
+     */
+    public double[] scores() {
+        sort();
+        return Arrays.copyOf(mScores, mSize);
+    }
+
+    /**
+     * Create a {@link Ranking} for each selected id.
+     *
+     * @param titles Maps an id to its movie title
+     * @return A {@link List} of {@link Ranking} objects in descending
+     *         score order
+     */
+    public List<Ranking> toRankings(IntFunction<String> titles) {
+        sort();
+        List<Ranking> rankings = new ArrayList<>(mSize);
+        for (int i = 0; i < mSize; i++)
+            rankings.add(new Ranking(titles.apply(mIds[i]), mScores[i]));
+        return rankings;
+    }
+
+    /**
+     * Double the capacity of the arrays, but never beyond {@code k}.
+     */
+    private void grow() {
+        int capacity = (int) Math.min(mK,
+                                      Math.max(2L * mIds.length,
+                                               INITIAL_CAPACITY));
+        mIds = Arrays.copyOf(mIds, capacity);
+        mScores = Arrays.copyOf(mScores, capacity);
+    }
+
+    /**
+     * Sort the arrays in descending score order with an in-place
+     * heapsort, which repeatedly moves the lowest score to the end.
+     */
+    private void sort() {
+        if (mSorted)
+            return;
+
+        for (int end = mSize - 1; end > 0; end--) {
+            int id = mIds[end];
+            double score = mScores[end];
+            mIds[end] = mIds[0];
+            mScores[end] = mScores[0];
+            siftDown(0, end, id, score);
+        }
+        mSorted = true;
+    }
+
+    /**
+     * Restore heap order after {@link #sort()}, which only requires
+     * reversing the arrays since an ascending array is a min-heap.
+     */
+    private void heapify() {
+        if (!mSorted)
+            return;
+
+        for (int i = 0, j = mSize - 1; i < j; i++, j--) {
+            int id = mIds[i];
+            mIds[i] = mIds[j];
+            mIds[j] = id;
+            double score = mScores[i];
+            mScores[i] = mScores[j];
+            mScores[j] = score;
+        }
+        mSorted = false;
+    }
+
+    /**
+     * Move an entry up from position {@code i} to its heap position.
+     */
+    private void siftUp(int i, int id, double score) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (mScores[parent] <= score)
+                break;
+            mIds[i] = mIds[parent];
+            mScores[i] = mScores[parent];
+            i = parent;
+        }
+        mIds[i] = id;
+        mScores[i] = score;
+    }
+
+    /**
+     * Move an entry down from position {@code i} to its heap position
+     * within the first {@code size} positions.
+     */
+    private void siftDown(int i, int size, int id, double score) {
+        for (int child; (child = 2 * i + 1) < size; i = child) {
+            if (child + 1 < size && mScores[child + 1] < mScores[child])
+                child++;
+            if (score <= mScores[child])
+                break;
+            mIds[i] = mIds[child];
+            mScores[i] = mScores[child];
+        }
+        mIds[i] = id;
+        mScores[i] = score;
+    }
+}
@@ -0,0 +1,79 @@
+package edu.vandy.recommender.common
+
+import edu.vandy.recommender.common.model.RecommendationRequest
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+import kotlin.random.Random
+
+internal class BatchRecommenderTest : AssignmentTests() {
+    private val random = Random(5)
+
+    private val catalog = MovieCatalog.of(
+        (1..400).associate { i ->
+            "m$i" to (1..16).map { random.nextDouble(-1.0, 1.0) }
+        },
+        SimilarityKernels.defaultKernel(),
+        VectorPrecision.INT8,
+        true
+    )
+
+    private fun recommend(recommender: BatchRecommender) =
+        recommender.newSelectors().also { selectors ->
+            for (block in 0 until recommender.blocks())
+                recommender.scoreBlock(block, selectors)
+        }.let { recommender.toRankings(it) }
+
+    @Test
+    fun `watched titles are resolved with the given resolver`() {
+        val requests = listOf(RecommendationRequest(listOf("M7", "?"), 5))
+
+        val exact = recommend(BatchRecommender(catalog, requests, catalog::indexOf, false))
+        val fuzzy = recommend(
+            BatchRecommender(catalog, requests, { catalog.resolve(it, 1) }, false)
+        )
+
+        assertThat(exact.single()).isEmpty()
+        assertThat(fuzzy.single()).hasSize(5)
+        assertThat(fuzzy.single().map { it.title }).doesNotContain("m7")
+    }
+
+    @Test
+    fun `rescored recommendations carry full precision scores`() {
+        val watched = listOf("m1", "m2", "m3")
+        val requests = listOf(RecommendationRequest(watched, listOf("m4"), 10))
+        val watchedIds = watched.map { catalog.indexOf(it) }.toIntArray()
+
+        val rankings = recommend(
+            BatchRecommender(catalog, requests, catalog::indexOf, true)
+        ).single()
+
+        assertThat(rankings).hasSize(10)
+        assertThat(rankings.map { it.title }).doesNotContain("m4")
+        for (ranking in rankings) {
+            assertThat(ranking.cosineSimilarity).isCloseTo(
+                CosineSimilarityUtils.sumOfCosines(
+                    catalog.indexOf(ranking.title), watchedIds, catalog
+                ),
+                within(1e-12)
+            )
+        }
+    }
+
+    @Test
+    fun `a huge maxCount recommends every other movie without overflowing`() {
+        val requests = listOf(
+            RecommendationRequest(listOf("m1"), Int.MAX_VALUE),
+            RecommendationRequest(listOf("m2"), Int.MAX_VALUE / 2 + 1)
+        )
+
+        for (rescore in listOf(false, true)) {
+            val rankings = recommend(
+                BatchRecommender(catalog, requests, catalog::indexOf, rescore)
+            )
+
+            assertThat(rankings.map { it.size }).containsExactly(399, 399)
+        }
+    }
+}
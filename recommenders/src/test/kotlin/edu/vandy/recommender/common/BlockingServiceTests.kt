@@ -0,0 +1,10 @@
+package edu.vandy.recommender.common
+
+import edu.vandy.recommender.common.model.Ranking
+
+/**
+ * These run the [ServiceTests] against the services returning lists.
+ */
+internal abstract class BlockingServiceTests : ServiceTests<List<Ranking>>() {
+    override fun titles(result: List<Ranking>) = result.map { it.title }
+}
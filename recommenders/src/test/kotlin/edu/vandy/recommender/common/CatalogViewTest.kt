@@ -0,0 +1,34 @@
+package edu.vandy.recommender.common
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+
+internal class CatalogViewTest : AssignmentTests() {
+    private val catalog = MovieCatalog.of(
+        listOf("Heat", "Alien", "Up", "Big", "Jaws").associateWith { listOf(1.0) }
+    )
+
+    private val view = CatalogView(catalog)
+
+    private fun page(after: String?, limit: Int) =
+        view.page(after, limit).map { it.title }
+
+    @Test
+    fun `rankings are created once in ascending title order`() {
+        assertThat(view.rankings().map { it.title })
+            .containsExactly("Alien", "Big", "Heat", "Jaws", "Up")
+        assertThat(view.rankings()).isSameAs(view.rankings())
+        assertThat(view.isViewOf(catalog)).isTrue
+        assertThat(view.isViewOf(MovieCatalog.empty())).isFalse
+    }
+
+    @Test
+    fun `pages follow the after title whether or not it is in the catalog`() {
+        assertThat(page(null, 2)).containsExactly("Alien", "Big")
+        assertThat(page("Big", 2)).containsExactly("Heat", "Jaws")
+        assertThat(page("Cars", 10)).containsExactly("Heat", "Jaws", "Up")
+        assertThat(page("Up", 10)).isEmpty()
+        assertThat(page("Alien", 0)).isEmpty()
+    }
+}
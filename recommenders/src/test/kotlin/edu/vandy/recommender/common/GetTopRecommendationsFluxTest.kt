@@ -2,6 +2,10 @@ package edu.vandy.recommender.common
 
 import edu.vandy.recommender.common.GetTopRecommendationsFlux.getTopRecommendationsHeap
 import edu.vandy.recommender.common.GetTopRecommendationsFlux.getTopRecommendationsSort
+import edu.vandy.recommender.common.GetTopRecommendationsFlux.rescore
+import edu.vandy.recommender.common.GetTopRecommendationsFlux.selectTopChunked
+import edu.vandy.recommender.common.GetTopRecommendationsFlux.selectTopParallel
+import edu.vandy.recommender.common.GetTopRecommendationsFlux.toRankings
 import edu.vandy.recommender.common.model.Ranking
 import edu.vandy.recommender.utils.GetTopK
 import io.mockk.*
@@ -9,8 +13,10 @@ import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
 import org.reactivestreams.Publisher
 import reactor.core.publisher.Flux
+import reactor.core.scheduler.Schedulers
 import test.admin.AssignmentTests
 import java.util.function.Function
+import java.util.function.ToDoubleFunction
 
 class GetTopRecommendationsFluxTest: AssignmentTests() {
 
@@ -20,8 +26,7 @@ class GetTopRecommendationsFluxTest: AssignmentTests() {
         val fri = mockk<Flux<Ranking>>()
         val fro = mockk<Flux<Ranking>>()
         val ranking = mockk<Ranking>()
-        val func = mockk<Function<Flux<Function<Flux<Ranking>, Flux<Ranking>>>,
-                Flux<Function<Flux<Ranking>, Flux<Ranking>>>>>()
+        val func = mockk<Function<Flux<Ranking>, Flux<Ranking>>>()
         mockkStatic(GetTopK::class)
         mockkStatic(GetTopRecommendationsFlux::class)
 
@@ -32,13 +37,13 @@ class GetTopRecommendationsFluxTest: AssignmentTests() {
         every { getTopRecommendationsHeap(any(), any()) } answers {
             callOriginal()
         }
-        every { GetTopK.getTopK<Function<Flux<Ranking>, Flux<Ranking>>>(count) } answers { func }
+        every { GetTopK.getTopK<Ranking>(count, any<ToDoubleFunction<in Ranking>>()) } answers { func }
 
         assertThat(getTopRecommendationsHeap(fri, count)).isSameAs(fro)
 
         verify(exactly = 1) {
             getTopRecommendationsHeap(any(), any())
-            GetTopK.getTopK<Function<Flux<Ranking>, Flux<Ranking>>>(count)
+            GetTopK.getTopK<Ranking>(count, any<ToDoubleFunction<in Ranking>>())
             fri.transform(any<Function<in Flux<Ranking>, out Publisher<Ranking>>>())
         }
 
@@ -81,4 +86,48 @@ class GetTopRecommendationsFluxTest: AssignmentTests() {
 
         confirmVerified(fri, fro, fr)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `rescore reorders the candidates by id before titles are resolved`() {
+        val ids = Flux.range(0, 100).parallel(4).runOn(Schedulers.parallel())
+        val resolved = mutableListOf<Int>()
+
+        val result = toRankings(
+            rescore(selectTopParallel(ids, { it.toDouble() }, 10), { -it.toDouble() }, 3)
+        ) { id -> synchronized(resolved) { resolved.add(id) }; "m$id" }
+            .collectList().block()!!
+
+        assertThat(result.map { it.title }).containsExactly("m90", "m91", "m92")
+        assertThat(resolved).containsExactlyInAnyOrder(90, 91, 92)
+    }
+
+    @Test
+    fun `selectTopChunked skips excluded movies for any chunk size`() {
+        val scores = List(1000) { (it * 7919 % 1009).toDouble() }
+        val filter = MovieFilter(scores.size).exclude(*IntArray(100) { it * 10 })
+        val expected = scores.indices
+            .filter { !filter.excludes(it) }
+            .sortedByDescending { scores[it] }
+            .take(25)
+
+        for (chunkSize in listOf(1, 7, 64, 250, 1000, 5000)) {
+            val selector = selectTopChunked(filter, 4, chunkSize, { scores[it] }, 25)
+                .block()!!
+
+            assertThat(selector.toRankings { "$it" }.map { it.title.toInt() })
+                .isEqualTo(expected)
+        }
+        assertThat(selectTopChunked(filter, 4, 10, { 0.0 }, 0).block()).isNull()
+    }
+
+    @Test
+    fun `SchedulingReport measures every chunk size up to one chunk per rail`() {
+        val movies = (0 until 300).associate { "m$it" to listOf(it % 7 - 3.0, it % 5 - 2.0, 1.0) }
+
+        val report = SchedulingReport.measure(MovieCatalog.of(movies), 4, 10, 5)
+
+        assertThat(report.samples()).isEqualTo(5)
+        assertThat(report.chunked().map { it.chunkSize() })
+            .containsExactly(1, 4, 16, 64, 75)
+    }
+}
@@ -9,6 +9,7 @@ import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
 import test.admin.AssignmentTests
 import java.util.*
+import java.util.function.ToDoubleFunction
 import java.util.stream.Stream
 
 internal class GetTopRecommendationsStreamTest : AssignmentTests() {
@@ -26,14 +27,14 @@ internal class GetTopRecommendationsStreamTest : AssignmentTests() {
         val sr = mockk<Stream<Ranking>>()
 
         mockkStatic(GetTopK::class)
-        every { GetTopK.getTopK(any<Stream<Ranking>>(), any()) } answers { sr }
+        every { GetTopK.getTopK(any<Stream<Ranking>>(), any(), any<ToDoubleFunction<Ranking>>()) } answers { sr }
         every { sr.toList() } answers { lro }
 
         assertThat(getTopRecommendationsHeap(sri, count)).isSameAs(lro)
 
         verify {
             getTopRecommendationsHeap(any(), any())
-            GetTopK.getTopK(any<Stream<Ranking>>(), any())
+            GetTopK.getTopK(any<Stream<Ranking>>(), any(), any<ToDoubleFunction<Ranking>>())
             sr.toList()
         }
 
@@ -0,0 +1,160 @@
+package edu.vandy.recommender.common
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+import kotlin.random.Random
+
+internal class MovieCatalogTest : AssignmentTests() {
+    private val map = mapOf(
+        "b" to listOf(1.0, 2.0, 3.0),
+        "a" to listOf(3.0, 4.0, 5.0),
+        "c" to listOf(-1.0, 0.5, 2.0)
+    )
+
+    @Test
+    fun `ids are assigned in ascending title order`() {
+        val catalog = MovieCatalog.of(map)
+
+        assertThat(catalog.size()).isEqualTo(3)
+        assertThat(catalog.dimension()).isEqualTo(3)
+        assertThat(catalog.titles()).containsExactly("a", "b", "c")
+        assertThat(catalog.indexOf("b")).isEqualTo(1)
+        assertThat(catalog.indexOf("?")).isEqualTo(-1)
+    }
+
+    @Test
+    fun `cosineSimilarity matches the List implementation`() {
+        val catalog = MovieCatalog.of(map)
+
+        for (a in map.keys) {
+            for (b in map.keys) {
+                assertThat(
+                    catalog.cosineSimilarity(
+                        catalog.indexOf(a),
+                        catalog.indexOf(b)
+                    )
+                ).isCloseTo(
+                    CosineSimilarityUtils.cosineSimilarity(
+                        map[a], map[b], false
+                    ),
+                    within(1e-12)
+                )
+            }
+        }
+    }
+
+    @Test
+    fun `unit vectors are normalized once and zero vectors score zero`() {
+        val catalog = MovieCatalog.of(map + ("z" to listOf(0.0, 0.0, 0.0)))
+
+        for (id in 0 until catalog.size() - 1) {
+            assertThat(catalog.cosineSimilarity(id, id))
+                .isCloseTo(1.0, within(1e-12))
+        }
+
+        val z = catalog.indexOf("z")
+        assertThat(catalog.unitVector(z)).containsOnly(0.0)
+        assertThat(catalog.cosineSimilarity(catalog.unitVector(0), z))
+            .isEqualTo(0.0)
+    }
+
+    @Test
+    fun `reduced precision scores stay close to full precision`() {
+        val random = (1..200).associate { i ->
+            "m$i" to (1..37).map { Random.nextDouble(-1.0, 1.0) }
+        }
+
+        for ((precision, tolerance) in listOf(
+            VectorPrecision.FLOAT64 to 1e-12,
+            VectorPrecision.FLOAT32 to 1e-5,
+            VectorPrecision.INT8 to 2e-2
+        )) {
+            val catalog = MovieCatalog.of(
+                random,
+                SimilarityKernels.defaultKernel(),
+                precision
+            )
+            val query = catalog.query(0)
+
+            for (id in 0 until catalog.size()) {
+                assertThat(catalog.score(query, id)).isCloseTo(
+                    catalog.cosineSimilarity(0, id),
+                    within(tolerance)
+                )
+            }
+        }
+    }
+
+    @Test
+    fun `reduced precision catalogs only keep the raw vectors when asked`() {
+        val random = (1..50).associate { i ->
+            "m$i" to (1..16).map { Random.nextDouble(-1.0, 1.0) }
+        }
+        val full = MovieCatalog.of(random)
+
+        for (precision in listOf(VectorPrecision.FLOAT32, VectorPrecision.INT8)) {
+            val kept = MovieCatalog.of(
+                random, SimilarityKernels.defaultKernel(), precision, true
+            )
+            val dropped = MovieCatalog.of(
+                random, SimilarityKernels.defaultKernel(), precision, false
+            )
+
+            assertThat(kept.fullPrecision()).isTrue()
+            assertThat(dropped.fullPrecision()).isFalse()
+            assertThat(dropped.version()).isEqualTo(full.version())
+
+            for (id in 0 until dropped.size()) {
+                assertThat(kept.cosineSimilarity(0, id))
+                    .isCloseTo(full.cosineSimilarity(0, id), within(1e-12))
+                assertThat(dropped.cosineSimilarity(0, id))
+                    .isCloseTo(full.cosineSimilarity(0, id), within(2e-2))
+                assertThat(dropped.cosineSimilarity(dropped.unitVector(0), id))
+                    .isCloseTo(dropped.score(dropped.query(0), id), within(1e-4))
+            }
+        }
+    }
+
+    @Test
+    fun `profile score equals the sum of cosine similarities`() {
+        val catalog = MovieCatalog.of(map + ("z" to listOf(0.0, 0.0, 0.0)))
+        val watched = intArrayOf(0, 2, catalog.indexOf("z"))
+        val profile = catalog.profile(watched)
+
+        for (id in 0 until catalog.size()) {
+            assertThat(catalog.score(profile, id)).isCloseTo(
+                CosineSimilarityUtils.sumOfCosines(id, watched, catalog),
+                within(1e-12)
+            )
+        }
+    }
+
+    @Test
+    fun `resolve only accepts fuzzy matches when enabled`() {
+        val catalog = MovieCatalog.of(map + ("Heat" to listOf(1.0, 1.0, 1.0)))
+
+        assertThat(catalog.resolve("b", 0)).isEqualTo(catalog.indexOf("b"))
+        assertThat(catalog.resolve("heat", 0)).isEqualTo(-1)
+        assertThat(catalog.resolve("heat", 1)).isEqualTo(catalog.indexOf("Heat"))
+        assertThat(catalog.resolve("Haet", 2)).isEqualTo(catalog.indexOf("Heat"))
+    }
+
+    @Test
+    fun `asMap adapter exposes the original vectors`() {
+        val view = MovieCatalog.of(map).asMap()
+
+        assertThat(view).isEqualTo(map)
+        assertThat(view.keys).containsExactly("a", "b", "c")
+        assertThat(view["?"]).isNull()
+    }
+
+    @Test
+    fun `vectors of different sizes are rejected`() {
+        assertThatThrownBy {
+            MovieCatalog.of(map + ("d" to listOf(1.0)))
+        }.isInstanceOf(IllegalArgumentException::class.java)
+    }
+}
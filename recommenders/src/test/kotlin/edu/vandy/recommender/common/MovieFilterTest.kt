@@ -0,0 +1,34 @@
+package edu.vandy.recommender.common
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+
+class MovieFilterTest : AssignmentTests() {
+    @Test
+    fun `excludes only the given movies`() {
+        val filter = MovieFilter(200).exclude(0, 63, 64, 199, -1, 200)
+
+        assertThat((0 until 200).filter { filter.excludes(it) })
+            .containsExactly(0, 63, 64, 199)
+    }
+
+    @Test
+    fun `nextIncluded skips runs of excluded movies`() {
+        val filter = MovieFilter(150).exclude(*(0 until 130).toList().toIntArray())
+        filter.exclude(131, 149)
+
+        assertThat(filter.nextIncluded(0)).isEqualTo(130)
+        assertThat(filter.nextIncluded(131)).isEqualTo(132)
+        assertThat(filter.nextIncluded(149)).isEqualTo(150)
+        assertThat(filter.nextIncluded(500)).isEqualTo(150)
+    }
+
+    @Test
+    fun `nextIncluded does not run past the catalog`() {
+        val filter = MovieFilter(70).exclude(*(60 until 70).toList().toIntArray())
+
+        assertThat(filter.nextIncluded(60)).isEqualTo(70)
+        assertThat(MovieFilter(0).nextIncluded(0)).isEqualTo(0)
+    }
+}
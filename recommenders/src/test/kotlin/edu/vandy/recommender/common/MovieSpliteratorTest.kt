@@ -0,0 +1,24 @@
+package edu.vandy.recommender.common
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+import java.util.stream.StreamSupport
+
+class MovieSpliteratorTest : AssignmentTests() {
+    @Test
+    fun `splits into chunks that cover every included movie`() {
+        val filter = MovieFilter(1000).exclude(0, 63, 64, 500, 999)
+        val expected = (0 until 1000).filter { !filter.excludes(it) }
+
+        val spliterator = MovieSpliterator(filter, 100)
+        assertThat(spliterator.trySplit()!!.estimateSize()).isEqualTo(500)
+        assertThat(spliterator.estimateSize()).isEqualTo(500)
+
+        assertThat(
+            StreamSupport.intStream(MovieSpliterator(filter, 100), true)
+                .toArray().toList()
+        ).isEqualTo(expected)
+        assertThat(MovieSpliterator(filter, 0, 10, 1000).trySplit()).isNull()
+    }
+}
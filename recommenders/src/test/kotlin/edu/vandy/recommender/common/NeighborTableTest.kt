@@ -0,0 +1,91 @@
+package edu.vandy.recommender.common
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import test.admin.AssignmentTests
+import java.nio.file.Path
+import kotlin.random.Random
+
+internal class NeighborTableTest : AssignmentTests() {
+    private val random = Random(11)
+
+    private val catalog = MovieCatalog.of(
+        (1..300).associate { i ->
+            "m$i" to (1..12).map { random.nextDouble(-1.0, 1.0) }
+        }
+    )
+
+    @Test
+    fun `rows hold the most similar other movies in descending order`() {
+        val table = NeighborTable.build(catalog, 10)
+
+        assertThat(table.count()).isEqualTo(10)
+        for (id in 0 until catalog.size()) {
+            val expected = (0 until catalog.size())
+                .filter { it != id }
+                .sortedByDescending { catalog.cosineSimilarity(id, it) }
+                .take(10)
+
+            assertThat((0 until 10).map { table.neighbor(id, it) })
+                .isEqualTo(expected)
+            assertThat(table.score(id, 0))
+                .isCloseTo(catalog.cosineSimilarity(id, expected[0]), within(1e-12))
+        }
+    }
+
+    @Test
+    fun `rankings are limited to maxCount and small catalogs are covered`() {
+        val table = NeighborTable.build(catalog, 10)
+
+        assertThat(table.rankings(0, 4, catalog::title)).hasSize(4)
+        assertThat(table.covers(10)).isTrue
+        assertThat(table.covers(11)).isFalse
+
+        val small = NeighborTable.build(
+            MovieCatalog.of(mapOf("a" to listOf(1.0), "b" to listOf(2.0))),
+            10
+        )
+        assertThat(small.count()).isEqualTo(1)
+        assertThat(small.covers(10)).isTrue
+    }
+
+    @Test
+    fun `saved tables are memory-mapped only for the same catalog`(@TempDir directory: Path) {
+        val table = NeighborTable.build(catalog, 10)
+        val path = directory.resolve("neighbors.bin")
+        table.save(path)
+
+        val loaded = NeighborTable.load(path, catalog, 10)!!
+        assertThat(loaded.version()).isEqualTo(catalog.version())
+        for (id in 0 until catalog.size()) {
+            assertThat(loaded.rankings(id, 10, catalog::title))
+                .isEqualTo(table.rankings(id, 10, catalog::title))
+        }
+
+        val other = MovieCatalog.of(catalog.asMap() + ("z" to List(12) { 0.5 }))
+        assertThat(NeighborTable.load(path, other, 10)).isNull()
+        assertThat(NeighborTable.load(path, catalog, 5)).isNull()
+    }
+
+    @Test
+    fun `MovieNeighbors builds the table once the catalog is loaded`(@TempDir directory: Path) {
+        val neighbors = MovieNeighbors().apply {
+            mCount = 10
+            mDirectory = directory.toString()
+        }
+
+        try {
+            neighbors.onCatalogLoaded(CatalogLoadedEvent(catalog))
+            val table = neighbors.prepare(catalog).join()
+
+            assertThat(neighbors.table(catalog)).isSameAs(table)
+            val copy = MovieCatalog.of(catalog.asMap())
+            assertThat(neighbors.prepare(copy).join()).isSameAs(table)
+            assertThat(neighbors.table(copy)).isSameAs(table)
+        } finally {
+            neighbors.shutdown()
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package edu.vandy.recommender.common
+
+import edu.vandy.recommender.common.ParallelismPolicy.Mode
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import reactor.core.publisher.Flux
+import test.admin.AssignmentTests
+import java.util.concurrent.ForkJoinPool
+
+internal class ParallelismPolicyTest : AssignmentTests() {
+    @Test
+    fun `small, concurrent, or few-item computations are not run on the outer items`() {
+        assertThat(ParallelismPolicy.choose(100, 10, 0, 8, 32_768)).isEqualTo(Mode.SEQUENTIAL)
+        assertThat(ParallelismPolicy.choose(10_000, 50, 8, 8, 32_768)).isEqualTo(Mode.SEQUENTIAL)
+        assertThat(ParallelismPolicy.choose(10_000, 50, 3, 8, 32_768)).isEqualTo(Mode.OUTER)
+        assertThat(ParallelismPolicy.choose(2, 100_000, 0, 8, 32_768)).isEqualTo(Mode.INNER)
+    }
+
+    @Test
+    fun `parallel workers never start nested parallel work`() {
+        val mode = ForkJoinPool.commonPool()
+            .submit<Mode> { ParallelismPolicy.choose(2, 1_000_000) }
+            .get()
+
+        assertThat(mode).isEqualTo(Mode.SEQUENTIAL)
+    }
+
+    @Test
+    fun `rails are shared by the requests in flight`() {
+        val policy = ParallelismPolicy()
+        val cores = Runtime.getRuntime().availableProcessors()
+
+        assertThat(policy.rails(100_000, 50, 64)).isEqualTo(cores)
+        assertThat(policy.rails(10, 3, 64)).isEqualTo(1)
+
+        // Two requests are in flight while the inner Flux is assembled.
+        val rails = policy.tracked {
+            policy.tracked { Flux.just(policy.rails(100_000, 50, 64)) }
+        }.blockFirst()
+
+        assertThat(rails).isEqualTo(maxOf(cores / 2, 1))
+        assertThat(policy.statistics().inFlight()).isEqualTo(0)
+        assertThat(policy.statistics().sequential()).isGreaterThanOrEqualTo(1)
+    }
+
+    @Test
+    fun `decisions are published as meters and only count what runs`() {
+        val policy = ParallelismPolicy()
+        val registry = SimpleMeterRegistry()
+        policy.bindTo(registry)
+
+        // An INNER decision still scores every movie on one rail.
+        assertThat(policy.rails(1, 1_000_000, 64)).isEqualTo(1)
+
+        assertThat(policy.statistics().sequential()).isEqualTo(1)
+        assertThat(
+            registry.get("recommender.parallelism.decisions")
+                .tag("mode", "sequential").functionCounter().count()
+        ).isEqualTo(1.0)
+        assertThat(registry.get("recommender.parallelism.in.flight").gauge().value())
+            .isEqualTo(0.0)
+    }
+
+    @Test
+    fun `utility methods back off while the cores are busy with requests`() {
+        val cores = Runtime.getRuntime().availableProcessors()
+        val policy = ParallelismPolicy()
+
+        // Count one request per core plus this one as in flight.
+        fun nested(depth: Int): Mode =
+            if (depth == 0) ParallelismPolicy.choose(1, 1_000_000)
+            else policy.runTracked { nested(depth - 1) }
+
+        assertThat(nested(cores + 1)).isEqualTo(Mode.SEQUENTIAL)
+        assertThat(ParallelismPolicy.choose(1, 1_000_000)).isNotEqualTo(Mode.SEQUENTIAL)
+    }
+}
@@ -0,0 +1,76 @@
+package edu.vandy.recommender.common
+
+import edu.vandy.recommender.common.index.RecommendationEngine
+import edu.vandy.recommender.common.model.Ranking
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import reactor.core.publisher.Flux
+import test.admin.AssignmentTests
+import java.util.concurrent.atomic.AtomicInteger
+
+internal class RecommendationCacheTest : AssignmentTests() {
+    private val catalog = MovieCatalog.of(
+        mapOf("a" to listOf(1.0, 0.0), "b" to listOf(0.0, 1.0))
+    )
+
+    private val computed = AtomicInteger()
+
+    private fun compute() = Flux.defer {
+        computed.incrementAndGet()
+        Flux.just(Ranking("x", 1.0), Ranking("y", 0.5))
+    }
+
+    private fun RecommendationCache.titles(
+        watched: List<String>,
+        catalog: MovieCatalog = this@RecommendationCacheTest.catalog
+    ) = recommendations(
+        RecommendationCache.Key.of(watched, 2, RecommendationEngine.EXACT, catalog)
+    ) { compute() }.collectList().block()!!.map { it.title }
+
+    @Test
+    fun `keys ignore the order and duplicates of the watched movies`() {
+        val cache = RecommendationCache()
+
+        assertThat(cache.titles(listOf("a", "b"))).containsExactly("x", "y")
+        assertThat(cache.titles(listOf("b", "a", "b"))).containsExactly("x", "y")
+        assertThat(computed.get()).isEqualTo(1)
+
+        val statistics = cache.statistics()
+        assertThat(statistics.hits()).isEqualTo(1)
+        assertThat(statistics.misses()).isEqualTo(1)
+        assertThat(statistics.size()).isEqualTo(1)
+    }
+
+    @Test
+    fun `hits and misses are published as meters`() {
+        val cache = RecommendationCache()
+        val registry = SimpleMeterRegistry()
+        cache.bindTo(registry)
+
+        cache.titles(listOf("a"))
+        cache.titles(listOf("a"))
+        cache.titles(listOf("b"))
+
+        fun requests(result: String) = registry.get("recommender.cache.requests")
+            .tag("result", result).functionCounter().count()
+        assertThat(requests("hit")).isEqualTo(1.0)
+        assertThat(requests("miss")).isEqualTo(2.0)
+        assertThat(registry.get("recommender.cache.size").gauge().value()).isEqualTo(2.0)
+    }
+
+    @Test
+    fun `a reloaded catalog invalidates the cached recommendations`() {
+        val cache = RecommendationCache()
+        val reloaded = MovieCatalog.of(
+            mapOf("a" to listOf(1.0, 0.0), "b" to listOf(0.5, 1.0))
+        )
+
+        cache.titles(listOf("a"))
+        cache.titles(listOf("a"), reloaded)
+        cache.titles(listOf("a"), reloaded)
+
+        assertThat(computed.get()).isEqualTo(2)
+        assertThat(cache.statistics().size()).isEqualTo(1)
+    }
+}
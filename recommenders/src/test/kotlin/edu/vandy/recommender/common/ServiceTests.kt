@@ -0,0 +1,145 @@
+package edu.vandy.recommender.common
+
+import edu.vandy.recommender.common.index.MovieIndexes
+import edu.vandy.recommender.common.index.RecommendationEngine
+import edu.vandy.recommender.common.model.Ranking
+import edu.vandy.recommender.common.model.RecommendationRequest
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+import test.admin.injectInto
+import kotlin.random.Random
+
+/**
+ * These test the recommendations that [BaseService] computes for every
+ * service, whatever the type [T] of its results and the way it scores
+ * the catalog concurrently.
+ */
+internal abstract class ServiceTests<T> : AssignmentTests() {
+    protected abstract val service: BaseService<T>
+
+    /**
+     * @return The titles of the recommended movies in order
+     */
+    protected abstract fun titles(result: T): List<String>
+
+    @Test
+    fun `getRecommendations handles unknown watched movies`() {
+        catalog().injectInto(service)
+
+        assertThat(titles(service.getRecommendations("?", 10))).isEmpty()
+        assertThat(titles(service.getRecommendations(listOf("?", "?"), 10))).isEmpty()
+    }
+
+    @Test
+    fun `getRecommendations returns the most similar movies in descending order`() {
+        catalog().injectInto(service)
+
+        assertThat(
+            titles(service.getRecommendations("1", 2))
+        ).containsExactly("2", "3")
+    }
+
+    @Test
+    fun `getRecommendations with approximate engines matches the exact engine`() {
+        catalog().injectInto(service)
+        MovieIndexes().injectInto(service)
+
+        for (engine in RecommendationEngine.values()) {
+            assertThat(
+                titles(service.getRecommendations("1", 2, engine))
+            ).containsExactly("2", "3")
+        }
+    }
+
+    @Test
+    fun `getRecommendations(list input) excludes watched and blocked movies`() {
+        catalog().injectInto(service)
+
+        assertThat(
+            titles(service.getRecommendations(listOf("1", "?", "1"), 10))
+        ).containsExactly("2", "3", "4")
+        assertThat(
+            titles(service.getRecommendations(listOf("1"), listOf("2", "?"), 10))
+        ).containsExactly("3", "4")
+    }
+
+    @Test
+    fun `a huge maxCount returns every other movie`() {
+        catalog().injectInto(service)
+        MovieIndexes().injectInto(service)
+
+        for (engine in RecommendationEngine.values()) {
+            assertThat(
+                titles(service.getRecommendations("1", Int.MAX_VALUE, engine))
+            ).containsExactly("2", "3", "4")
+        }
+        assertThat(
+            titles(service.getRecommendations(listOf("1"), listOf("4"), Int.MAX_VALUE))
+        ).containsExactly("2", "3")
+    }
+
+    @Test
+    fun `a maxCount below one returns nothing before dispatching`() {
+        catalog().injectInto(service)
+        StrategyDispatcher().injectInto(service)
+        MovieIndexes().injectInto(service)
+        val headers = mutableListOf<String>()
+
+        for (engine in RecommendationEngine.values()) {
+            assertThat(
+                titles(service.getRecommendations("1", 0, engine) { headers += it })
+            ).isEmpty()
+        }
+        assertThat(
+            titles(service.getRecommendations(listOf("1"), listOf(), -1) { headers += it })
+        ).isEmpty()
+        assertThat(headers).isEmpty()
+    }
+
+    @Test
+    fun `getBatchRecommendations matches getRecommendations for each user`() {
+        val random = Random(11)
+        val movies = (1..600).associate { i ->
+            "m$i" to (1..8).map { random.nextDouble(-1.0, 1.0) }
+        }
+        MovieCatalog.of(movies).injectInto(service)
+
+        val requests = (0 until 40).map { user ->
+            RecommendationRequest(
+                listOf("m${user + 1}", "m${user * 13 % 600 + 1}", "?"),
+                if (user % 3 == 0) null else listOf("m${user * 7 % 600 + 1}"),
+                user % 15
+            )
+        } + RecommendationRequest(listOf("?"), 5)
+
+        val results = service.getBatchRecommendations(requests)
+
+        assertThat(results).hasSize(requests.size)
+        requests.dropLast(1).forEachIndexed { user, request ->
+            assertThat(results[user].map { it.title }).isEqualTo(
+                titles(
+                    service.getRecommendations(
+                        request.watchedMovies,
+                        request.blockedMovies ?: listOf(),
+                        request.maxCount
+                    )
+                )
+            )
+        }
+        assertThat(results.last()).isEmpty()
+    }
+
+    /**
+     * @return A small catalog in which movies "2", "3" and "4" are
+     * ever less similar to movie "1"
+     */
+    protected fun catalog() = MovieCatalog.of(
+        mapOf(
+            "1" to listOf(1.0, 0.0, 0.0),
+            "2" to listOf(0.9, 0.1, 0.0),
+            "3" to listOf(0.5, 0.5, 0.0),
+            "4" to listOf(0.0, 0.0, 1.0)
+        )
+    )
+}
@@ -0,0 +1,37 @@
+package edu.vandy.recommender.common
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.Assumptions.assumeTrue
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+import kotlin.random.Random
+
+internal class SimilarityKernelsTest : AssignmentTests() {
+    @Test
+    fun `simd kernel matches scalar kernel including tail elements`() {
+        assumeTrue(SimilarityKernels.isVectorApiAvailable())
+
+        val scalar = SimilarityKernels.select(SimilarityKernels.SCALAR)
+        val simd = SimilarityKernels.select(SimilarityKernels.SIMD)
+
+        for (length in listOf(0, 1, 3, 8, 17, 100, 301)) {
+            val a = DoubleArray(length + 5) { Random.nextDouble(-1.0, 1.0) }
+            val b = DoubleArray(length + 7) { Random.nextDouble(-1.0, 1.0) }
+
+            assertThat(simd.dotProduct(a, 5, b, 7, length))
+                .isCloseTo(
+                    scalar.dotProduct(a, 5, b, 7, length),
+                    within(1e-9)
+                )
+        }
+    }
+
+    @Test
+    fun `auto selects a kernel and unknown names are rejected`() {
+        assertThat(SimilarityKernels.select("AUTO")).isNotNull
+        assertThatThrownBy { SimilarityKernels.select("gpu") }
+            .isInstanceOf(IllegalArgumentException::class.java)
+    }
+}
@@ -0,0 +1,92 @@
+package edu.vandy.recommender.common
+
+import edu.vandy.recommender.common.StrategyDispatcher.Strategy
+import edu.vandy.recommender.common.index.RecommendationEngine
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+
+internal class StrategyDispatcherTest : AssignmentTests() {
+    private val micros = mapOf(
+        Strategy.SEQUENTIAL to 50L,
+        Strategy.CHUNKED to 400L
+    )
+
+    /**
+     * Choose a strategy and record its latency from [micros].
+     */
+    private fun StrategyDispatcher.run(
+        movies: Int,
+        watched: Int,
+        engine: RecommendationEngine = RecommendationEngine.EXACT,
+        chunked: Boolean = true
+    ) = choose(engine, movies, watched, chunked)
+        .also { record(it, micros[it.strategy()]!! * 1_000) }
+
+    @Test
+    fun `every eligible strategy is tried once before the fastest is used`() {
+        val dispatcher = StrategyDispatcher()
+
+        val first = (1..2).map { dispatcher.run(1_000, 1) }
+        assertThat(first.map { it.strategy() })
+            .containsExactly(Strategy.SEQUENTIAL, Strategy.CHUNKED)
+        assertThat(first).allMatch { it.explored() && it.expectedMicros() < 0 }
+
+        val next = dispatcher.run(1_000, 1)
+        assertThat(next.strategy()).isEqualTo(Strategy.SEQUENTIAL)
+        assertThat(next.explored()).isFalse()
+        assertThat(next.expectedMicros()).isEqualTo(50.0)
+    }
+
+    @Test
+    fun `the requested engine is kept and only split when it can be`() {
+        val dispatcher = StrategyDispatcher()
+
+        val decisions = (1..20).map {
+            dispatcher.run(5_000, 1, RecommendationEngine.HNSW, chunked = false)
+        }
+        assertThat(decisions).allMatch {
+            it.engine() == RecommendationEngine.HNSW
+                && it.strategy() == Strategy.SEQUENTIAL
+        }
+
+        assertThat((1..2).map { dispatcher.run(5_000, 1, RecommendationEngine.IVF) })
+            .allMatch { it.engine() == RecommendationEngine.IVF && it.explored() }
+    }
+
+    @Test
+    fun `requests of different sizes and engines are calibrated separately`() {
+        val dispatcher = StrategyDispatcher()
+        repeat(2) { dispatcher.run(1_000, 1) }
+
+        assertThat(dispatcher.choose(RecommendationEngine.EXACT, 1_000_000, 1, true).explored())
+            .isTrue()
+        assertThat(dispatcher.choose(RecommendationEngine.EXACT, 1_000, 20, true).explored())
+            .isTrue()
+        assertThat(dispatcher.choose(RecommendationEngine.IVF, 1_000, 1, true).explored())
+            .isTrue()
+        assertThat(dispatcher.choose(RecommendationEngine.EXACT, 600, 1, true).explored())
+            .isFalse()
+    }
+
+    @Test
+    fun `the other strategy is explored once per period`() {
+        val dispatcher = StrategyDispatcher().apply { mExplorePeriod = 4 }
+        repeat(2) { dispatcher.run(1_000, 8) }
+
+        val decisions = (1..16).map { dispatcher.run(1_000, 8) }
+
+        assertThat(decisions.filter { it.explored() }.map { it.strategy() })
+            .containsExactly(Strategy.CHUNKED, Strategy.CHUNKED, Strategy.CHUNKED, Strategy.CHUNKED)
+        assertThat(decisions.filter { !it.explored() })
+            .allMatch { it.strategy() == Strategy.SEQUENTIAL }
+    }
+
+    @Test
+    fun `a decision describes itself in the debug header`() {
+        val decision = StrategyDispatcher().choose(RecommendationEngine.LSH, 10, 3, false)
+
+        assertThat(decision.header())
+            .isEqualTo("sequential; engine=lsh; movies=10; watched=3; expected-us=unknown; explored")
+    }
+}
@@ -0,0 +1,72 @@
+package edu.vandy.recommender.common.index
+
+import edu.vandy.recommender.common.MovieCatalog
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+import java.util.Locale
+import kotlin.random.Random
+
+internal class HnswIndexTest : AssignmentTests() {
+    private val catalog = MovieCatalog.of(
+        (1..2000).associate { i ->
+            "m$i" to (1..16).map { Random.nextDouble(-1.0, 1.0) }
+        }
+    )
+
+    @Test
+    fun `search finds most of the exact nearest neighbors`() {
+        val index = HnswIndex.build(catalog, 16, 100, 64, 42L)
+
+        val report = RecallReport
+            .measure(RecommendationEngine.HNSW, index, 10, 50)
+
+        assertThat(report.samples()).isEqualTo(50)
+        assertThat(report.recall()).isGreaterThan(0.9)
+    }
+
+    @Test
+    fun `search returns neighbors in descending score order`() {
+        val index = HnswIndex.build(catalog, 8, 50, 32, 42L)
+        val query = catalog.query(7)
+
+        val neighbors = index.search(query, 20)
+
+        assertThat(neighbors.size()).isEqualTo(20)
+        assertThat(neighbors.ids()[0]).isEqualTo(7)
+        assertThat(neighbors.scores().toList())
+            .isSortedAccordingTo(Comparator.reverseOrder())
+        for (i in 0 until neighbors.size()) {
+            assertThat(neighbors.scores()[i])
+                .isEqualTo(catalog.score(query, neighbors.ids()[i]))
+        }
+    }
+
+    @Test
+    fun `empty catalogs and invalid parameters are handled`() {
+        val empty = HnswIndex.build(MovieCatalog.empty(), 16, 100, 64, 42L)
+
+        assertThat(empty.search(catalog.query(0), 10).size()).isEqualTo(0)
+        assertThatThrownBy { HnswIndex.build(catalog, 1, 100, 64, 42L) }
+            .isInstanceOf(IllegalArgumentException::class.java)
+        assertThat(RecommendationEngine.from(" hnsw"))
+            .isEqualTo(RecommendationEngine.HNSW)
+    }
+
+    @Test
+    fun `engine names are parsed the same in every locale`() {
+        val locale = Locale.getDefault()
+        try {
+            Locale.setDefault(Locale.forLanguageTag("tr-TR"))
+            assertThat(RecommendationEngine.from("ivf"))
+                .isEqualTo(RecommendationEngine.IVF)
+            assertThat(RecommendationEngine.from("exact"))
+                .isEqualTo(RecommendationEngine.EXACT)
+        } finally {
+            Locale.setDefault(locale)
+        }
+        assertThatThrownBy { RecommendationEngine.from("faiss") }
+            .isInstanceOf(IllegalArgumentException::class.java)
+    }
+}
@@ -0,0 +1,56 @@
+package edu.vandy.recommender.common.index
+
+import edu.vandy.recommender.common.MovieCatalog
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+import kotlin.random.Random
+
+internal class IvfIndexTest : AssignmentTests() {
+    private val centers = (1..20).map {
+        (1..16).map { Random.nextDouble(-1.0, 1.0) }
+    }
+
+    private val catalog = MovieCatalog.of(
+        (1..2000).associate { i ->
+            "m$i" to centers[i % centers.size].map {
+                it + Random.nextDouble(-0.1, 0.1)
+            }
+        }
+    )
+
+    @Test
+    fun `clusters partition the catalog`() {
+        val index = IvfIndex.build(catalog, 20, 10, 4, 42L)
+
+        assertThat(index.lists()).isEqualTo(20)
+        assertThat(index.listEnd(index.lists() - 1)).isEqualTo(catalog.size())
+        assertThat(
+            (0 until catalog.size()).map { index.member(it) }.sorted()
+        ).isEqualTo((0 until catalog.size()).toList())
+    }
+
+    @Test
+    fun `probing all clusters is exact and probing a few is close`() {
+        val all = IvfIndex.build(catalog, 20, 10, 20, 42L)
+        val few = IvfIndex.build(catalog, 20, 10, 4, 42L)
+
+        assertThat(
+            RecallReport.measure(RecommendationEngine.IVF, all, 10, 50).recall()
+        ).isEqualTo(1.0)
+        assertThat(
+            RecallReport.measure(RecommendationEngine.IVF, few, 10, 50).recall()
+        ).isGreaterThan(0.8)
+    }
+
+    @Test
+    fun `empty catalogs and invalid parameters are handled`() {
+        val empty = IvfIndex.build(MovieCatalog.empty(), 0, 10, 8, 42L)
+
+        assertThat(empty.lists()).isEqualTo(0)
+        assertThat(empty.search(catalog.query(0), 10).size()).isEqualTo(0)
+        assertThatThrownBy { IvfIndex.build(catalog, 0, 10, 0, 42L) }
+            .isInstanceOf(IllegalArgumentException::class.java)
+    }
+}
@@ -0,0 +1,62 @@
+package edu.vandy.recommender.common.index
+
+import edu.vandy.recommender.common.MovieCatalog
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+import kotlin.random.Random
+
+internal class LshIndexTest : AssignmentTests() {
+    private val centers = (1..20).map {
+        (1..16).map { Random.nextDouble(-1.0, 1.0) }
+    }
+
+    private val catalog = MovieCatalog.of(
+        (1..2000).associate { i ->
+            "m$i" to centers[i % centers.size].map {
+                it + Random.nextDouble(-0.1, 0.1)
+            }
+        }
+    )
+
+    @Test
+    fun `candidates are rescored in full precision`() {
+        val index = LshIndex.build(catalog, 128, 20, 42L)
+        val query = catalog.query(3)
+
+        val neighbors = index.search(query, 10)
+
+        assertThat(neighbors.size()).isEqualTo(10)
+        for (i in 0 until neighbors.size()) {
+            assertThat(neighbors.scores()[i]).isCloseTo(
+                catalog.cosineSimilarity(3, neighbors.ids()[i]),
+                within(1e-12)
+            )
+        }
+    }
+
+    @Test
+    fun `rescoring every movie is exact and rescoring a few is close`() {
+        val all = LshIndex.build(catalog, 64, catalog.size(), 42L)
+        val few = LshIndex.build(catalog, 256, 20, 42L)
+
+        assertThat(
+            RecallReport.measure(RecommendationEngine.LSH, all, 10, 50).recall()
+        ).isEqualTo(1.0)
+        assertThat(
+            RecallReport.measure(RecommendationEngine.LSH, few, 10, 50).recall()
+        ).isGreaterThan(0.8)
+    }
+
+    @Test
+    fun `signatures wider than a long and invalid parameters are handled`() {
+        val index = LshIndex.build(catalog, 100, 5, 42L)
+
+        assertThat(index.bits()).isEqualTo(100)
+        assertThat(index.search(catalog.query(0), 5).ids()).contains(0)
+        assertThatThrownBy { LshIndex.build(catalog, 0, 20, 42L) }
+            .isInstanceOf(IllegalArgumentException::class.java)
+    }
+}
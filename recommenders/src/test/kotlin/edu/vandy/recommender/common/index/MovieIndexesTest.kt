@@ -0,0 +1,50 @@
+package edu.vandy.recommender.common.index
+
+import edu.vandy.recommender.common.CatalogLoadedEvent
+import edu.vandy.recommender.common.MovieCatalog
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+import kotlin.random.Random
+
+internal class MovieIndexesTest : AssignmentTests() {
+    private val indexes = MovieIndexes()
+
+    private fun catalog() = MovieCatalog.of(
+        (1..300).associate { i ->
+            "m$i" to (1..8).map { Random.nextDouble(-1.0, 1.0) }
+        }
+    )
+
+    @AfterEach
+    fun shutdown() {
+        indexes.shutdown()
+    }
+
+    @Test
+    fun `every approximate index starts building once the catalog is loaded`() {
+        val catalog = catalog()
+
+        indexes.onCatalogLoaded(CatalogLoadedEvent(catalog))
+
+        for (engine in RecommendationEngine.values().filter { it != RecommendationEngine.EXACT }) {
+            val build = indexes.prepare(engine, catalog)
+            assertThat(indexes.prepare(engine, catalog)).isSameAs(build)
+            assertThat(indexes.index(engine, catalog)).isSameAs(build.join())
+            assertThat(build.join().catalog()).isSameAs(catalog)
+        }
+    }
+
+    @Test
+    fun `a new catalog is indexed again and EXACT has no index`() {
+        val first = indexes.lsh(catalog())
+        val other = catalog()
+
+        assertThat(indexes.lsh(other)).isNotSameAs(first)
+        assertThat(indexes.lsh(other).catalog()).isSameAs(other)
+        assertThatThrownBy { indexes.index(RecommendationEngine.EXACT, other) }
+            .isInstanceOf(IllegalArgumentException::class.java)
+    }
+}
@@ -0,0 +1,46 @@
+package edu.vandy.recommender.common.search
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+import kotlin.random.Random
+
+internal class TitleBkTreeTest : AssignmentTests() {
+    @Test
+    fun `closest matches a scan of all titles`() {
+        val alphabet = "abcDE f"
+        fun random() = (1..Random.nextInt(1, 12))
+            .map { alphabet[Random.nextInt(alphabet.length)] }
+            .joinToString("")
+
+        val titles = List(1000) { random() }.sorted()
+        val tree = TitleBkTree(titles)
+
+        repeat(200) {
+            val query = random()
+            val maxDistance = Random.nextInt(0, 4)
+            val distances = titles.map {
+                TitleBkTree.distance(
+                    query.lowercase(),
+                    it.lowercase(),
+                    IntArray(it.length + 1)
+                )
+            }
+            val best = distances.minOrNull()!!
+            val expected =
+                if (best <= maxDistance) distances.indexOf(best) else -1
+
+            assertThat(tree.closest(query, maxDistance)).isEqualTo(expected)
+        }
+    }
+
+    @Test
+    fun `mistyped and differently cased titles are resolved`() {
+        val tree = TitleBkTree(listOf("Alien", "Amadeus", "Heat", "The Matrix"))
+
+        assertThat(tree.closest("the matrix", 0)).isEqualTo(3)
+        assertThat(tree.closest("Teh Matrix", 2)).isEqualTo(3)
+        assertThat(tree.closest("Amadeuss", 1)).isEqualTo(1)
+        assertThat(tree.closest("Predator", 2)).isEqualTo(-1)
+    }
+}
@@ -0,0 +1,58 @@
+package edu.vandy.recommender.common.search
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+import kotlin.random.Random
+
+internal class TitleIndexTest : AssignmentTests() {
+    private val titles = List(2000) {
+        (1..Random.nextInt(3, 20))
+            .map { "abcDEF gh"[Random.nextInt(9)] }
+            .joinToString("")
+    }.sorted()
+
+    private val index = TitleIndex(titles)
+
+    private fun expected(query: String, limit: Int) = titles.indices
+        .filter { titles[it].lowercase().contains(query.lowercase()) }
+        .take(limit)
+
+    @Test
+    fun `search matches a scan of the titles ignoring case`() {
+        repeat(500) {
+            val query = (1..Random.nextInt(0, 6))
+                .map { "abcdefGH "[Random.nextInt(9)] }
+                .joinToString("")
+
+            assertThat(index.search(query, Int.MAX_VALUE).toList())
+                .isEqualTo(expected(query, Int.MAX_VALUE))
+            assertThat(index.search(query, 3).toList())
+                .isEqualTo(expected(query, 3))
+        }
+    }
+
+    @Test
+    fun `search of a range of ids matches a scan of that range`() {
+        repeat(500) {
+            val query = (1..Random.nextInt(0, 6))
+                .map { "abcdefGH "[Random.nextInt(9)] }
+                .joinToString("")
+            val from = Random.nextInt(0, titles.size)
+            val to = Random.nextInt(from, titles.size + 10)
+
+            assertThat(index.search(query, from, to, 5).toList())
+                .isEqualTo(
+                    expected(query, Int.MAX_VALUE)
+                        .filter { it in from until to }
+                        .take(5)
+                )
+        }
+    }
+
+    @Test
+    fun `queries with unindexed trigrams find nothing`() {
+        assertThat(index.search("xyz", 10)).isEmpty()
+        assertThat(index.search("abc", 0)).isEmpty()
+    }
+}
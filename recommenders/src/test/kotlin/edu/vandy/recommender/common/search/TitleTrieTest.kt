@@ -0,0 +1,32 @@
+package edu.vandy.recommender.common.search
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import test.admin.AssignmentTests
+
+internal class TitleTrieTest : AssignmentTests() {
+    private val titles = listOf(
+        "Alien", "Aliens", "Amadeus", "Heat", "alien nation", "heathers"
+    ).sorted()
+
+    private val trie = TitleTrie(titles)
+
+    private fun complete(prefix: String, limit: Int = 10) =
+        trie.complete(prefix, limit).map { titles[it] }
+
+    @Test
+    fun `prefixes are completed ignoring case in normalized order`() {
+        assertThat(complete("ALI"))
+            .containsExactly("Alien", "alien nation", "Aliens")
+        assertThat(complete("heat"))
+            .containsExactly("Heat", "heathers")
+        assertThat(complete("")).hasSize(titles.size)
+    }
+
+    @Test
+    fun `completions are limited and unknown prefixes complete nothing`() {
+        assertThat(complete("a", 2)).containsExactly("Alien", "alien nation")
+        assertThat(complete("alienz")).isEmpty()
+        assertThat(complete("a", 0)).isEmpty()
+    }
+}
@@ -0,0 +1,40 @@
+package edu.vandy.recommender.microservice.parallelstreams
+
+import edu.vandy.recommender.common.BlockingServiceTests
+import edu.vandy.recommender.common.MovieCatalog
+import edu.vandy.recommender.common.ServerBeans
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest
+import org.springframework.test.context.ContextConfiguration
+import test.admin.injectInto
+
+/**
+ * These test the service component against small real catalogs, in
+ * addition to the [BlockingServiceTests].
+ */
+@WebMvcTest
+@ContextConfiguration(classes = [ParallelStreamsService::class, ServerBeans::class])
+internal class ParallelStreamsServiceTest : BlockingServiceTests() {
+    override val service = ParallelStreamsService()
+
+    @AfterEach
+    fun shutdown() {
+        service.shutdown()
+    }
+
+    @Test
+    fun `search and allMovies return titles in ascending order`() {
+        MovieCatalog.of(
+            listOf("aMock", "Moc", "b MOCK", "mocking").associateWith { listOf(1.0) }
+        ).injectInto(service)
+
+        assertThat(service.search("mOcK").map { it.title })
+            .containsExactly("aMock", "b MOCK", "mocking")
+        assertThat(service.allMovies.map { it.title })
+            .containsExactly("Moc", "aMock", "b MOCK", "mocking")
+        assertThat(service.getAllMovies("aMock", 1).map { it.title })
+            .containsExactly("b MOCK")
+    }
+}
@@ -0,0 +1,32 @@
+package edu.vandy.recommender.microservice.structuredconcurrency
+
+import edu.vandy.recommender.common.BlockingServiceTests
+import edu.vandy.recommender.common.MovieCatalog
+import edu.vandy.recommender.common.ServerBeans
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest
+import org.springframework.test.context.ContextConfiguration
+import test.admin.injectInto
+
+/**
+ * These test the service component against small real catalogs, in
+ * addition to the [BlockingServiceTests].
+ */
+@WebMvcTest
+@ContextConfiguration(classes = [StructuredConcurrencyService::class, ServerBeans::class])
+internal class StructuredConcurrencyServiceTest : BlockingServiceTests() {
+    override val service = StructuredConcurrencyService()
+
+    @Test
+    fun `search merges the matches of every shard in ascending order`() {
+        val titles = (1..1000).map { "movie $it" + if (it % 7 == 0) " mock" else "" }
+        MovieCatalog.of(titles.associateWith { listOf(1.0) }).injectInto(service)
+        val expected = titles.filter { it.contains("MOCK", ignoreCase = true) }.sorted()
+
+        assertThat(service.search("mOcK").map { it.title }).isEqualTo(expected)
+        assertThat(service.search("mock", 5).map { it.title })
+            .isEqualTo(expected.take(5))
+        assertThat(service.search("mock", 0)).isEmpty()
+    }
+}
@@ -0,0 +1,49 @@
+package edu.vandy.recommender.utils
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import reactor.core.publisher.Mono
+import test.admin.AssignmentTests
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.atomic.AtomicInteger
+
+internal class SingleFlightTest : AssignmentTests() {
+    private val flights = SingleFlight<String, Int>()
+
+    private val computations = AtomicInteger()
+
+    private fun compute(result: CompletableFuture<Int>) =
+        flights.execute("key") {
+            computations.incrementAndGet()
+            Mono.fromFuture(result)
+        }
+
+    @Test
+    fun `concurrent callers share one running computation`() {
+        val result = CompletableFuture<Int>()
+        val callers = List(5) { compute(result).toFuture() }
+
+        assertThat(computations.get()).isEqualTo(1)
+        assertThat(flights.inFlight()).isEqualTo(1)
+
+        result.complete(42)
+
+        assertThat(callers.map { it.join() }).containsOnly(42)
+        assertThat(flights.inFlight()).isZero
+    }
+
+    @Test
+    fun `callers after a computation terminates start a new one`() {
+        assertThat(compute(CompletableFuture.completedFuture(1)).block())
+            .isEqualTo(1)
+        assertThat(compute(CompletableFuture.completedFuture(2)).block())
+            .isEqualTo(2)
+
+        val failed = CompletableFuture<Int>()
+        failed.completeExceptionally(IllegalStateException())
+        assertThat(compute(failed).onErrorReturn(-1).block()).isEqualTo(-1)
+
+        assertThat(computations.get()).isEqualTo(3)
+        assertThat(flights.inFlight()).isZero
+    }
+}
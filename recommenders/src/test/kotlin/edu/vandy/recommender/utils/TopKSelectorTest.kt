@@ -0,0 +1,97 @@
+package edu.vandy.recommender.utils
+
+import edu.vandy.recommender.common.model.Ranking
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import reactor.core.publisher.Flux
+import test.admin.AssignmentTests
+import kotlin.random.Random
+
+internal class TopKSelectorTest : AssignmentTests() {
+    private val scores = List(1000) { Random.nextDouble() }
+
+    private val expected = scores.sortedDescending().take(25)
+
+    @Test
+    fun `selects the highest scores in descending order`() {
+        val selector = TopKSelector(25)
+        scores.forEachIndexed { id, score -> selector.offer(id, score) }
+
+        assertThat(selector.scores().toList()).isEqualTo(expected)
+        assertThat(selector.ids().map { scores[it] }).isEqualTo(expected)
+        assertThat(selector.threshold()).isEqualTo(expected.last())
+        assertThat(selector.offer(-1, expected.last())).isFalse
+    }
+
+    @Test
+    fun `merged selectors match a single selector`() {
+        val left = TopKSelector(25)
+        val right = TopKSelector(25)
+        scores.forEachIndexed { id, score ->
+            (if (id % 2 == 0) left else right).offer(id, score)
+            // Reading the results must not break later offers.
+            if (id % 100 == 0) left.ids()
+        }
+
+        assertThat(left.merge(right).scores().toList()).isEqualTo(expected)
+    }
+
+    @Test
+    fun `rankings are only created for the winners`() {
+        val selector = TopKSelector(3)
+        listOf(0.2, 0.9, 0.5, 0.7).forEachIndexed { id, score ->
+            selector.offer(id, score)
+        }
+
+        assertThat(selector.toRankings { "m$it" }.map { it.title })
+            .containsExactly("m1", "m3", "m2")
+        assertThat(TopKSelector(0).apply { offer(1, 1.0) }.size())
+            .isEqualTo(0)
+    }
+
+    @Test
+    fun `a huge k only holds the ids that are offered`() {
+        val selector = TopKSelector(Int.MAX_VALUE)
+        scores.forEachIndexed { id, score -> selector.offer(id, score) }
+
+        assertThat(selector.isFull).isFalse
+        assertThat(selector.scores().toList()).isEqualTo(scores.sortedDescending())
+        assertThat(
+            GetTopK.getTopK(scores.mapIndexed { id, score -> Ranking("m$id", score) },
+                            Int.MAX_VALUE)
+        ).hasSize(scores.size)
+    }
+
+    @Test
+    fun `GetTopK overloads select any Comparable items`() {
+        val items = scores.map { (it * 1_000).toInt() }
+        val sorted = items.sortedDescending().take(25)
+
+        assertThat(GetTopK.getTopK(items, 25)).isEqualTo(sorted)
+        assertThat(GetTopK.getTopK(items.parallelStream(), 25).toList())
+            .isEqualTo(sorted)
+        assertThat(
+            Flux.fromIterable(items).transform(GetTopK.getTopK<Int>(25))
+                .collectList().block()
+        ).isEqualTo(sorted)
+        assertThat(GetTopK.getTopK(items, 0)).isEmpty()
+    }
+
+    @Test
+    fun `GetTopK overloads agree with sorting`() {
+        val rankings = scores.mapIndexed { id, score -> Ranking("m$id", score) }
+
+        assertThat(GetTopK.getTopK(rankings, 25).map { it.cosineSimilarity })
+            .isEqualTo(expected)
+        assertThat(
+            GetTopK.getTopK(rankings.parallelStream(), 25)
+                .map { it.cosineSimilarity }.toList()
+        ).isEqualTo(expected)
+
+        val flux = GetTopK.getTopK(Flux.fromIterable(rankings), 25)
+        for (subscription in 1..2) {
+            assertThat(flux.map { it.cosineSimilarity }.collectList().block())
+                .isEqualTo(expected)
+        }
+    }
+}